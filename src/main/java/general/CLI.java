@@ -1,48 +1,356 @@
 package general;
 
 import media.MediaQueue;
+import media.MediaType;
+import media.QueueOverview;
+import media.ScanIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import yjohnson.Checksum;
+import yjohnson.ChecksumCache;
+import yjohnson.ChecksumAlgorithm;
+import yjohnson.ConcurrencyController;
 import yjohnson.ConsoleEvent;
+import yjohnson.DuplicateAction;
+import yjohnson.DuplicateDetector;
+import yjohnson.EventLog;
 import yjohnson.FileOperation;
 import yjohnson.Operations;
+import yjohnson.RelocationPipeline;
+import yjohnson.RelocationPlan;
+import yjohnson.TransferJournal;
+import yjohnson.VerificationPolicy;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static general.Main.APP_NAME;
+import static general.Main.DATA_DIRECTORY;
 import static general.Main.VERSION;
 
 public class CLI {
 	private static final Logger logger = LoggerFactory.getLogger(CLI.class);
+	private static final String CHECKSUM_CACHE_FILENAME = "checksums.cache";
+	private static final String TRANSFER_JOURNAL_FILENAME = "transfers.journal";
+	private static final String SCAN_INDEX_FILENAME = "scan.index";
+	private static final String EVENT_LOG_FILENAME = "events.jsonl";
+	private static final int OVERVIEW_PAGE_SIZE = 100;
 	private static MediaQueue queue;
 
 	static void run() {
 		CLI.printHeader();
+		EventLog events = openEventLog();
+		if (ConsoleEvent.askUserForBoolean("Relocate files as soon as they are found, without building and reviewing the whole queue first?")) {
+			runPipelines();
+			close(events);
+			return;
+		}
 		queue = CLI.createMediaQueueCLI(queue);
 
-		ConsoleEvent.print("Overview of Operations: " + queue.toString());
+		printOverview(queue);
 
 		if (ConsoleEvent.askUserForBoolean("Confirm?")) {
-			FileOperation fo = FileOperation.values()[ConsoleEvent.askUserForOption(
-					"Choose an operation",
-					Arrays.asList(FileOperation.toStringArray())
-			) - 1];
+			FileOperation fo = askForFileOperation();
+			VerificationPolicy vp = askForVerificationPolicy(fo);
+			DuplicateAction da = askForDuplicateAction();
 
 
 			ConsoleEvent.print("Starting media queue move operation.");
-			File target;
-			boolean validDest;
-			do {
-				target = new File(ConsoleEvent.askUserForString("Input the destination directory"));
-				validDest = target.isAbsolute();
-				if (!validDest) ConsoleEvent.print("Invalid directory.", ConsoleEvent.logStatus.ERROR);
-			} while (!validDest);
-			Operations op = new Operations(fo, queue, target);
+			File target = askForDestination(fo);
+			int workers = ConsoleEvent.askUserForInt("Input the number of files to relocate concurrently (1 = one at a time)");
+			Operations op = new Operations(fo, queue, target, workers);
+			op.setVerificationPolicy(vp);
+			op.setDuplicateAction(da);
+			askForConcurrencyTuning(op, fo, workers);
+			executeWithPersistentState(op, vp == VerificationPolicy.FULL_HASH);
+
+		}
+
+		close(events);
+	}
+
+	/**
+	 * Relocates the files of one source directory after another through a {@link RelocationPipeline}: the first file is transferred as soon as it
+	 * is found and parsed, instead of after the whole source was scanned. There is no overview, no up-front conflict report and no duplicate
+	 * detection, since those need every file of the queue; a file whose target is taken fails on its own.
+	 */
+	static void runPipelines() {
+		FileOperation fo = askForFileOperation();
+		VerificationPolicy vp = askForVerificationPolicy(fo);
+		File target = askForDestination(fo);
+		int workers = ConsoleEvent.askUserForInt("Input the number of files to transfer concurrently (1 = one at a time)");
+
+		Operations op = new Operations(fo, target);
+		op.setVerificationPolicy(vp);
+		askForConcurrencyTuning(op, fo, workers);
+		TransferJournal journal = openTransferJournal();
+		ChecksumCache cache = vp == VerificationPolicy.FULL_HASH ? openChecksumCache() : null;
+		op.setTransferJournal(journal);
+		op.setChecksumCache(cache);
+
+		do {
+			File src = askForSourceDirectory();
+			Set<String> exts = new LinkedHashSet<>(askForExtensions());
+			MediaType type = ConsoleEvent.askUserForMediaType();
+
+			ConsoleEvent.print("Relocating files from \"" + src + "\" as they are found.");
+			List<Operations.MediaIOWrapper> results = new RelocationPipeline(src.toPath(), exts, type, op, workers).run();
+			long succeeded = results.stream().filter(Operations.MediaIOWrapper::didOperationSucceed).count();
+			ConsoleEvent.print(
+					"Relocated " + succeeded + " of " + results.size() + " files from \"" + src + "\".",
+					succeeded == results.size() ? ConsoleEvent.logStatus.NOTICE : ConsoleEvent.logStatus.ERROR
+			);
+		} while (ConsoleEvent.askUserForBoolean("Relocate files from another source?"));
+
+		close(journal, cache);
+	}
+
+	static FileOperation askForFileOperation() {
+		return FileOperation.values()[ConsoleEvent.askUserForOption(
+				"Choose an operation",
+				Arrays.asList(FileOperation.toStringArray())
+		) - 1];
+	}
+
+	/**
+	 * Asks how copied files are verified and, for the policies that hash files, with which checksum algorithm.
+	 *
+	 * @param fo the selected file operation.
+	 *
+	 * @return the verification policy; {@link VerificationPolicy#NONE} for metadata operations, which never copy a file.
+	 */
+	static VerificationPolicy askForVerificationPolicy(FileOperation fo) {
+		if (fo.isMetadataOnly()) return VerificationPolicy.NONE;
+
+		VerificationPolicy vp = VerificationPolicy.values()[ConsoleEvent.askUserForOption(
+				"Choose how copied files are verified",
+				Arrays.asList(VerificationPolicy.toStringArray())
+		) - 1];
+		if (vp == VerificationPolicy.SAMPLED || vp == VerificationPolicy.FULL_HASH) {
+			Checksum.setAlgorithm(ChecksumAlgorithm.values()[ConsoleEvent.askUserForOption(
+					"Choose a checksum algorithm",
+					Arrays.asList(ChecksumAlgorithm.toStringArray())
+			) - 1]);
+		}
+		return vp;
+	}
+
+	/**
+	 * Asks how files that duplicate another file are handled, if they are looked for at all.
+	 *
+	 * @return the duplicate action, or null if duplicates are not looked for.
+	 */
+	static DuplicateAction askForDuplicateAction() {
+		List<String> options = new ArrayList<>();
+		options.add("NONE (do not look for duplicates)");
+		options.addAll(Arrays.asList(DuplicateAction.toStringArray()));
+		int choice = ConsoleEvent.askUserForOption("Choose how files that duplicate another file are handled", options);
+		return choice == 1 ? null : DuplicateAction.values()[choice - 2];
+	}
+
+	/**
+	 * Asks for the destination directory, unless the selected operation does not use one.
+	 *
+	 * @param fo the selected file operation.
+	 *
+	 * @return the absolute destination directory, or null for {@link FileOperation#RENAME_IN_PLACE}.
+	 */
+	static File askForDestination(FileOperation fo) {
+		if (!fo.usesDestination()) return null;
+
+		File target;
+		boolean validDest;
+		do {
+			target = new File(ConsoleEvent.askUserForString("Input the destination directory"));
+			validDest = target.isAbsolute();
+			if (!validDest) ConsoleEvent.print("Invalid directory.", ConsoleEvent.logStatus.ERROR);
+		} while (!validDest);
+		return target;
+	}
+
+	static void askForConcurrencyTuning(Operations op, FileOperation fo, int workers) {
+		if (workers > 1 && !fo.isMetadataOnly()
+				&& ConsoleEvent.askUserForBoolean("Tune the number of files copied onto each device at once from the measured throughput?")) {
+			op.getTransferScheduler().setConcurrencyController(new ConcurrencyController(1, workers));
+		}
+	}
+
+	static File askForSourceDirectory() {
+		File src;
+		boolean validSrc;
+		do {
+			src = new File(ConsoleEvent.askUserForString("Input the source directory").trim());
+			validSrc = src.isDirectory();
+			if (!validSrc) ConsoleEvent.print("Invalid directory.", ConsoleEvent.logStatus.ERROR);
+		} while (!validSrc);
+		return src;
+	}
+
+	static List<String> askForExtensions() {
+		List<String> exts;
+		boolean validExt;
+		do {
+			exts = Arrays.asList(ConsoleEvent.askUserForString(
+					"Input the file extensions, separated by spaces (e.g. '.mkv .mp4'). Each must start with a '.'").trim().split("[\\s,]+"));
+			validExt = exts.stream().allMatch(e -> e.startsWith("."));
+			if (!validExt) ConsoleEvent.print("Invalid extension.", ConsoleEvent.logStatus.ERROR);
+		} while (!validExt);
+		return exts;
+	}
+
+	/**
+	 * Prints the overview of the queue to the console as it is written. The user may choose a summary instead of the full listing of a queue with
+	 * more than {@value #OVERVIEW_PAGE_SIZE} items, and is asked before every further page of the full listing.
+	 *
+	 * @param queue the queue to print the overview of.
+	 */
+	static void printOverview(MediaQueue queue) {
+		QueueOverview.Mode mode = QueueOverview.Mode.FULL;
+		if (queue.size() > OVERVIEW_PAGE_SIZE) {
+			mode = QueueOverview.Mode.values()[ConsoleEvent.askUserForOption(
+					"The queue holds " + queue.size() + " items. Choose an overview",
+					Arrays.asList(QueueOverview.Mode.toStringArray())
+			) - 1];
+		}
+
+		/* System.out is not closed along with the writer */
+		PrintWriter out = new PrintWriter(System.out);
+		out.print("Overview of Operations: ");
+		try {
+			new QueueOverview(out).setPagination(OVERVIEW_PAGE_SIZE, () -> ConsoleEvent.askUserForBoolean("Show more?")).write(queue, mode);
+		} catch (IOException e) {
+			logger.error("Could not print the overview of the media queue.");
+			logger.error(e.toString());
+		}
+	}
+
+	/**
+	 * Executes the given operation with the transfer journal in the program's data directory, so that copies interrupted by an earlier run are
+	 * continued, and optionally with the persistent checksum cache, so that files hashed by earlier runs are not hashed again. Whichever of the
+	 * two cannot be opened is left out.
+	 *
+	 * @param op               the operation to execute.
+	 * @param useChecksumCache whether the checksum cache should be used.
+	 */
+	static void executeWithPersistentState(Operations op, boolean useChecksumCache) {
+		TransferJournal journal = openTransferJournal();
+		ChecksumCache cache = useChecksumCache ? openChecksumCache() : null;
+
+		op.setTransferJournal(journal);
+		op.setChecksumCache(cache);
+		reportDuplicates(op.getDuplicates());
+		if (confirmConflicts(op.getRelocationPlan())) {
 			op.executeFileOperation();
+		}
+
+		close(journal, cache);
+	}
+
+	/**
+	 * Prints every file that was found to duplicate another file, along with the file it duplicates.
+	 *
+	 * @param duplicates the duplicates of the operation.
+	 */
+	static void reportDuplicates(Map<RelocationPlan.Entry, DuplicateDetector.Duplicate> duplicates) {
+		if (duplicates.isEmpty()) return;
 
+		ConsoleEvent.print(duplicates.size() + " files are identical to another file:");
+		for (DuplicateDetector.Duplicate duplicate : duplicates.values()) {
+			ConsoleEvent.print("  " + duplicate.getEntry().getSource() + " = " + duplicate.getOriginal());
 		}
+	}
+
+	/**
+	 * Prints the files of the plan that will not be relocated because of a conflict, if any, and asks the user whether the other files should be
+	 * relocated regardless.
+	 *
+	 * @param plan the relocation plan of the operation.
+	 *
+	 * @return true if the operation should be executed.
+	 */
+	static boolean confirmConflicts(RelocationPlan plan) {
+		List<RelocationPlan.Entry> conflicts = plan.getConflicts();
+		if (conflicts.isEmpty()) return true;
 
+		ConsoleEvent.print(conflicts.size() + " of " + plan.getEntries().size() + " files will not be relocated:", ConsoleEvent.logStatus.ERROR);
+		for (RelocationPlan.Entry entry : conflicts) {
+			ConsoleEvent.print("  " + entry.getSource() + ": " + entry.describeConflict(), ConsoleEvent.logStatus.ERROR);
+		}
+		return ConsoleEvent.askUserForBoolean("Relocate the other files?");
+	}
+
+	/**
+	 * Opens the transfer journal in the program's data directory.
+	 *
+	 * @return the transfer journal, or null if it could not be opened.
+	 */
+	static TransferJournal openTransferJournal() {
+		Path journalFile = DATA_DIRECTORY.resolve(TRANSFER_JOURNAL_FILENAME);
+		try {
+			return TransferJournal.open(journalFile);
+		} catch (IOException e) {
+			logger.error("Could not open the transfer journal at \"{}\"; interrupted copies cannot be resumed.", journalFile);
+			logger.error(e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the checksum cache in the program's data directory.
+	 *
+	 * @return the checksum cache, or null if it could not be opened.
+	 */
+	static ChecksumCache openChecksumCache() {
+		Path cacheFile = DATA_DIRECTORY.resolve(CHECKSUM_CACHE_FILENAME);
+		try {
+			return ChecksumCache.open(cacheFile);
+		} catch (IOException e) {
+			logger.error("Could not open the checksum cache at \"{}\"; files will be hashed without it.", cacheFile);
+			logger.error(e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the event log in the program's data directory, to which every file that is scanned, parsed, planned and relocated is recorded.
+	 *
+	 * @return the event log, or null if it could not be opened.
+	 */
+	static EventLog openEventLog() {
+		Path eventFile = DATA_DIRECTORY.resolve(EVENT_LOG_FILENAME);
+		try {
+			return EventLog.open(eventFile);
+		} catch (IOException e) {
+			logger.error("Could not open the event log at \"{}\"; no events will be recorded.", eventFile);
+			logger.error(e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * Closes every given resource that is not null, logging the ones that fail to close.
+	 *
+	 * @param closeables the resources to close.
+	 */
+	static void close(Closeable... closeables) {
+		for (Closeable closeable : closeables) {
+			if (closeable == null) continue;
+			try {
+				closeable.close();
+			} catch (IOException e) {
+				logger.error("Could not close {}.", closeable.getClass().getSimpleName());
+				logger.error(e.toString());
+			}
+		}
 	}
 
 	static void printHeader() {
@@ -59,26 +367,24 @@ public class CLI {
 
 	static MediaQueue createMediaQueueCLI(MediaQueue queue) {
 		logger.debug("CLI is creating media queue.");
-		File src;
-		String ext;
-		boolean validSrc, validExt;
+		ScanIndex index = ScanIndex.open(DATA_DIRECTORY.resolve(SCAN_INDEX_FILENAME));
+		MediaQueue.Builder builder = new MediaQueue.Builder().setScanIndex(index);
 
+		/* The builder filters every source by the same extensions, so they are only asked for once */
+		builder.addExtensions(askForExtensions());
 		do {
-			do {
-				src = new File(ConsoleEvent.askUserForString("Input the source directory").trim());
-				validSrc = src.isDirectory();
-				if (!validSrc) ConsoleEvent.print("Invalid directory.", ConsoleEvent.logStatus.ERROR);
-			} while (!validSrc);
-
-			do {
-				ext = ConsoleEvent.askUserForString("Input the file extension (e.g. '.mkv', '.mp4',...). It must start with a '.'");
-				validExt = ext.startsWith(".");
-				if (!validExt) ConsoleEvent.print("Invalid extension.", ConsoleEvent.logStatus.ERROR);
-			} while (!validExt);
-
-			queue = new MediaQueue(src.toPath(), ext, ConsoleEvent.askUserForMediaType());
+			File src = askForSourceDirectory();
+			builder.addSource(src.toPath(), ConsoleEvent.askUserForMediaType());
 
 		} while (ConsoleEvent.askUserForBoolean("Add more files to the queue?"));
+		queue = builder.build();
+
+		try {
+			index.save();
+		} catch (IOException e) {
+			logger.error("Could not save the scan index; the next scan will list every changed directory again.");
+			logger.error(e.toString());
+		}
 		return queue;
 	}
 
@@ -0,0 +1,139 @@
+package general;
+
+import media.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import yjohnson.ChecksumCache;
+import yjohnson.ConcurrencyController;
+import yjohnson.EventLog;
+import yjohnson.FileOperation;
+import yjohnson.Operations;
+import yjohnson.TransferJournal;
+import yjohnson.VerificationPolicy;
+import yjohnson.WatchDaemon;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link WatchDaemon} from the command line, without any console prompts:
+ * <p>
+ * {@code --watch [--copy|--hardlink|--symlink] [--debounce=<seconds>] [--workers=<n>] [--max-rate=<MB/s>] [--verify-rate=<MB/s>]
+ * [--per-device=<n>] [--adaptive] <destination> <extension> <TV|MOVIE> <source>...}
+ * <p>
+ * Files are moved atomically by default (falling back to a verified copy across file systems), or copied and verified with --copy. With --hardlink
+ * or --symlink, the files are linked into the destination instead and stay where they are, e.g. to keep seeding them. The daemon stops when the
+ * program is terminated.
+ * <p>
+ * --max-rate and --verify-rate throttle the bytes that are copied and the bytes that are read to verify copies, and --per-device caps the number
+ * of files that are copied onto the same device at once, so that the daemon does not starve other readers of the destination. With --adaptive,
+ * the number of files copied onto each device at once is tuned between 1 and the number of workers from the measured throughput instead, and
+ * --per-device only serves as a ceiling.
+ */
+class Daemon {
+	private static final Logger logger = LoggerFactory.getLogger(Daemon.class);
+	private static final String USAGE =
+			"Usage: --watch [--copy|--hardlink|--symlink] [--debounce=<seconds>] [--workers=<n>] [--max-rate=<MB/s>] [--verify-rate=<MB/s>] "
+			+ "[--per-device=<n>] [--adaptive] <destination> <extension> <TV|MOVIE> <source>...";
+	private static final long BYTES_PER_MEGABYTE = 1_000_000;
+	private static final long DEFAULT_DEBOUNCE_SECONDS = 5;
+	private static final long SHUTDOWN_GRACE_SECONDS = 10;
+	private static final long CLOSE_GRACE_SECONDS = 5;
+
+	static void run(String[] args) {
+		FileOperation fo = FileOperation.MOVE_FILE_ATOMICALLY;
+		long debounceSeconds = DEFAULT_DEBOUNCE_SECONDS;
+		int workers = 1, perDevice = 0;
+		double maxRate = 0, verifyRate = 0;
+		boolean adaptive = false;
+		List<String> positional = new ArrayList<>();
+		try {
+			for (String arg : args) {
+				if (arg.equals("--copy")) fo = FileOperation.COPY_FILE_AND_DELETE_SRC;
+				else if (arg.equals("--hardlink")) fo = FileOperation.HARDLINK;
+				else if (arg.equals("--symlink")) fo = FileOperation.SYMLINK;
+				else if (arg.equals("--adaptive")) adaptive = true;
+				else if (arg.startsWith("--debounce=")) debounceSeconds = Long.parseLong(arg.substring("--debounce=".length()));
+				else if (arg.startsWith("--workers=")) workers = Integer.parseInt(arg.substring("--workers=".length()));
+				else if (arg.startsWith("--max-rate=")) maxRate = Double.parseDouble(arg.substring("--max-rate=".length()));
+				else if (arg.startsWith("--verify-rate=")) verifyRate = Double.parseDouble(arg.substring("--verify-rate=".length()));
+				else if (arg.startsWith("--per-device=")) perDevice = Integer.parseInt(arg.substring("--per-device=".length()));
+				else positional.add(arg);
+			}
+		} catch (NumberFormatException e) {
+			logger.error("Invalid watch mode argument: {}", e.getMessage());
+			System.err.println(USAGE);
+			return;
+		}
+		if (maxRate < 0 || verifyRate < 0 || perDevice < 0) {
+			logger.error("Rates and per-device limits must not be negative.");
+			System.err.println(USAGE);
+			return;
+		}
+		if (positional.size() < 4) {
+			System.err.println(USAGE);
+			return;
+		}
+
+		File target = new File(positional.get(0));
+		String ext = positional.get(1);
+		MediaType type;
+		try {
+			type = MediaType.valueOf(positional.get(2).toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			logger.error("Unknown media type \"{}\".", positional.get(2));
+			System.err.println(USAGE);
+			return;
+		}
+		List<Path> sources = new ArrayList<>();
+		for (String src : positional.subList(3, positional.size())) {
+			sources.add(Path.of(src).toAbsolutePath());
+		}
+		if (!target.isAbsolute()) target = target.getAbsoluteFile();
+
+		TransferJournal journal = CLI.openTransferJournal();
+		ChecksumCache cache = CLI.openChecksumCache();
+		EventLog events = CLI.openEventLog();
+		Operations op = new Operations(fo, target);
+		op.setVerificationPolicy(VerificationPolicy.FULL_HASH);
+		op.setTransferJournal(journal);
+		op.setChecksumCache(cache);
+		op.getTransferScheduler().getCopyLimiter().setBytesPerSecond((long) (maxRate * BYTES_PER_MEGABYTE));
+		op.getTransferScheduler().getVerificationLimiter().setBytesPerSecond((long) (verifyRate * BYTES_PER_MEGABYTE));
+		op.getTransferScheduler().setDefaultConcurrency(perDevice);
+		if (adaptive) op.getTransferScheduler().setConcurrencyController(new ConcurrencyController(1, Math.max(1, workers)));
+
+		WatchDaemon daemon;
+		try {
+			daemon = new WatchDaemon(sources, ext, type, op, TimeUnit.SECONDS.toMillis(debounceSeconds), workers);
+		} catch (IOException | IllegalArgumentException e) {
+			logger.error("Could not start the watch daemon.");
+			logger.error(e.toString());
+			System.err.println(e.getMessage());
+			CLI.close(journal, cache, events);
+			return;
+		}
+
+		daemon.setShutdownGrace(SHUTDOWN_GRACE_SECONDS, TimeUnit.SECONDS);
+		Thread mainThread = Thread.currentThread();
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			logger.info("Shutting down the watch daemon.");
+			CLI.close(daemon);
+			try {
+				/* The daemon waits out the grace period once for running relocations and once more after interrupting them */
+				mainThread.join(TimeUnit.SECONDS.toMillis(2 * SHUTDOWN_GRACE_SECONDS + CLOSE_GRACE_SECONDS));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+
+		System.out.println("Watching " + sources + " for new \"" + ext + "\" files; relocating them into \"" + target + "\".");
+		daemon.run();
+		CLI.close(journal, cache, events);
+	}
+}
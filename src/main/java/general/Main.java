@@ -3,20 +3,31 @@ package general;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
+import java.util.Arrays;
+
 
 
 public class Main {
 
 	private static final Logger logger = LoggerFactory.getLogger(Main.class);
+	private static final String WATCH_FLAG = "--watch";
 	public static String APP_NAME;
 	public static String VERSION;
+	public static Path DATA_DIRECTORY;
 
 	static {
 		APP_NAME = "Relocatinator";
 		VERSION = "0.2";
+		DATA_DIRECTORY = Path.of(System.getProperty("user.home"), "." + APP_NAME.toLowerCase());
 	}
 
 	public static void main(String[] args) {
+		if (args.length > 0 && args[0].equals(WATCH_FLAG)) {
+			logger.info("{} V{}: Starting watch daemon.", APP_NAME, VERSION);
+			Daemon.run(Arrays.copyOfRange(args, 1, args.length));
+			return;
+		}
 		logger.info("{} V{}: Starting CLI application.", APP_NAME, VERSION);
 		CLI.run();
 
@@ -0,0 +1,472 @@
+package media;
+
+import java.util.Calendar;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * A file name that has been scanned into the typed tokens that {@link TV}, {@link Movie} and {@link MetadataOps} interpret: resolutions, release
+ * years, "S01E02", "1x02", "Season 1 Episode 2", solo season and episode numbers, and so on.
+ * <p>
+ * The name is scanned once, left to right. At every position the scanner tries each kind of token that has not been found yet, so that it
+ * records the first occurrence of every kind in a single pass; digit and space runs are measured beforehand so that no position is looked at more
+ * than a constant number of times. Each kind of token reproduces exactly what one of the regular expressions that the parsers used to run (one
+ * after another, over the whole name) would have matched, including the separators that were removed along with it.
+ * <p>
+ * File names are normalized the way {@link MetadataOps#removeUnwantedSpaces(String)} does it: the extension is dropped and dots and underscores
+ * become spaces. Resolutions and release years are looked for in the name as it is, extension included.
+ */
+final class FilenameTokens {
+	private static final char[] OS_YEAR = String.valueOf(Calendar.getInstance().get(Calendar.YEAR)).trim().toCharArray();
+	private static final int NONE = -1;
+
+	enum Kind {
+		/** "S01E02", "s1 e2", with a leading " - " if there is one. */
+		SEASON_AND_EPISODE,
+		/** "Episode 2" or "Season 1 - Episode 2", with a leading " - " if there is one. */
+		SEASON_AND_EPISODE_WORDS,
+		/** "1x02", "1 x - 02", with a leading " - " if there is one. */
+		SEASON_CROSS_EPISODE,
+		/** " - 02", " - E02" (an upper case 'E' only). */
+		DASH_EPISODE,
+		/** A number, or 'E' and a number, at the very end of the name. */
+		TRAILING_EPISODE,
+		/** "Season 1". */
+		SEASON_WORD,
+		/** "S1" followed by at least one space, which is included in the token. */
+		SEASON_PREFIX,
+		/** "Episode" and up to three digits; only used when nothing better was found. */
+		EPISODE_WORD,
+		/** 'E' and the digits that follow it; only used when nothing better was found. */
+		E_NUMBER,
+		/** "- " and up to three digits; only used when nothing better was found. */
+		DASH_NUMBER
+	}
+
+	/**
+	 * One occurrence of a kind of token: where it starts and ends in the normalized name, and the numbers it holds.
+	 */
+	static final class Token {
+		final int start;
+		final int end;
+		final String text;
+		private final String s;
+		private final int seasonStart;
+		private final int seasonEnd;
+		private final int episodeStart;
+		private final int episodeEnd;
+
+		/**
+		 * The numbers are kept as character ranges and only parsed when asked for, so that a token whose number does not fit in an int fails the
+		 * same way the regular expression groups used to: when (and only if) the parser reads it.
+		 */
+		private Token(String s, int start, int end, int seasonStart, int seasonEnd, int episodeStart, int episodeEnd) {
+			this.start = start;
+			this.end = end;
+			this.text = s.substring(start, end);
+			this.s = s;
+			this.seasonStart = seasonStart;
+			this.seasonEnd = seasonEnd;
+			this.episodeStart = episodeStart;
+			this.episodeEnd = episodeEnd;
+		}
+
+		boolean hasSeason() {
+			return seasonStart != NONE;
+		}
+
+		int season() {
+			return hasSeason() ? Integer.parseInt(s.substring(seasonStart, seasonEnd)) : NONE;
+		}
+
+		int episode() {
+			return episodeStart != NONE ? Integer.parseInt(s.substring(episodeStart, episodeEnd)) : NONE;
+		}
+	}
+
+	private final String s;
+	private final int n;
+	private final int[] digitsEnd;
+	private final int[] spacesEnd;
+	private final Map<Kind, Token> first = new EnumMap<>(Kind.class);
+	private String resolution = MetadataOps.RES_UNKNOWN;
+	private int releaseYear = NONE;
+	private int seasonTemplate = NONE;
+	private int spacedEpisodeTemplate = NONE;
+	private boolean hasDigit;
+
+	private FilenameTokens(String normalized, String raw) {
+		this.s = normalized;
+		this.n = normalized.length();
+		this.digitsEnd = new int[n + 1];
+		this.spacesEnd = new int[n + 1];
+		digitsEnd[n] = spacesEnd[n] = n;
+		for (int i = n - 1; i >= 0; i--) {
+			char c = s.charAt(i);
+			digitsEnd[i] = isDigit(c) ? digitsEnd[i + 1] : i;
+			spacesEnd[i] = c == ' ' ? spacesEnd[i + 1] : i;
+		}
+		scan(raw);
+	}
+
+	/**
+	 * Scans the name of a file.
+	 *
+	 * @param fileName the name of the file, extension included.
+	 *
+	 * @return the tokens of the normalized name.
+	 */
+	static FilenameTokens ofFileName(String fileName) {
+		int dot = fileName.lastIndexOf('.');
+		return new FilenameTokens(normalize(dot >= 0 ? fileName.substring(0, dot) : fileName), fileName);
+	}
+
+	/**
+	 * Scans a string that is already normalized, e.g. what is left of a name once a token has been removed from it.
+	 *
+	 * @param text the normalized string.
+	 *
+	 * @return the tokens of the string.
+	 */
+	static FilenameTokens ofText(String text) {
+		return new FilenameTokens(text, text);
+	}
+
+	/**
+	 * Replaces dots and underscores with spaces, like {@link MetadataOps#removeUnwantedSpaces(String)}, in one pass. As there, the result is only
+	 * trimmed if something was replaced.
+	 *
+	 * @param s the string to normalize.
+	 *
+	 * @return the normalized string.
+	 */
+	static String normalize(String s) {
+		char[] chars = s.toCharArray();
+		boolean replaced = false;
+		for (int i = 0; i < chars.length; i++) {
+			if (chars[i] == '.' || chars[i] == '_') {
+				chars[i] = ' ';
+				replaced = true;
+			}
+		}
+		return replaced ? new String(chars).trim() : s;
+	}
+
+	String text() {
+		return s;
+	}
+
+	Token first(Kind kind) {
+		return first.get(kind);
+	}
+
+	String resolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return the first four digit number between 1800 and the current decade that stands as a word of its own in the raw name, or -1.
+	 */
+	int releaseYear() {
+		return releaseYear;
+	}
+
+	/**
+	 * @return the smallest n for which "Season n", "SEASON n", "season n", "Sn", "S0n", "sn" or "s0n" appears in the name, or -1.
+	 */
+	int seasonTemplate() {
+		return seasonTemplate;
+	}
+
+	/**
+	 * @return the smallest n (1 to 9) for which "episode  n", with two spaces and in any case, appears in the name, or -1.
+	 */
+	int spacedEpisodeTemplate() {
+		return spacedEpisodeTemplate;
+	}
+
+	boolean hasDigit() {
+		return hasDigit;
+	}
+
+	private void scan(String raw) {
+		int found216 = NONE, found1080 = NONE, found720 = NONE, found480 = NONE;
+		int length = Math.max(n, raw.length());
+		for (int i = 0; i < length; i++) {
+			if (i < raw.length()) {
+				if (found216 == NONE && raw.startsWith("216", i)) found216 = i;
+				if (found1080 == NONE && raw.startsWith("1080", i)) found1080 = i;
+				if (found720 == NONE && raw.startsWith("720", i)) found720 = i;
+				if (found480 == NONE && raw.startsWith("480", i)) found480 = i;
+				if (releaseYear == NONE) releaseYear = releaseYearAt(raw, i);
+			}
+			if (i < n) {
+				char c = s.charAt(i);
+				hasDigit |= isDigit(c);
+				for (Kind kind : Kind.values()) {
+					if (!first.containsKey(kind)) {
+						Token token = match(kind, i);
+						if (token != null) first.put(kind, token);
+					}
+				}
+				seasonTemplateAt(i);
+				spacedEpisodeTemplateAt(i);
+			}
+		}
+
+		if (found216 != NONE) resolution = found216 + 3 < raw.length() && raw.charAt(found216 + 3) == '0' ? "2160p" : "216p";
+		else if (found1080 != NONE) resolution = "1080p";
+		else if (found720 != NONE) resolution = "720p";
+		else if (found480 != NONE) resolution = "480p";
+	}
+
+	private Token match(Kind kind, int i) {
+		switch (kind) {
+			case SEASON_AND_EPISODE:
+				return seasonAndEpisodeAt(i);
+			case SEASON_AND_EPISODE_WORDS:
+				return seasonAndEpisodeWordsAt(i);
+			case SEASON_CROSS_EPISODE:
+				return seasonCrossEpisodeAt(i);
+			case DASH_EPISODE:
+				return dashEpisodeAt(i);
+			case TRAILING_EPISODE:
+				return trailingEpisodeAt(i);
+			case SEASON_WORD:
+				return seasonWordAt(i);
+			case SEASON_PREFIX:
+				return seasonPrefixAt(i);
+			case EPISODE_WORD:
+				return episodeWordAt(i);
+			case E_NUMBER:
+				return eNumberAt(i);
+			case DASH_NUMBER:
+			default:
+				return dashNumberAt(i);
+		}
+	}
+
+	/*
+	 * "S01E02": an 's', a season number that is "0" or has a non-zero digit, spaces, an 'e' and an episode number.
+	 */
+	private Token seasonAndEpisodeAt(int i) {
+		if (!isLetter(i, 's') || !isDigitAt(i + 1)) return null;
+		int seasonEnd = digitsEnd[i + 1];
+		if (!isSeasonNumber(i + 1, seasonEnd)) return null;
+		int e = spacesEnd[seasonEnd];
+		if (!isLetter(e, 'e') || !isDigitAt(e + 1)) return null;
+		int episodeEnd = digitsEnd[e + 1];
+		return new Token(s, dashPrefixStart(i), episodeEnd, i + 1, seasonEnd, e + 1, episodeEnd);
+	}
+
+	/*
+	 * "Episode 2", optionally preceded by "Season 1" and at most one dash between spaces.
+	 */
+	private Token seasonAndEpisodeWordsAt(int i) {
+		if (!isWord(i, "episode") || !isChar(i + 7, ' ') || !isDigitAt(i + 8)) return null;
+		int episodeEnd = digitsEnd[i + 8];
+		int episodeStart = i + 8;
+
+		int a = spacesStart(i);
+		int b = a > 0 && s.charAt(a - 1) == '-' ? spacesStart(a - 1) : a;
+		if (b > 0 && isDigit(s.charAt(b - 1))) {
+			int seasonStart = digitsStart(b - 1);
+			if (seasonStart >= 7 && s.charAt(seasonStart - 1) == ' ' && isWord(seasonStart - 7, "season")) {
+				return new Token(s, dashPrefixStart(seasonStart - 7), episodeEnd, seasonStart, b, episodeStart, episodeEnd);
+			}
+		}
+		return new Token(s, b, episodeEnd, NONE, NONE, episodeStart, episodeEnd);
+	}
+
+	/*
+	 * "1x02": a number, spaces, an 'x', spaces, at most one dash between spaces and a number.
+	 */
+	private Token seasonCrossEpisodeAt(int i) {
+		if (!isDigitAt(i) || (i > 0 && isDigit(s.charAt(i - 1)))) return null;
+		int seasonEnd = digitsEnd[i];
+		int x = spacesEnd[seasonEnd];
+		if (!isLetter(x, 'x')) return null;
+		int episodeStart = skipDashBetweenSpaces(x + 1);
+		if (!isDigitAt(episodeStart)) return null;
+		int episodeEnd = digitsEnd[episodeStart];
+		return new Token(s, dashPrefixStart(i), episodeEnd, i, seasonEnd, episodeStart, episodeEnd);
+	}
+
+	/*
+	 * " - 02" or " - E02": spaces, a dash, spaces, an optional upper case 'E' and a number.
+	 */
+	private Token dashEpisodeAt(int i) {
+		if (!isChar(i, '-')) return null;
+		int k = spacesEnd[i + 1];
+		if (isChar(k, 'E') && isDigitAt(k + 1)) k++;
+		if (!isDigitAt(k)) return null;
+		int episodeEnd = digitsEnd[k];
+		return new Token(s, spacesStart(i), episodeEnd, NONE, NONE, k, episodeEnd);
+	}
+
+	/*
+	 * A number that ends the name, and the upper case 'E' right before it, if any.
+	 */
+	private Token trailingEpisodeAt(int i) {
+		if (!isDigitAt(i) || digitsEnd[i] != n || (i > 0 && isDigit(s.charAt(i - 1)))) return null;
+		return new Token(s, i > 0 && s.charAt(i - 1) == 'E' ? i - 1 : i, n, NONE, NONE, i, n);
+	}
+
+	/*
+	 * "Season 1".
+	 */
+	private Token seasonWordAt(int i) {
+		if (!isWord(i, "season") || !isChar(i + 6, ' ') || !isDigitAt(i + 7)) return null;
+		int seasonEnd = digitsEnd[i + 7];
+		return new Token(s, i, seasonEnd, i + 7, seasonEnd, NONE, NONE);
+	}
+
+	/*
+	 * "S1 ": an 's', a number and the spaces that follow it.
+	 */
+	private Token seasonPrefixAt(int i) {
+		if (!isLetter(i, 's') || !isDigitAt(i + 1)) return null;
+		int seasonEnd = digitsEnd[i + 1];
+		if (!isChar(seasonEnd, ' ')) return null;
+		return new Token(s, i, spacesEnd[seasonEnd], i + 1, seasonEnd, NONE, NONE);
+	}
+
+	/*
+	 * "Episode 2", with at most three digits.
+	 */
+	private Token episodeWordAt(int i) {
+		if (!isWord(i, "episode") || !isChar(i + 7, ' ') || !isDigitAt(i + 8)) return null;
+		int end = Math.min(digitsEnd[i + 8], i + 11);
+		return new Token(s, i, end, NONE, NONE, i + 8, end);
+	}
+
+	/*
+	 * "E1234": an 'e' and every digit that follows it. The episode is the last group of (up to) three digits, i.e. "4".
+	 */
+	private Token eNumberAt(int i) {
+		if (!isLetter(i, 'e') || !isDigitAt(i + 1)) return null;
+		int end = digitsEnd[i + 1];
+		int digits = end - i - 1;
+		int last = digits % 3 == 0 ? 3 : digits % 3;
+		return new Token(s, i, end, NONE, NONE, end - last, end);
+	}
+
+	/*
+	 * "- 2", with at most three digits.
+	 */
+	private Token dashNumberAt(int i) {
+		if (!isChar(i, '-') || !isChar(i + 1, ' ') || !isDigitAt(i + 2)) return null;
+		int end = Math.min(digitsEnd[i + 2], i + 5);
+		return new Token(s, i, end, NONE, NONE, i + 2, end);
+	}
+
+	/*
+	 * The season templates match wherever a digit follows "SEASON ", "Season ", "season ", "S", "S0", "s" or "s0"; the smallest season they can
+	 * describe is the first digit that follows, if it is not 0.
+	 */
+	private void seasonTemplateAt(int i) {
+		int digit = NONE;
+		char c = s.charAt(i);
+		if (c == 's' || c == 'S') {
+			if (isDigitAt(i + 1) && s.charAt(i + 1) != '0') digit = s.charAt(i + 1) - '0';
+			else if (isChar(i + 1, '0') && isDigitAt(i + 2) && s.charAt(i + 2) != '0') digit = s.charAt(i + 2) - '0';
+		}
+		if (s.startsWith("SEASON ", i) || s.startsWith("Season ", i) || s.startsWith("season ", i)) {
+			if (isDigitAt(i + 7) && s.charAt(i + 7) != '0') digit = s.charAt(i + 7) - '0';
+		}
+		if (digit != NONE && (seasonTemplate == NONE || digit < seasonTemplate)) seasonTemplate = digit;
+	}
+
+	private void spacedEpisodeTemplateAt(int i) {
+		if (isWord(i, "episode") && isChar(i + 7, ' ') && isChar(i + 8, ' ') && isDigitAt(i + 9) && s.charAt(i + 9) != '0') {
+			int digit = s.charAt(i + 9) - '0';
+			if (spacedEpisodeTemplate == NONE || digit < spacedEpisodeTemplate) spacedEpisodeTemplate = digit;
+		}
+	}
+
+	/*
+	 * A four digit word (letters, digits and underscores count as word characters) within the accepted range of release years.
+	 */
+	private static int releaseYearAt(String raw, int i) {
+		if (i + 4 > raw.length() || (i > 0 && isWordChar(raw.charAt(i - 1))) || (i + 4 < raw.length() && isWordChar(raw.charAt(i + 4)))) {
+			return NONE;
+		}
+		for (int k = i; k < i + 4; k++) {
+			if (!isDigit(raw.charAt(k))) return NONE;
+		}
+		char c0 = raw.charAt(i), c1 = raw.charAt(i + 1), c2 = raw.charAt(i + 2);
+		boolean valid = (c0 == '1' && c1 >= '8') || (c0 == '2' && c1 <= OS_YEAR[1] && c2 <= OS_YEAR[2]);
+		return valid ? Integer.parseInt(raw.substring(i, i + 4)) : NONE;
+	}
+
+	/**
+	 * Where a token that starts at q really starts, once the optional " - " that may precede it is included: at most two spaces, then a dash and
+	 * the spaces before it; or a single space if there is no such dash.
+	 */
+	private int dashPrefixStart(int q) {
+		int sp = q - spacesStart(q);
+		if (sp <= 2 && q - sp - 1 >= 0 && s.charAt(q - sp - 1) == '-') return spacesStart(q - sp - 1);
+		return q - Math.min(sp, 1);
+	}
+
+	/**
+	 * Skips spaces, at most one dash, and spaces.
+	 */
+	private int skipDashBetweenSpaces(int i) {
+		int k = spacesEnd[Math.min(i, n)];
+		if (isChar(k, '-')) k = spacesEnd[k + 1];
+		return k;
+	}
+
+	private int spacesStart(int i) {
+		while (i > 0 && s.charAt(i - 1) == ' ') i--;
+		return i;
+	}
+
+	private int digitsStart(int i) {
+		while (i > 0 && isDigit(s.charAt(i - 1))) i--;
+		return i;
+	}
+
+	/**
+	 * A season number of "S01E02" is either "0" or has a non-zero digit.
+	 */
+	private boolean isSeasonNumber(int start, int end) {
+		if (end - start == 1) return true;
+		for (int k = start; k < end; k++) {
+			if (s.charAt(k) != '0') return true;
+		}
+		return false;
+	}
+
+	private boolean isChar(int i, char c) {
+		return i < n && s.charAt(i) == c;
+	}
+
+	private boolean isDigitAt(int i) {
+		return i < n && isDigit(s.charAt(i));
+	}
+
+	/**
+	 * Compares a single letter without regard to case, like a case-insensitive regular expression (ASCII only).
+	 */
+	private boolean isLetter(int i, char lower) {
+		return i < n && (s.charAt(i) | 0x20) == lower;
+	}
+
+	private boolean isWord(int i, String lower) {
+		if (i < 0 || i + lower.length() > n) return false;
+		for (int k = 0; k < lower.length(); k++) {
+			if (!isLetter(i + k, lower.charAt(k))) return false;
+		}
+		return true;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isWordChar(char c) {
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+}
@@ -1,14 +1,23 @@
 package media;
 
 import java.io.File;
+import java.lang.ref.WeakReference;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import static media.MetadataOps.unwantedSpaces;
 
 abstract public class Media {
-	protected File file;
+	/* The parent directories of the files, shared by every Media object in the same directory; an entry goes away once nothing refers to it */
+	private static final Map<File, WeakReference<File>> directories = new WeakHashMap<>();
+
+	protected File directory;
+	protected String fileName;
 	protected String customName, resolution = "Unknown";
 	protected String ext;
+	protected BasicFileAttributes attributes;
 	MediaType type;
 
 	/**
@@ -19,16 +28,86 @@ abstract public class Media {
 	 */
 	public Media(String path, MediaType mediatype) {
 		this.type = mediatype;
-		this.file = new File(path);
-		this.ext = this.file.getName().substring(this.file.getName().lastIndexOf("."));
+		locate(new File(path));
+		this.ext = this.fileName.substring(this.fileName.lastIndexOf(".")).intern();
 	}
 
+	/**
+	 * Returns the file of this media object. Only its directory and name are kept, so a new File object is returned by every call.
+	 *
+	 * @return the file of this media object.
+	 */
 	public File getFile() {
-		return file;
+		return directory != null ? new File(directory, fileName) : new File(fileName);
 	}
 
+	/**
+	 * @return the directory that holds the file, or null if its path has no parent.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return the name of the file, extension included.
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * Points this media object to another file, e.g. after it was relocated. The attributes snapshot of the previous file is dropped.
+	 *
+	 * @param file the new file of this media object.
+	 */
 	public void setFile(File file) {
-		this.file = file;
+		locate(file);
+		this.attributes = null;
+	}
+
+	private void locate(File file) {
+		this.directory = internDirectory(file.getParentFile());
+		this.fileName = file.getName();
+	}
+
+	/**
+	 * Returns the File object of the given directory that is shared by every Media object in it, so that the thousands of episodes of a season do
+	 * not each hold a copy of its path.
+	 */
+	private static File internDirectory(File directory) {
+		if (directory == null) return null;
+		synchronized (directories) {
+			WeakReference<File> reference = directories.get(directory);
+			File interned = reference != null ? reference.get() : null;
+			if (interned == null) {
+				interned = directory;
+				directories.put(directory, new WeakReference<>(directory));
+			}
+			return interned;
+		}
+	}
+
+	/**
+	 * Returns the attributes of the file as they were read when it was found (e.g. during the walk of its source directory), so that checks that
+	 * can live with a snapshot do not have to ask the file system again. Checks that must see the current state of the file should not rely on it.
+	 *
+	 * @return the attributes snapshot of the file, or null if none was taken.
+	 */
+	public BasicFileAttributes getAttributes() {
+		return attributes;
+	}
+
+	void setAttributes(BasicFileAttributes attributes) {
+		this.attributes = attributes;
+	}
+
+	/**
+	 * Checks whether the file is a regular file, according to the attributes snapshot if there is one.
+	 *
+	 * @return true if the file is a regular file.
+	 */
+	protected boolean isRegularFile() {
+		return attributes != null ? attributes.isRegularFile() : getFile().isFile();
 	}
 
 	public MediaType getType() {
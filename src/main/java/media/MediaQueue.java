@@ -5,19 +5,37 @@ import org.slf4j.LoggerFactory;
 import yjohnson.PathFinder;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 	private static final Logger logger = LoggerFactory.getLogger(MediaQueue.class);
-	private final LinkedList<MediaList> queue;
+	private final ArrayList<MediaList> queue;
+	private int items;
 
 	/**
-	 * Constructs a LinkedList queue for MediaList objects, which in turn stores Media objects to process together. The resulting MediaQueue object is
-	 * iterable at the MediaList level but is meant to be the "accessible" data structure.
+	 * Constructs an array-backed queue for MediaList objects, which in turn stores Media objects to process together. The resulting MediaQueue
+	 * object is iterable at the MediaList level but is meant to be the "accessible" data structure.
 	 * <p>
 	 * The constructor will use the src and ext parameters to do a recursive file search within the src directory. It will store the paths of all
 	 * files that have the given extension.
@@ -27,8 +45,21 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 	 * @param type the Media subtype to assign the file to
 	 */
 	public MediaQueue(Path src, String ext, MediaType type) {
+		this(src, ext, type, null);
+	}
+
+	/**
+	 * Constructs a MediaQueue like {@link #MediaQueue(Path, String, MediaType)}, but searches the src directory through the given scan index, so
+	 * that directories and files that have not changed since an earlier scan are neither listed nor parsed again.
+	 *
+	 * @param src   the source directory to search within
+	 * @param ext   the extension to filter by
+	 * @param type  the Media subtype to assign the file to
+	 * @param index the scan index to search with, or null to search the whole directory
+	 */
+	public MediaQueue(Path src, String ext, MediaType type, ScanIndex index) {
 		logger.debug("Creating new media queue.");
-		this.queue = new LinkedList<>();
+		this.queue = new ArrayList<>();
 
 		if (!src.toFile().exists()) {
 			logger.error("Given source path (src = \"{}\") does not exist.", src);
@@ -45,14 +76,14 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 			if (src.toFile().isDirectory()) {
 				switch (type) {
 					case MOVIE:
-						for (File f : PathFinder.findFiles(src, ext)) {
-							MediaList list = new MediaList(f.toPath(), ext, type);
+						for (Map.Entry<Path, BasicFileAttributes> f : findFiles(index, src, Set.of(ext), 1).entrySet()) {
+							MediaList list = new MediaList(f.getKey(), ext, type, index, f.getValue());
 							addMediaListToQueue(list);
 						}
 						break;
 					case TV:
 					default:
-						MediaList list = new MediaList(src, ext, type);
+						MediaList list = new MediaList(src, ext, type, index);
 						addMediaListToQueue(list);
 				}
 			}
@@ -67,10 +98,20 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 
 	}
 
+	private MediaQueue() {
+		logger.debug("Creating new media queue.");
+		this.queue = new ArrayList<>();
+	}
+
+	private static Map<Path, BasicFileAttributes> findFiles(ScanIndex index, Path path, Set<String> exts, int parallelism) {
+		return index != null ? index.findFileAttributes(path, exts, parallelism) : PathFinder.findFileAttributes(path, exts, parallelism);
+	}
+
 	private boolean addMediaListToQueue(MediaList list) {
 		if (!list.isEmpty()) {
 			logger.debug("Media list (name = \"{}\", size = {}) added to queue.", list.name, list.size());
 			this.queue.add(list);
+			this.items += list.size();
 			return true;
 		} else {
 			logger.warn(
@@ -88,54 +129,61 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 		return queue.iterator();
 	}
 
+	/**
+	 * Returns the media list at the given position of the queue.
+	 *
+	 * @param index the position of the media list, starting at 0.
+	 *
+	 * @return the media list at that position.
+	 */
+	public MediaList get(int index) {
+		return queue.get(index);
+	}
+
+	/**
+	 * Writes the overview of this queue to the given writer as it goes, instead of building it in memory like {@link #toString()}.
+	 *
+	 * @param out  the writer to write the overview to; it is flushed, but not closed.
+	 * @param mode whether every item or only a summary is written.
+	 *
+	 * @throws IOException if the writer could not be written to.
+	 * @see QueueOverview
+	 */
+	public void writeOverview(Writer out, QueueOverview.Mode mode) throws IOException {
+		new QueueOverview(out).write(this, mode);
+	}
+
 	@Override
 	public String toString() {
-		StringBuilder builder = new StringBuilder();
-		builder.append("Media Queue (sublists = ")
-		       .append(this.queue.size())
-		       .append(", items = ")
-		       .append(this.size())
-		       .append("):")
-		       .append("\n");
-
-		for (int listIdx = 0; listIdx < queue.size(); listIdx++) {
-			MediaList mediaList = queue.get(listIdx);
-			builder.append(listIdx + 1)
-			       .append(". ")
-			       .append(mediaList.toString())
-			       .append(" (items = ")
-			       .append(mediaList.size())
-			       .append(")")
-			       .append("\n");
-
-			for (int itemIdx = 0; itemIdx < mediaList.size(); itemIdx++) {
-				var item = mediaList.getMediaList().get(itemIdx);
-				builder.append("  ")
-				       .append(listIdx + 1)
-				       .append('.')
-				       .append(itemIdx + 1)
-				       .append(". ")
-				       .append(item.getFile().getName())
-				       .append(" -> ")
-				       .append(item.getCustomFilename())
-				       .append("\n\n");
-			}
+		StringWriter writer = new StringWriter();
+		try {
+			writeOverview(writer, QueueOverview.Mode.FULL);
+		} catch (IOException e) {
+			/* A StringWriter does not throw */
+			throw new UncheckedIOException(e);
 		}
-		return builder.toString();
+		return writer.toString();
 	}
 
+	/**
+	 * @return the number of MediaLists in the queue.
+	 */
+	public int getSublistCount() {
+		return queue.size();
+	}
+
+	/**
+	 * @return the number of Media objects in every list of the queue.
+	 */
 	public int size() {
-		int size = 0;
-		for (MediaList l : queue) {
-			size += l.size();
-		}
-		return size;
+		return items;
 	}
 
 	public static class MediaList implements Iterable<Media> {
 		private final Path dir;
 		private final String ext;
-		private final LinkedList<Media> mediaList;
+		private final ScanIndex index;
+		private final ArrayList<Media> mediaList;
 		private String name;
 
 		/**
@@ -144,22 +192,41 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 		 * extension matches the given argument to process them as Media.class subtypes. It will then don the name that corresponds to the majority of
 		 * files within the list.
 		 *
-		 * @param path the directory to search within or the file to use.
-		 * @param ext  the extension to filter by.
-		 * @param type the type to designate the media with.
+		 * @param path  the directory to search within or the file to use.
+		 * @param ext   the extension to filter by.
+		 * @param type  the type to designate the media with.
+		 * @param index the scan index to search and parse with, or null.
 		 *
 		 * @throws NoSuchFileException when the file or directory does not exist.
 		 */
-		private MediaList(Path path, String ext, MediaType type) throws NoSuchFileException {
-			this.mediaList = new LinkedList<>();
+		private MediaList(Path path, String ext, MediaType type, ScanIndex index) throws NoSuchFileException {
+			this(path, ext, type, index, (BasicFileAttributes) null);
+		}
+
+		/**
+		 * Creates a MediaList like {@link #MediaList(Path, String, MediaType, ScanIndex)} out of a path whose attributes were already read, e.g. a
+		 * file found by a walk of its source directory. The attributes are used instead of checking the path again.
+		 *
+		 * @param path       the directory to search within or the file to use.
+		 * @param ext        the extension to filter by.
+		 * @param type       the type to designate the media with.
+		 * @param index      the scan index to search and parse with, or null.
+		 * @param attributes the attributes of the path, or null to read them from the file system.
+		 *
+		 * @throws NoSuchFileException when the file or directory does not exist.
+		 */
+		private MediaList(Path path, String ext, MediaType type, ScanIndex index, BasicFileAttributes attributes) throws NoSuchFileException {
+			this.mediaList = new ArrayList<>();
 			this.dir = path;
 			this.ext = ext;
+			this.index = index;
 			File dirF = path.toFile();
-			if (!dirF.isDirectory()) {
-				if (dirF.isFile() && dirF.canRead()) {
+			if (attributes != null ? !attributes.isDirectory() : !dirF.isDirectory()) {
+				if ((attributes != null ? attributes.isRegularFile() : dirF.isFile()) && dirF.canRead()) {
 					logger.debug("Given path (path = \"{}\") corresponds to a file; setting this media list as a single-object list.", path);
-					addFileToList(type, dirF);
-					this.name = this.mediaList.getLast().getMediaTitle();
+					addFileToList(type, path, attributes);
+					this.mediaList.trimToSize();
+					this.name = this.mediaList.get(this.mediaList.size() - 1).getMediaTitle();
 				} else {
 					logger.error("Given path (path = \"{}\") is not recognized as a directory nor as a file.", path);
 					logger.warn("Throwing an exception due to invalid path.");
@@ -167,28 +234,59 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 				}
 			} else {
 				logger.debug("Creating new media list, type {}; searching for files with extension {} in {}", type.name(), ext, path);
-				HashMap<String, Integer> listNames = new HashMap<>();
-				for (File f : PathFinder.findFiles(dir, ext)) {
-					addFileToList(type, f);
+				addFilesToList(type, findFiles(index, dir, Set.of(ext), 1));
+			}
+		}
 
-					Media m = this.mediaList.getLast();
-					tallyNames(listNames, m);
-				}
-				int freq = -1;
-				for (String key : listNames.keySet()) {
-					if (listNames.get(key) > freq) {
-						freq = listNames.get(key);
-						this.name = key;
-					}
+		/**
+		 * Creates a MediaList out of the files that were already found within a directory, e.g. by a walk that filtered several extensions at once.
+		 *
+		 * @param dir   the directory the files were found in.
+		 * @param ext   the extension(s) the files were filtered by.
+		 * @param type  the type to designate the media with.
+		 * @param index the scan index to parse with, or null.
+		 * @param files the files to add to the list, mapped to their attributes (or null).
+		 */
+		private MediaList(Path dir, String ext, MediaType type, ScanIndex index, Map<Path, BasicFileAttributes> files) {
+			this.mediaList = new ArrayList<>();
+			this.dir = dir;
+			this.ext = ext;
+			this.index = index;
+			logger.debug("Creating new media list, type {}, out of {} files with extension {} found in {}", type.name(), files.size(), ext, dir);
+			addFilesToList(type, files);
+		}
+
+		/**
+		 * Adds every given file to the list, parsing them in parallel but keeping their order, and names the list after the title shared by most of
+		 * them.
+		 */
+		private void addFilesToList(MediaType type, Map<Path, BasicFileAttributes> files) {
+			List<Media> parsed = index != null
+			                     ? type.instantiateAll(files.keySet(), p -> index.instantiate(type, p, files.get(p)))
+			                     : type.instantiateAll(files);
+
+			HashMap<String, Integer> listNames = new HashMap<>();
+			for (Media m : parsed) {
+				if (m == null) continue;
+				logger.trace("Adding {} to the list as a {}.", m.getFileName(), type.name());
+				mediaList.add(m);
+				tallyNames(listNames, m);
+			}
+			mediaList.trimToSize();
+			int freq = -1;
+			for (String key : listNames.keySet()) {
+				if (listNames.get(key) > freq) {
+					freq = listNames.get(key);
+					this.name = key;
 				}
-				logger.debug("List name has been set to {}. # of files with this name: {}.", this.name, freq);
 			}
+			logger.debug("List name has been set to {}. # of files with this name: {}.", this.name, freq);
 		}
 
-		private void addFileToList(MediaType type, File f) {
+		private void addFileToList(MediaType type, Path f, BasicFileAttributes attributes) {
 			try {
-				logger.trace("Adding {} to the list as a {}.", f.getName(), type.name());
-				mediaList.add(type.instantiate(f.toPath()));
+				logger.trace("Adding {} to the list as a {}.", f.getFileName(), type.name());
+				mediaList.add(index != null ? index.instantiate(type, f, attributes) : type.instantiate(f, attributes));
 			} catch (IllegalArgumentException e) {
 				logger.error("Passing file \"{}\" to {} instantiation method produced a \"Not a file\" error", f, type);
 				logger.error(e.toString());
@@ -221,10 +319,6 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 			}
 		}
 
-		private LinkedList<Media> getMediaList() {
-			return mediaList;
-		}
-
 		@Override
 		public String toString() {
 			return this.name;
@@ -246,9 +340,187 @@ public class MediaQueue implements Iterable<MediaQueue.MediaList> {
 			return mediaList.size();
 		}
 
+		/**
+		 * Returns the Media object at the given position of the list.
+		 *
+		 * @param index the position of the Media object, starting at 0.
+		 *
+		 * @return the Media object at that position.
+		 */
+		public Media get(int index) {
+			return mediaList.get(index);
+		}
+
 		@Override
 		public Iterator<Media> iterator() {
 			return this.mediaList.iterator();
 		}
 	}
+
+	/**
+	 * Builds a single MediaQueue out of several source directories, each with its own Media subtype, and several extensions. Every source is walked
+	 * once for all of the extensions, the sources are walked and parsed concurrently, and the results are merged into one queue in the order the
+	 * sources were added. A file that is reachable from more than one source (i.e. nested sources) is only queued for the first of them.
+	 */
+	public static class Builder {
+		private final Map<Path, MediaType> sources = new LinkedHashMap<>();
+		private final Set<String> extensions = new LinkedHashSet<>();
+		private ScanIndex index;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+
+		/**
+		 * Adds a source directory to search within. Adding the same directory again replaces its type.
+		 *
+		 * @param src  the source directory to search within
+		 * @param type the Media subtype to assign its files to
+		 *
+		 * @return this builder.
+		 */
+		public Builder addSource(Path src, MediaType type) {
+			if (!src.toFile().isDirectory()) {
+				logger.error("Given source path (src = \"{}\") is not a directory.", src);
+				throw new IllegalArgumentException("Given source path (src = \"" + src + "\") is not a directory.");
+			}
+			sources.put(src.toAbsolutePath().normalize(), type);
+			return this;
+		}
+
+		/**
+		 * Adds an extension to filter by, for every source.
+		 *
+		 * @param ext the extension, starting with a '.'
+		 *
+		 * @return this builder.
+		 */
+		public Builder addExtension(String ext) {
+			if (!ext.startsWith(".")) {
+				logger.error("Given extension string (ext = \"{}\") for {} is not valid.", ext, this.getClass().getName());
+				throw new IllegalArgumentException("Given extension string (ext = \"" + ext + "\") for " + this.getClass().getName() + " is not valid.");
+			}
+			extensions.add(ext.toLowerCase(Locale.ROOT));
+			return this;
+		}
+
+		/**
+		 * Adds several extensions to filter by, for every source.
+		 *
+		 * @param exts the extensions, each starting with a '.'
+		 *
+		 * @return this builder.
+		 */
+		public Builder addExtensions(Collection<String> exts) {
+			for (String ext : exts) {
+				addExtension(ext);
+			}
+			return this;
+		}
+
+		/**
+		 * Sets the scan index that the sources are searched and parsed through. None is used by default.
+		 *
+		 * @param index the scan index, or null to search every source in full.
+		 *
+		 * @return this builder.
+		 */
+		public Builder setScanIndex(ScanIndex index) {
+			this.index = index;
+			return this;
+		}
+
+		/**
+		 * Sets the number of sources to scan concurrently, and the number of directories to list concurrently while they are scanned (see
+		 * {@link PathFinder#findFileAttributes(Path, Set, int)} and {@link ScanIndex#findFileAttributes(Path, Set, int)}). Without a scan index,
+		 * the directories are shared out between the sources that are scanned at once; the scan index scans one source at a time, with all of
+		 * them. Defaults to the number of available processors.
+		 *
+		 * @param parallelism the number of concurrent scans.
+		 *
+		 * @return this builder.
+		 */
+		public Builder setParallelism(int parallelism) {
+			this.parallelism = Math.max(1, parallelism);
+			return this;
+		}
+
+		/**
+		 * Scans every source and merges the results into one queue.
+		 *
+		 * @return the merged media queue.
+		 */
+		public MediaQueue build() {
+			if (sources.isEmpty() || extensions.isEmpty()) {
+				logger.error("Cannot build a media queue without sources (given: {}) and extensions (given: {}).", sources.size(), extensions.size());
+				throw new IllegalStateException("A media queue needs at least one source and one extension.");
+			}
+
+			MediaQueue mediaQueue = new MediaQueue();
+			String ext = String.join(", ", extensions);
+			List<Path> srcs = new ArrayList<>(sources.keySet());
+			int threads = Math.min(parallelism, srcs.size());
+			int walkParallelism = index != null ? parallelism : Math.max(1, parallelism / threads);
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				List<Future<Map<Path, BasicFileAttributes>>> scans = new ArrayList<>();
+				for (Path src : srcs) {
+					scans.add(pool.submit(() -> findFiles(index, src, extensions, walkParallelism)));
+				}
+
+				Set<Path> seen = new HashSet<>();
+				List<Future<List<MediaList>>> lists = new ArrayList<>();
+				for (int i = 0; i < srcs.size(); i++) {
+					Path src = srcs.get(i);
+					MediaType type = sources.get(src);
+					Map<Path, BasicFileAttributes> files = new LinkedHashMap<>();
+					for (Map.Entry<Path, BasicFileAttributes> f : getOrEmpty(scans.get(i), src, Map.of()).entrySet()) {
+						if (seen.add(f.getKey().toAbsolutePath().normalize())) files.put(f.getKey(), f.getValue());
+						else logger.debug("File \"{}\" was already found in another source; skipping it for \"{}\".", f.getKey(), src);
+					}
+					lists.add(pool.submit(() -> createMediaLists(src, ext, type, files)));
+				}
+
+				for (int i = 0; i < srcs.size(); i++) {
+					for (MediaList list : getOrEmpty(lists.get(i), srcs.get(i), List.of())) {
+						mediaQueue.addMediaListToQueue(list);
+					}
+				}
+			} catch (InterruptedException e) {
+				logger.warn("Interrupted while scanning the sources; the media queue is incomplete.");
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+			} finally {
+				pool.shutdown();
+			}
+			return mediaQueue;
+		}
+
+		/**
+		 * Groups the files of a source the way the MediaQueue constructor does: one list per movie, or one list per TV source.
+		 */
+		private List<MediaList> createMediaLists(Path src, String ext, MediaType type, Map<Path, BasicFileAttributes> files)
+				throws NoSuchFileException {
+			List<MediaList> lists = new ArrayList<>();
+			switch (type) {
+				case MOVIE:
+					for (Map.Entry<Path, BasicFileAttributes> f : files.entrySet()) {
+						lists.add(new MediaList(f.getKey(), ext, type, index, f.getValue()));
+					}
+					break;
+				case TV:
+				default:
+					lists.add(new MediaList(src, ext, type, index, files));
+			}
+			return lists;
+		}
+
+		private static <T> T getOrEmpty(Future<T> future, Path src, T empty) throws InterruptedException {
+			try {
+				return future.get();
+			} catch (ExecutionException e) {
+				logger.error("Scanning source \"{}\" failed; it will be left out of the media queue.", src);
+				logger.error(e.getCause().toString());
+				e.getCause().printStackTrace();
+				return empty;
+			}
+		}
+	}
 }
@@ -2,8 +2,17 @@ package media;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import yjohnson.EventLog;
 
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 /**
  * The three media types to assign to all subclasses of Media.
@@ -11,22 +20,14 @@ import java.nio.file.Path;
 public enum MediaType {
 	TV {
 		@Override
-		public TV instantiate (Path path) {
-			if (path.toFile().isFile()) return new TV(path.toAbsolutePath().toString());
-			else {
-				logger.error("Cannot instantiate new {} object; path (path = \"{}\") does not lead to a file.", this, path);
-				throw new IllegalArgumentException("Given path does not lead to a file.");
-			}
+		TV create (String path) {
+			return new TV(path);
 		}
 	},
 	MOVIE {
 		@Override
-		public Movie instantiate (Path path) {
-			if (path.toFile().isFile()) return new Movie(path.toAbsolutePath().toString());
-			else {
-				logger.error("Cannot instantiate new {} object; path (path = \"{}\") does not lead to a file.", this, path);
-				throw new IllegalArgumentException("Given path does not lead to a file.");
-			}
+		Movie create (String path) {
+			return new Movie(path);
 		}
 	};
 
@@ -38,6 +39,80 @@ public enum MediaType {
 	 * @param path a valid path to a file object.
 	 * @return the newly formed Media subclass object.
 	 */
-	public abstract Media instantiate (Path path);
+	public Media instantiate (Path path) {
+		return instantiate(path, null);
+	}
+
+	/**
+	 * Instantiates a new media object with the given path of a file, whose attributes were already read (e.g. while walking its source
+	 * directory). The attributes are used instead of checking the file again and are kept on the media object.
+	 *
+	 * @param path       a valid path to a file object.
+	 * @param attributes the attributes of the file, or null to read them from the file system.
+	 * @return the newly formed Media subclass object.
+	 */
+	public Media instantiate (Path path, BasicFileAttributes attributes) {
+		if (attributes != null ? attributes.isRegularFile() : path.toFile().isFile()) {
+			long start = System.nanoTime();
+			Media media = create(path.toAbsolutePath().toString());
+			media.setAttributes(attributes);
+			EventLog.record(EventLog.Type.PARSED, path, null, System.nanoTime() - start, this.toString());
+			return media;
+		} else {
+			logger.error("Cannot instantiate new {} object; path (path = \"{}\") does not lead to a file.", this, path);
+			EventLog.record(EventLog.Type.FAILED, path, null, -1, "not a file");
+			throw new IllegalArgumentException("Given path does not lead to a file.");
+		}
+	}
+
+	abstract Media create (String path);
+
+	/**
+	 * Instantiates a new media object for every given path. Parsing a file name does not depend on any other file, so the paths are parsed in
+	 * parallel across the available cores.
+	 * <p>
+	 * The returned list is in the same order as the given collection. A path that does not lead to a file is logged and leaves a null in its
+	 * place, so that the result can still be matched up with the input.
+	 *
+	 * @param paths valid paths to file objects.
+	 * @return the newly formed Media subclass objects, in input order.
+	 */
+	public List<Media> instantiateAll(Collection<Path> paths) {
+		return instantiateAll(paths, this::instantiate);
+	}
+
+	/**
+	 * Instantiates a new media object for every given file, like {@link #instantiateAll(Collection)}, using the attributes that were read when the
+	 * files were found instead of checking each file again.
+	 *
+	 * @param files valid paths to file objects, mapped to their attributes (or null to read them from the file system).
+	 * @return the newly formed Media subclass objects, in the iteration order of the map.
+	 */
+	public List<Media> instantiateAll(Map<Path, BasicFileAttributes> files) {
+		return instantiateAll(files.keySet(), path -> instantiate(path, files.get(path)));
+	}
+
+	/**
+	 * Applies the given parser to every path in parallel, like {@link #instantiateAll(Collection)}.
+	 *
+	 * @param paths  valid paths to file objects.
+	 * @param parser the method that turns a path into a Media object of this type.
+	 * @return the newly formed Media subclass objects, in input order.
+	 */
+	List<Media> instantiateAll(Collection<Path> paths, Function<Path, Media> parser) {
+		List<Path> input = new ArrayList<>(paths);
+		Media[] results = new Media[input.size()];
+		logger.debug("Instantiating {} {} objects in parallel.", input.size(), this);
+		IntStream.range(0, input.size()).parallel().forEach(i -> {
+			Path path = input.get(i);
+			try {
+				results[i] = parser.apply(path);
+			} catch (IllegalArgumentException e) {
+				logger.error("Passing file \"{}\" to {} instantiation method produced a \"Not a file\" error", path, this);
+				logger.error(e.toString());
+			}
+		});
+		return Arrays.asList(results);
+	}
 
 }
@@ -3,29 +3,13 @@ package media;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 public class MetadataOps {
 
 	protected static final String[] unwantedSpaces = {".", "_"};
 	protected static final String[] unwantedBrackets = {"[", "]", "(", ")"};
 	protected static final String RES_UNKNOWN = "Unknown";
 	protected static final String EPISODE_UNKNOWN = "Special";
-	protected static final int MAX_NUMBER_OF_SEASONS = 15;            // Used as a max to find the season number.
-	protected static final int MAX_NUMBER_OF_EPISODES = 300;          // Used as a max to find the episode number.
 	private static final Logger logger = LoggerFactory.getLogger(MetadataOps.class);
-	private static final String RESOLUTION = "Resolution";
-	private static final String[] resRegex;
-
-	static {
-		resRegex = new String[]{
-				"(3996\\s?x\\s?)?(?<" + RESOLUTION + ">2160?)",
-				"(1920\\s?x\\s?)?(?<" + RESOLUTION + ">1080p?)",
-				"(1280\\s?x\\s?)?(?<" + RESOLUTION + ">720p?)",
-				"(854\\s?x\\s?)?(?<" + RESOLUTION + ">480p?)"
-		};
-	}
 
 	/**
 	 * Method designed to verify whether or not a known resolution appears within the given string. The implementation is not currently capable of
@@ -40,16 +24,10 @@ public class MetadataOps {
 	 */
 	public static String getResolution(String fn) {
 		logger.debug("Attempting to parse resolution from string \"{}\"", fn);
-		for (String resolution : resRegex) {
-			logger.trace("Matching \"{}\" against \"{}\".", resolution, fn);
-			Pattern p = Pattern.compile(resolution);
-			Matcher m = p.matcher(fn);
-			if (m.find() && !m.group(RESOLUTION).isBlank()) {
-				String trimmedRes = m.group(RESOLUTION).trim();
-				logger.debug("Resolution was identified as {} for \"{}\"", trimmedRes, fn);
-				return trimmedRes +
-						(trimmedRes.endsWith("p") ? "" : "p");
-			}
+		String resolution = FilenameTokens.ofText(fn).resolution();
+		if (!resolution.equals(RES_UNKNOWN)) {
+			logger.debug("Resolution was identified as {} for \"{}\"", resolution, fn);
+			return resolution;
 		}
 
 		logger.warn("Resolution was NOT identified for \"{}\"; returning \"{}\".", fn, RES_UNKNOWN);
@@ -6,16 +6,11 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.nio.file.Path;
 import java.util.Calendar;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class Movie extends Media {
 	private static final Logger logger = LoggerFactory.getLogger(Movie.class);
 
 	private static final int UNKNOWN_RELEASE_YEAR = -1;
-	private static final char[] OS_YEAR = String.valueOf(Calendar.getInstance().get(Calendar.YEAR)).trim().toCharArray();
-	private static final Pattern regexReleaseYear = Pattern.compile(
-			"\\b(?<year>1[8-9][0-9][0-9]|2[0-" + OS_YEAR[1] + "][0-" + OS_YEAR[2] + "][0-9])\\b");
 
 
 	private int releaseYear = 0;
@@ -29,7 +24,25 @@ public class Movie extends Media {
 	public Movie(String path) {
 		super(path, MediaType.MOVIE);
 		this.extractTitleInfo();
-		logger.info("Created \"{}\" ({}) from source file \"{}\"", this.getCustomFilename(), this.getClass().getName(), this.getFile().getName());
+		logger.debug("Created \"{}\" ({}) from source file \"{}\"", this.getCustomFilename(), this.getClass().getName(), this.getFileName());
+	}
+
+	/**
+	 * Restores a Movie object from information that was parsed from the same file by an earlier run, without parsing its name again.
+	 *
+	 * @param path        the path to the Media file
+	 * @param movieName   the parsed title of the movie
+	 * @param releaseYear the parsed release year
+	 * @param customName  the custom name that was generated from the above
+	 * @param resolution  the parsed resolution
+	 */
+	Movie(String path, String movieName, int releaseYear, String customName, String resolution) {
+		super(path, MediaType.MOVIE);
+		this.movieName = movieName.intern();
+		this.releaseYear = releaseYear;
+		this.customName = customName;
+		this.resolution = resolution.intern();
+		logger.debug("Restored \"{}\" ({}) from source file \"{}\"", this.getCustomFilename(), this.getClass().getName(), this.getFileName());
 	}
 
 	/**
@@ -37,28 +50,29 @@ public class Movie extends Media {
 	 * episode number.
 	 */
 	public void extractTitleInfo() {
-		logger.info("Parsing Movie information for \"{}\".", this.getFile().getName());
+		logger.debug("Parsing Movie information for \"{}\".", this.getFileName());
 
-		this.resolution = MetadataOps.getResolution(this.file.getName());
-		parseReleaseYear();
+		FilenameTokens tokens = FilenameTokens.ofFileName(this.getFileName());
+		this.resolution = tokens.resolution();
+		parseReleaseYear(tokens);
 
 		if (this.releaseYear == UNKNOWN_RELEASE_YEAR) {
 			String name = MetadataOps
 					.removeUnwantedSpaces(
 							MetadataOps.removeBrackets(
-									this.file.getName()
-									         .substring(0, this.file.getName().lastIndexOf('.'))
+									this.getFileName()
+									         .substring(0, this.getFileName().lastIndexOf('.'))
 							)
 					).trim();
-			this.movieName = this.customName = name;
+			this.movieName = this.customName = name.intern();
 		} else {
 			String name = MetadataOps
 					.removeUnwantedSpaces(
 							MetadataOps.removeBrackets(
-									this.file.getName()
-									         .substring(0, this.file.getName().lastIndexOf(Integer.toString(this.releaseYear)))))
+									this.getFileName()
+									         .substring(0, this.getFileName().lastIndexOf(Integer.toString(this.releaseYear)))))
 					.trim();
-			this.movieName = name;
+			this.movieName = name.intern();
 			this.customName = name + " (" + releaseYear + ")";
 		}
 
@@ -66,30 +80,29 @@ public class Movie extends Media {
 				"Parsed movie name as \"{}\" with release year of {} (src = \"{}\").",
 				this.movieName,
 				this.releaseYear,
-				this.getFile().getName()
+				this.getFileName()
 		);
 		logger.trace(
 				"Proposed custom name \"{}\" --> \"{}\"",
-				this.getFile().getName().substring(0, this.getFile().getName().lastIndexOf('.')),
+				this.getFileName().substring(0, this.getFileName().lastIndexOf('.')),
 				this.customName
 		);
 	}
 
-	private void parseReleaseYear() {
-		String fileName = this.file.getName();
+	private void parseReleaseYear(FilenameTokens tokens) {
+		String fileName = this.getFileName();
 		logger.debug("Retrieving movie release year from file name (filename = \"{}\").", fileName);
 		logger.trace("Valid movie release year range: 1800 - {}.", Calendar.getInstance().get(Calendar.YEAR) + 1);
-		Matcher matcher = regexReleaseYear.matcher(fileName);
-		if (matcher.find() && matcher.group("year") != null) {
-			logger.debug("Release year pattern matched against file \"{}\" with a result of {}.", fileName, matcher.group("year"));
-			this.releaseYear = Integer.parseInt(matcher.group("year"));
+		if (tokens.releaseYear() != UNKNOWN_RELEASE_YEAR) {
+			logger.debug("Release year token found in file \"{}\" with a result of {}.", fileName, tokens.releaseYear());
+			this.releaseYear = tokens.releaseYear();
 		} else {
-			String parentDir = this.file.getParentFile().getName();
+			String parentDir = this.getDirectory().getName();
 			logger.warn("File name did not match a release year. Attempting to match parent directory (dir = \"{}\").", parentDir);
-			matcher = regexReleaseYear.matcher(parentDir);
-			if (matcher.find() && matcher.group("year") != null) {
-				logger.debug("Release year pattern matched against parent directory \"{}\" with a result of {}.", parentDir, matcher.group("year"));
-				this.releaseYear = Integer.parseInt(matcher.group("year"));
+			int parentYear = FilenameTokens.ofText(parentDir).releaseYear();
+			if (parentYear != UNKNOWN_RELEASE_YEAR) {
+				logger.debug("Release year token found in parent directory \"{}\" with a result of {}.", parentDir, parentYear);
+				this.releaseYear = parentYear;
 			} else {
 				logger.warn(
 						"Parent directory name did not match a release year. Setting \"Unknown\" value '{}' to release year (dir = \"{}\").",
@@ -146,6 +159,6 @@ public class Movie extends Media {
 	@Override
 	public boolean isValid() {
 		/* If the file exists and both the movie name and custom name exist, then it is a valid Movie object */
-		return this.getFile().isFile() && !this.movieName.isEmpty() && !this.customName.isEmpty();
+		return this.isRegularFile() && !this.movieName.isEmpty() && !this.customName.isEmpty();
 	}
 }
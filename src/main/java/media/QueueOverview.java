@@ -0,0 +1,174 @@
+package media;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writes the overview of a MediaQueue to a Writer line by line as it walks the queue, instead of building the whole overview as one String first.
+ * The first lines of a large queue show up right away, and the memory used does not grow with the size of the queue.
+ * <p>
+ * The full overview lists every Media object of every MediaList, in the same format as {@link MediaQueue#toString()}, and can be split into pages:
+ * after every page of items, the writer is flushed and the caller is asked whether to go on. The summary overview only counts the items of each
+ * title, and of each season of a TV show.
+ */
+public class QueueOverview {
+	private static final Logger logger = LoggerFactory.getLogger(QueueOverview.class);
+
+	private final Writer out;
+	private int pageSize = 0;
+	private BooleanSupplier nextPage = () -> true;
+
+	/**
+	 * Prepares an overview that is written to the given writer. The writer is flushed, but not closed, once the overview is written.
+	 *
+	 * @param out the writer to write the overview to.
+	 */
+	public QueueOverview(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * Splits the full overview into pages of the given number of items.
+	 *
+	 * @param pageSize the number of items per page, or 0 to write every item at once.
+	 * @param nextPage called after every page; returns true to write the next page, or false to stop the overview there.
+	 *
+	 * @return this overview.
+	 */
+	public QueueOverview setPagination(int pageSize, BooleanSupplier nextPage) {
+		this.pageSize = Math.max(0, pageSize);
+		this.nextPage = nextPage;
+		return this;
+	}
+
+	/**
+	 * Writes the overview of the given queue.
+	 *
+	 * @param queue the queue to write the overview of.
+	 * @param mode  whether every item or only a summary is written.
+	 *
+	 * @throws IOException if the writer could not be written to.
+	 */
+	public void write(MediaQueue queue, Mode mode) throws IOException {
+		logger.debug("Writing {} overview of media queue (items = {}, page size = {}).", mode, queue.size(), pageSize);
+		switch (mode) {
+			case SUMMARY:
+				writeSummary(queue);
+				break;
+			case FULL:
+			default:
+				writeFull(queue);
+		}
+		out.flush();
+	}
+
+	private void writeFull(MediaQueue queue) throws IOException {
+		writeHeader("Media Queue", queue);
+
+		int listIdx = 0, written = 0;
+		for (MediaQueue.MediaList mediaList : queue) {
+			listIdx++;
+			out.append(String.valueOf(listIdx))
+			   .append(". ")
+			   .append(mediaList.toString())
+			   .append(" (items = ")
+			   .append(String.valueOf(mediaList.size()))
+			   .append(")")
+			   .append("\n");
+
+			int itemIdx = 0;
+			for (Media item : mediaList) {
+				if (pageSize > 0 && written > 0 && written % pageSize == 0) {
+					out.flush();
+					if (!nextPage.getAsBoolean()) {
+						logger.debug("Media queue overview was stopped after {} items.", written);
+						out.append("... ").append(String.valueOf(queue.size() - written)).append(" more items are not shown.\n");
+						return;
+					}
+				}
+				itemIdx++;
+				written++;
+				out.append("  ")
+				   .append(String.valueOf(listIdx))
+				   .append('.')
+				   .append(String.valueOf(itemIdx))
+				   .append(". ")
+				   .append(item.getFile().getName())
+				   .append(" -> ")
+				   .append(item.getCustomFilename())
+				   .append("\n\n");
+			}
+		}
+	}
+
+	/**
+	 * Counts the items of every title in the queue, and of every season of the TV shows among them, in the order the titles first appear.
+	 */
+	private void writeSummary(MediaQueue queue) throws IOException {
+		Map<String, Integer> titles = new LinkedHashMap<>();
+		Map<String, Map<Integer, Integer>> seasons = new LinkedHashMap<>();
+		for (MediaQueue.MediaList mediaList : queue) {
+			for (Media item : mediaList) {
+				String title = item.getMediaTitle();
+				titles.merge(title, 1, Integer::sum);
+				if (item instanceof TV) {
+					seasons.computeIfAbsent(title, t -> new TreeMap<>()).merge(((TV) item).getSeasonNumber(), 1, Integer::sum);
+				}
+			}
+		}
+
+		writeHeader("Media Queue Summary", queue);
+		for (Map.Entry<String, Integer> title : titles.entrySet()) {
+			out.append(title.getKey()).append(" (items = ").append(String.valueOf(title.getValue())).append(")").append("\n");
+			for (Map.Entry<Integer, Integer> season : seasons.getOrDefault(title.getKey(), Map.of()).entrySet()) {
+				out.append("  Season ")
+				   .append(String.valueOf(season.getKey()))
+				   .append(": ")
+				   .append(String.valueOf(season.getValue()))
+				   .append("\n");
+			}
+		}
+	}
+
+	private void writeHeader(String heading, MediaQueue queue) throws IOException {
+		out.append(heading)
+		   .append(" (sublists = ")
+		   .append(String.valueOf(queue.getSublistCount()))
+		   .append(", items = ")
+		   .append(String.valueOf(queue.size()))
+		   .append("):")
+		   .append("\n");
+	}
+
+	/**
+	 * What an overview includes.
+	 */
+	public enum Mode {
+
+		/**
+		 * Every Media object of every MediaList, along with its custom name.
+		 */
+		FULL,
+		/**
+		 * The number of items of each title and of each season.
+		 */
+		SUMMARY;
+
+		public static String[] toStringArray() {
+			String[] strings = new String[values().length];
+			Mode[] values = values();
+			for (int i = 0; i < values.length; i++) {
+				Mode mode = values[i];
+				strings[i] = mode.toString().replace('_', ' ');
+			}
+			return strings;
+		}
+	}
+}
@@ -0,0 +1,526 @@
+package media;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import yjohnson.EventLog;
+import yjohnson.PathFinder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent index of the source trees that have been scanned before, so that repeated scans of a large download directory only pay for what
+ * has changed since the last run. For every directory the index records its last modified time and its listing (the attributes of its files and
+ * the names of its subdirectories); for every file it records the results of parsing it as a TV or Movie object.
+ * <p>
+ * Adding, removing or renaming an entry changes the last modified time of its directory, so a directory whose time is unchanged is not listed
+ * again: its recorded listing is used instead, and only its subdirectories are checked. Parse results only depend on the path of a file, so a file
+ * keeps them for as long as it keeps its name, size and last modified time. Directories that were modified within {@value #RACY_INTERVAL_SECONDS}
+ * seconds of being listed are listed again on the next scan, since an entry added in the same clock tick would not have changed their time.
+ * <p>
+ * The index file is rewritten as a whole by {@link #save()}: a "D" record per directory (modified time, path), followed by an "S" record per
+ * subdirectory name and an "F" record per file (size, modified time, name), each file followed by a "P" record per parse result.
+ */
+public class ScanIndex {
+	private static final Logger logger = LoggerFactory.getLogger(ScanIndex.class);
+	private static final char SEPARATOR = '\t';
+	private static final long RACY_INTERVAL_SECONDS = 2;
+	private static final long UNTRUSTED = Long.MIN_VALUE;
+	private static final String NULL = "\\0";
+
+	private final Path file;
+	/* Written concurrently by the tasks of a parallel scan, while the scanning thread holds the monitor of the index */
+	private final Map<Path, DirectoryEntry> directories = new ConcurrentHashMap<>();
+	private final AtomicInteger listed = new AtomicInteger(), reused = new AtomicInteger();
+	private int parsed, restored;
+
+	private ScanIndex(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Loads the index stored at the given path. A missing or unreadable index file results in an empty index, which behaves like a full scan.
+	 *
+	 * @param file the index file.
+	 *
+	 * @return the loaded index.
+	 */
+	public static ScanIndex open(Path file) {
+		ScanIndex index = new ScanIndex(file);
+		try {
+			index.load();
+		} catch (IOException | RuntimeException e) {
+			logger.error("Could not read the scan index at \"{}\"; every directory will be scanned again.", file);
+			logger.error(e.toString());
+			index.directories.clear();
+		}
+		return index;
+	}
+
+	/**
+	 * Finds every file with the given extension under the given directory, like {@link yjohnson.PathFinder#findFiles(Path, String)}, but only lists
+	 * the directories that have changed since they were last indexed.
+	 *
+	 * @param path          the source to find files in
+	 * @param fileExtension the file extension you want to filter
+	 *
+	 * @return A list that contains all the files that matched the query.
+	 */
+	public List<File> findFiles(Path path, String fileExtension) {
+		return findFiles(path, Set.of(fileExtension));
+	}
+
+	/**
+	 * Finds every file that has any of the given extensions under the given directory, like {@link yjohnson.PathFinder#findFiles(Path, Set)}, but
+	 * only lists the directories that have changed since they were last indexed.
+	 *
+	 * @param path           the source to find files in
+	 * @param fileExtensions the file extensions you want to filter
+	 *
+	 * @return A list that contains all the files that matched the query.
+	 */
+	public List<File> findFiles(Path path, Set<String> fileExtensions) {
+		List<File> result = new LinkedList<>();
+		for (Path file : findFileAttributes(path, fileExtensions).keySet()) {
+			result.add(file.toFile());
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the same files as {@link #findFiles(Path, Set)}, along with the attributes that were read for each of them when its directory was
+	 * listed, like {@link yjohnson.PathFinder#findFileAttributes(Path, Set)}. Files in directories that were not listed again during this run are
+	 * mapped to null, since the index does not keep their attributes.
+	 *
+	 * @param path           the source to find files in
+	 * @param fileExtensions the file extensions you want to filter
+	 *
+	 * @return the files that matched the query, in the order they were found, mapped to their attributes (or null).
+	 */
+	public Map<Path, BasicFileAttributes> findFileAttributes(Path path, Set<String> fileExtensions) {
+		return findFileAttributes(path, fileExtensions, 1);
+	}
+
+	/**
+	 * Finds the same files as {@link #findFileAttributes(Path, Set)}, in the same order, but checks and lists the directories in parallel on a
+	 * work-stealing ForkJoinPool, like {@link yjohnson.PathFinder#findFileAttributes(Path, Set, int)}. With a parallelism of 1, the directory is
+	 * walked sequentially instead.
+	 *
+	 * @param path           the source to find files in
+	 * @param fileExtensions the file extensions you want to filter
+	 * @param parallelism    the number of directories to check and list concurrently
+	 *
+	 * @return the files that matched the query, in the order they were found, mapped to their attributes (or null).
+	 */
+	public synchronized Map<Path, BasicFileAttributes> findFileAttributes(Path path, Set<String> fileExtensions, int parallelism) {
+		logger.info("Searching for files with extensions {} inside directory \"{}\" (indexed, parallelism = {}).", fileExtensions, path, parallelism);
+		Map<Path, BasicFileAttributes> result = new LinkedHashMap<>();
+		if (!Files.isDirectory(path)) {
+			logger.error("Given path is not a directory (path = \"{}\").", path);
+			return result;
+		}
+
+		int listedBefore = listed.get(), reusedBefore = reused.get();
+		Path root = path.toAbsolutePath().normalize();
+		Set<String> extensions = PathFinder.normalizeExtensions(fileExtensions);
+		if (parallelism <= 1) {
+			walk(root, extensions, result);
+		} else {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				result.putAll(pool.invoke(new DirectoryScan(root, extensions)));
+			} finally {
+				pool.shutdown();
+			}
+		}
+		logger.debug(
+				"Indexed scan of \"{}\" found {} files; {} directories were listed and {} were unchanged.",
+				path, result.size(), listed.get() - listedBefore, reused.get() - reusedBefore
+		);
+		return result;
+	}
+
+	/**
+	 * Instantiates a Media object for the given file, reusing the results of an earlier parse of the same file if it has not changed since.
+	 *
+	 * @param type the Media subtype to assign the file to.
+	 * @param path a valid path to a file object.
+	 *
+	 * @return the newly formed Media subclass object.
+	 */
+	public Media instantiate(MediaType type, Path path) {
+		return instantiate(type, path, null);
+	}
+
+	/**
+	 * Instantiates a Media object for the given file like {@link #instantiate(MediaType, Path)}, using the given attributes (or the ones read when
+	 * its directory was listed) instead of checking the file again.
+	 *
+	 * @param type       the Media subtype to assign the file to.
+	 * @param path       a valid path to a file object.
+	 * @param attributes the attributes of the file, or null.
+	 *
+	 * @return the newly formed Media subclass object.
+	 */
+	public Media instantiate(MediaType type, Path path, BasicFileAttributes attributes) {
+		Path absolute = path.toAbsolutePath().normalize();
+		FileEntry entry;
+		synchronized (this) {
+			entry = fileEntry(absolute);
+			if (attributes == null && entry != null) attributes = entry.attributes;
+			ParseResult result = entry != null ? entry.parsed.get(type) : null;
+			if (result != null) {
+				restored++;
+				long start = System.nanoTime();
+				Media media = result.restore(type, absolute);
+				media.setAttributes(attributes);
+				EventLog.record(EventLog.Type.PARSED, path, null, System.nanoTime() - start, type + " (restored from scan index)");
+				return media;
+			}
+		}
+
+		Media media = type.instantiate(path, attributes);
+		synchronized (this) {
+			parsed++;
+			if (entry != null && entry == fileEntry(absolute)) entry.parsed.put(type, ParseResult.of(media));
+		}
+		return media;
+	}
+
+	/**
+	 * Writes the index to its file, replacing the previous one.
+	 *
+	 * @throws IOException if the index file could not be written.
+	 */
+	public synchronized void save() throws IOException {
+		logger.debug(
+				"Saving scan index \"{}\" ({} directories; {} listed, {} unchanged, {} files parsed, {} restored during this run).",
+				file, directories.size(), listed, reused, parsed, restored
+		);
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+			for (Map.Entry<Path, DirectoryEntry> d : directories.entrySet()) {
+				DirectoryEntry dir = d.getValue();
+				writeRecord(out, "D", Long.toString(dir.modified), escape(d.getKey().toString()));
+				for (String subdirectory : dir.subdirectories) {
+					writeRecord(out, "S", escape(subdirectory));
+				}
+				for (Map.Entry<String, FileEntry> f : dir.files.entrySet()) {
+					FileEntry entry = f.getValue();
+					writeRecord(out, "F", Long.toString(entry.size), Long.toString(entry.modified), escape(f.getKey()));
+					for (Map.Entry<MediaType, ParseResult> p : entry.parsed.entrySet()) {
+						ParseResult r = p.getValue();
+						writeRecord(
+								out, "P", p.getKey().name(), Integer.toString(r.season), Integer.toString(r.episode), Integer.toString(r.year),
+								escape(r.title), escape(r.customName), escape(r.resolution)
+						);
+					}
+				}
+			}
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void walk(Path dir, Set<String> fileExtensions, Map<Path, BasicFileAttributes> result) {
+		DirectoryEntry entry = visit(dir);
+		if (entry == null) return;
+
+		collect(dir, entry, fileExtensions, result);
+		for (String subdirectory : entry.subdirectories) {
+			walk(dir.resolve(subdirectory), fileExtensions, result);
+		}
+	}
+
+	/**
+	 * Returns the listing of a directory: the recorded one if the directory is unchanged since it was indexed, a new one otherwise.
+	 *
+	 * @return the listing, or null if the directory could not be read.
+	 */
+	private DirectoryEntry visit(Path dir) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(dir, BasicFileAttributes.class);
+		} catch (IOException e) {
+			logger.warn("Could not read the attributes of directory \"{}\"; it will be left out ({}).", dir, e.toString());
+			forget(dir);
+			return null;
+		}
+
+		long modified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+		DirectoryEntry entry = directories.get(dir);
+		if (entry != null && entry.modified == modified) {
+			logger.trace("Directory \"{}\" is unchanged since it was indexed.", dir);
+			reused.incrementAndGet();
+			return entry;
+		}
+		return list(dir, modified, entry);
+	}
+
+	private static void collect(Path dir, DirectoryEntry entry, Set<String> fileExtensions, Map<Path, BasicFileAttributes> result) {
+		for (Map.Entry<String, FileEntry> e : entry.files.entrySet()) {
+			Path file = dir.resolve(e.getKey());
+			if (PathFinder.hasExtension(file, fileExtensions)) {
+				result.put(file, e.getValue().attributes);
+				EventLog.record(EventLog.Type.SCANNED, file);
+			}
+		}
+	}
+
+	/**
+	 * Lists a directory that is new or has changed, carrying over the parse results of the files that are unchanged. Symbolic links to directories
+	 * are neither listed nor reported, as with Files.walk().
+	 */
+	private DirectoryEntry list(Path dir, long modified, DirectoryEntry previous) {
+		logger.debug("Listing directory \"{}\" for the scan index.", dir);
+		long listedAt = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+		DirectoryEntry entry = new DirectoryEntry(listedAt - modified < TimeUnit.SECONDS.toNanos(RACY_INTERVAL_SECONDS) ? UNTRUSTED : modified);
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path child : stream) {
+				String name = child.getFileName().toString();
+				BasicFileAttributes attributes;
+				try {
+					attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					if (attributes.isSymbolicLink()) {
+						attributes = Files.readAttributes(child, BasicFileAttributes.class);
+						if (attributes.isDirectory()) continue;
+					} else if (attributes.isDirectory()) {
+						entry.subdirectories.add(name);
+						continue;
+					}
+				} catch (IOException e) {
+					logger.debug("Could not read the attributes of \"{}\"; it will be left out ({}).", child, e.toString());
+					continue;
+				}
+
+				FileEntry file = new FileEntry(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+				file.attributes = attributes;
+				FileEntry old = previous != null ? previous.files.get(name) : null;
+				if (old != null && old.size == file.size && old.modified == file.modified) file.parsed.putAll(old.parsed);
+				entry.files.put(name, file);
+			}
+		} catch (IOException e) {
+			logger.error("An IOException occurred when listing directory \"{}\" for the scan index.", dir);
+			logger.error(e.toString());
+			forget(dir);
+			return null;
+		}
+
+		if (previous != null) {
+			for (String subdirectory : previous.subdirectories) {
+				if (!entry.subdirectories.contains(subdirectory)) forget(dir.resolve(subdirectory));
+			}
+		}
+		directories.put(dir, entry);
+		listed.incrementAndGet();
+		return entry;
+	}
+
+	/**
+	 * Removes a directory that no longer exists from the index, along with every directory recorded below it.
+	 */
+	private void forget(Path dir) {
+		DirectoryEntry entry = directories.remove(dir);
+		if (entry == null) return;
+		logger.debug("Removing directory \"{}\" from the scan index.", dir);
+		for (String subdirectory : entry.subdirectories) {
+			forget(dir.resolve(subdirectory));
+		}
+	}
+
+	private FileEntry fileEntry(Path path) {
+		Path parent = path.getParent();
+		DirectoryEntry dir = parent != null ? directories.get(parent) : null;
+		return dir != null ? dir.files.get(path.getFileName().toString()) : null;
+	}
+
+	private void load() throws IOException {
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			DirectoryEntry dir = null;
+			FileEntry fileEntry = null;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+				switch (fields[0]) {
+					case "D":
+						dir = new DirectoryEntry(Long.parseLong(fields[1]));
+						fileEntry = null;
+						directories.put(Path.of(unescape(fields[2])), dir);
+						break;
+					case "S":
+						if (dir != null) dir.subdirectories.add(unescape(fields[1]));
+						break;
+					case "F":
+						if (dir == null) break;
+						fileEntry = new FileEntry(Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+						dir.files.put(unescape(fields[3]), fileEntry);
+						break;
+					case "P":
+						if (fileEntry == null) break;
+						fileEntry.parsed.put(MediaType.valueOf(fields[1]), new ParseResult(
+								unescape(fields[5]), unescape(fields[6]), unescape(fields[7]),
+								Integer.parseInt(fields[2]), Integer.parseInt(fields[3]), Integer.parseInt(fields[4])
+						));
+						break;
+					default:
+						logger.warn("Skipping malformed scan index record \"{}\".", line);
+				}
+			}
+			logger.debug("Loaded scan index \"{}\" ({} directories).", file, directories.size());
+		} catch (NoSuchFileException e) {
+			logger.debug("No scan index exists at \"{}\" yet; starting an empty one.", file);
+		}
+	}
+
+	private static void writeRecord(BufferedWriter out, String... fields) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) out.write(SEPARATOR);
+			out.write(fields[i]);
+		}
+		out.write('\n');
+	}
+
+	private static String escape(String s) {
+		if (s == null) return NULL;
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+	}
+
+	private static String unescape(String s) {
+		if (s.equals(NULL)) return null;
+		StringBuilder result = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char next = s.charAt(++i);
+				result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Checks (and if needed, lists) one directory and forks a task for each of its subdirectories. The results of the subtasks are appended after
+	 * the files of the directory, in the order of its subdirectories, which reproduces the order of the sequential walk. Each task only changes the
+	 * index entries of its own directory and of the subdirectories it found removed, so tasks never touch the same entry.
+	 */
+	private class DirectoryScan extends RecursiveTask<Map<Path, BasicFileAttributes>> {
+		private static final long serialVersionUID = 1L;
+
+		private final Path dir;
+		private final Set<String> fileExtensions;
+
+		private DirectoryScan(Path dir, Set<String> fileExtensions) {
+			this.dir = dir;
+			this.fileExtensions = fileExtensions;
+		}
+
+		@Override
+		protected Map<Path, BasicFileAttributes> compute() {
+			Map<Path, BasicFileAttributes> result = new LinkedHashMap<>();
+			DirectoryEntry entry = visit(dir);
+			if (entry == null) return result;
+
+			collect(dir, entry, fileExtensions, result);
+			List<DirectoryScan> scans = new ArrayList<>();
+			for (String subdirectory : entry.subdirectories) {
+				DirectoryScan scan = new DirectoryScan(dir.resolve(subdirectory), fileExtensions);
+				scan.fork();
+				scans.add(scan);
+			}
+			for (DirectoryScan scan : scans) {
+				result.putAll(scan.join());
+			}
+			return result;
+		}
+	}
+
+	private static class DirectoryEntry {
+		private final long modified;
+		private final List<String> subdirectories = new ArrayList<>();
+		private final Map<String, FileEntry> files = new LinkedHashMap<>();
+
+		private DirectoryEntry(long modified) {
+			this.modified = modified;
+		}
+	}
+
+	private static class FileEntry {
+		private final long size;
+		private final long modified;
+		private final Map<MediaType, ParseResult> parsed = new EnumMap<>(MediaType.class);
+		/* The attributes read when the directory was listed during this run, if it was; they are not saved */
+		private BasicFileAttributes attributes;
+
+		private FileEntry(long size, long modified) {
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+
+	/**
+	 * The fields that TV and Movie extract from a filename. The title holds the series name of a TV object and the movie name of a Movie object.
+	 */
+	private static class ParseResult {
+		private final String title;
+		private final String customName;
+		private final String resolution;
+		private final int season;
+		private final int episode;
+		private final int year;
+
+		private ParseResult(String title, String customName, String resolution, int season, int episode, int year) {
+			this.title = title;
+			this.customName = customName;
+			this.resolution = resolution;
+			this.season = season;
+			this.episode = episode;
+			this.year = year;
+		}
+
+		private static ParseResult of(Media media) {
+			if (media instanceof TV) {
+				TV tv = (TV) media;
+				return new ParseResult(
+						tv.getSeriesName(), tv.getCustomFilename(), tv.getMediaResolution(), tv.getSeasonNumber(), tv.getEpisodeNumber(), 0);
+			}
+			Movie movie = (Movie) media;
+			return new ParseResult(movie.getMovieName(), movie.getCustomFilename(), movie.getMediaResolution(), 0, 0, movie.getReleaseYear());
+		}
+
+		private Media restore(MediaType type, Path path) {
+			switch (type) {
+				case TV:
+					return new TV(path.toString(), title, season, episode, customName, resolution);
+				case MOVIE:
+				default:
+					return new Movie(path.toString(), title, year, customName, resolution);
+			}
+		}
+	}
+}
@@ -5,8 +5,6 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class TV extends Media {
 
@@ -16,25 +14,17 @@ public class TV extends Media {
 	private int seasonNumber = 1;
 	private int episodeNumber;
 
-	/* Patterns */
-	private static final Pattern[] regexSeasonAndEp = {
-			Pattern.compile("(?i)(?: *- ?)? ?(?<seasonInd>S(?<season>0*[1-9][0-9]*|0)) *(?<epInd>E(?<episode>0*([1-9][0-9]*|0)))"),
-			Pattern.compile(
-					"(?i)(?:(?: *- ?)? ?(?<seasonInd>Season ?\\b(?<season>0*([1-9][0-9]*|0))))? *(?: *- ?)? *(?<epInd>Episode ?\\b(?<episode>0*([1-9][0-9]*|0)))"),
-			Pattern.compile("(?i)(?: *- ?)? ?(?<seasonInd>(?<season>0*([1-9][0-9]*|0))) *x *(?: *- ?)? *(?<epInd>(?<episode>0*([1-9][0-9]*|0)))")
+	private static final FilenameTokens.Kind[] SEASON_AND_EPISODE_KINDS = {
+			FilenameTokens.Kind.SEASON_AND_EPISODE, FilenameTokens.Kind.SEASON_AND_EPISODE_WORDS, FilenameTokens.Kind.SEASON_CROSS_EPISODE
 	};
 	/**
 	 * "Example TV Show<b> - 01</b>"<br> "Example TV Show<b> 01</b>"
 	 */
-	private static final Pattern[] regexSoloEp = {
-			Pattern.compile(" *- ? *(?<epInd>E?(?<episode>0*([1-9][0-9]*|0)))"),
-			Pattern.compile("(?<epInd>E?(?<episode>0*([1-9][0-9]*|0)))$")
-
+	private static final FilenameTokens.Kind[] SOLO_EPISODE_KINDS = {FilenameTokens.Kind.DASH_EPISODE, FilenameTokens.Kind.TRAILING_EPISODE};
+	private static final FilenameTokens.Kind[] SOLO_SEASON_KINDS = {FilenameTokens.Kind.SEASON_WORD, FilenameTokens.Kind.SEASON_PREFIX};
+	private static final FilenameTokens.Kind[] EPISODE_KINDS = {
+			FilenameTokens.Kind.EPISODE_WORD, FilenameTokens.Kind.E_NUMBER, FilenameTokens.Kind.DASH_NUMBER
 	};
-	private static final Pattern[] regexSoloSeason = {
-			Pattern.compile("(?i)(?<seasonInd>Season ?\\b(?<season>0*([1-9][0-9]*|0)))"),
-			Pattern.compile("(?i)(?<seasonInd>S(?<season>0*([1-9][0-9]*|0))) +"),
-			};
 
 	/**
 	 * Creates a TV object, a subclass of Media, that functions the same as a File with added functionality, such as metadata storage and references
@@ -45,7 +35,27 @@ public class TV extends Media {
 	public TV(String pathname) {
 		super(pathname, MediaType.TV);
 		this.extractTitleInfo();
-		logger.info("Created \"{}\" ({}) from source file \"{}\"", this.getCustomFilename(), this.getClass().getName(), this.getFile().getName());
+		logger.debug("Created \"{}\" ({}) from source file \"{}\"", this.getCustomFilename(), this.getClass().getName(), this.getFileName());
+	}
+
+	/**
+	 * Restores a TV object from information that was parsed from the same file by an earlier run, without parsing its name again.
+	 *
+	 * @param pathname      the path to the Media file
+	 * @param seriesName    the parsed name of the show
+	 * @param seasonNumber  the parsed season number
+	 * @param episodeNumber the parsed episode number
+	 * @param customName    the custom name that was generated from the above
+	 * @param resolution    the parsed resolution
+	 */
+	TV(String pathname, String seriesName, int seasonNumber, int episodeNumber, String customName, String resolution) {
+		super(pathname, MediaType.TV);
+		this.seriesName = seriesName.intern();
+		this.seasonNumber = seasonNumber;
+		this.episodeNumber = episodeNumber;
+		this.customName = customName;
+		this.resolution = resolution.intern();
+		logger.debug("Restored \"{}\" ({}) from source file \"{}\"", this.getCustomFilename(), this.getClass().getName(), this.getFileName());
 	}
 
 	/**
@@ -53,12 +63,15 @@ public class TV extends Media {
 	 * episode number.
 	 */
 	private void extractTitleInfo() {
+		FilenameTokens tokens = FilenameTokens.ofFileName(this.getFileName());
+
 		// Store resolution from either the non-source directory or from the file's name
-		this.resolution = MetadataOps.getResolution(this.getFile().getName());
+		this.resolution = tokens.resolution();
 
-		parseTVInfo();
+		parseTVInfo(tokens);
 
-		this.seriesName = MetadataOps.removeBrackets(this.seriesName);
+		// Every episode of a show shares a single copy of its name
+		this.seriesName = MetadataOps.removeBrackets(this.seriesName).intern();
 
 		if (this.episodeNumber >= 0) {
 			this.customName = seriesName.trim() + String.format(" - S%02dE%02d", this.seasonNumber, this.episodeNumber);
@@ -67,55 +80,46 @@ public class TV extends Media {
 		}
 	}
 
-	private void parseTVInfo() {
+	/**
+	 * Interprets the tokens of the file's name. Tokens that hold both a season and an episode are preferred; failing that, solo episode and season
+	 * tokens are looked for (the latter in the parent directory as well), and as a last resort the legacy season and episode templates are used.
+	 * Whenever a token is removed from the name, what is left of it is scanned again before it is interpreted further.
+	 *
+	 * @param tokens the tokens of the file's name.
+	 */
+	private void parseTVInfo(FilenameTokens tokens) {
 		boolean foundEp = false, foundSeas = false;
-		logger.info("Parsing TV information for \"{}\".", this.getFile().getName());
-		String fn = MetadataOps.removeUnwantedSpaces(this.getFile().getName().substring(0, this.getFile().getName().lastIndexOf('.')));
+		logger.debug("Parsing TV information for \"{}\".", this.getFileName());
+		FilenameTokens original = tokens; // The legacy templates always start over from the whole file name
+		String fn = tokens.text();
 		logger.trace(
 				"Proposed file name (before parse) \"{}\" -> \"{}\".",
-				this.getFile().getName().substring(0, this.getFile().getName().lastIndexOf('.')),
+				this.getFileName().substring(0, this.getFileName().lastIndexOf('.')),
 				fn
 		);
-		for (Pattern p : regexSeasonAndEp) {
-			logger.trace("Matching \"{}\" against \"{}\".", fn, p);
-			Matcher matcher = p.matcher(fn);
-			if (matcher.find()) {
-				logger.debug("Pattern \"{}\" matches against \"{}\".", p, fn);
+		for (FilenameTokens.Kind kind : SEASON_AND_EPISODE_KINDS) {
+			FilenameTokens.Token token = tokens.first(kind);
+			if (token != null) {
+				logger.debug("Token {} (\"{}\") found in \"{}\".", kind, token.text, fn);
 
 				// Season
-				if (matcher.group("season") != null && matcher.group("seasonInd") != null) {
-					logger.trace("Pattern \"{}\" matched \"season\" group with value of {}.", p, Integer.parseInt(matcher.group("season")));
+				if (token.hasSeason()) {
+					logger.trace("Token {} holds a season number of {}.", kind, token.season());
 					foundSeas = true;
-					this.seasonNumber = Integer.parseInt(matcher.group("season"));
+					this.seasonNumber = token.season();
 				} else {
-					logger.trace("Pattern \"{}\" could NOT match \"season\" group.", p);
-					// TODO: put extra season parsing in here, maybe
+					logger.trace("Token {} does NOT hold a season number.", kind);
 				}
 
 				// Episode
-				if (matcher.group("episode") != null) {
-					logger.trace("Pattern \"{}\" matched \"episode\" group with value of {}.", p, Integer.parseInt(matcher.group("episode")));
-					foundEp = true;
-					this.episodeNumber = Integer.parseInt(matcher.group("episode"));
-				} else {  // If episode was not matched, an exclusive match will be attempted.
-					logger.debug("No match for episode # with above pattern; attempting match with exclusive episode regular expressions.");
-
-					String newFn = matchEpisodeOnly(fn);
-					if (!fn.equals(newFn)) {
-						fn = newFn;
-						foundEp = true;
-					}
-				}
+				logger.trace("Token {} holds an episode number of {}.", kind, token.episode());
+				foundEp = true;
+				this.episodeNumber = token.episode();
 
-				/* If the "normal" duo regex fully matches, then remove the whole match from the resulting fn */
-				if (fn.contains(matcher.group(0))) {
-					this.seriesName = fn.replace(matcher.group(0), "").trim();
-				} else { // It was likely modified by one of the edge case branches
-					this.seriesName = fn;
-				}
+				this.seriesName = fn.replace(token.text, "").trim();
 				logger.debug(
 						"{} parse resulted in season # {} and episode # {} with a series name of \"{}\"",
-						this.getFile().getName(),
+						this.getFileName(),
 						this.seasonNumber,
 						this.episodeNumber,
 						this.seriesName
@@ -125,29 +129,30 @@ public class TV extends Media {
 				}
 			}
 		}
-		logger.trace("Could not match duo regex against \"{}\",  attempting match with exclusive versions of regular expressions.", fn);
+		logger.trace("Could not find a season and episode token in \"{}\", attempting match with solo season and episode tokens.", fn);
 		if (!foundEp) {
-			String newFn = matchEpisodeOnly(fn);
+			String newFn = matchEpisodeOnly(fn, tokens);
 			if (!fn.equals(newFn)) {
 				fn = newFn;
+				tokens = FilenameTokens.ofText(fn);
 				foundEp = true;
 			}
 		}
 
 		if (!foundSeas) {
-			String newFn = matchSeasonOnly(fn);
+			String newFn = matchSeasonOnly(fn, tokens);
 			if (!fn.equals(newFn)) {
 				fn = newFn;
 				foundSeas = true;
 			} else {
-				String rawParentDir = this.file.getParentFile().getName();
+				String rawParentDir = this.getDirectory().getName();
 				logger.debug(
 						"Could not parse season information from file's name; parsing parent directory \"{}\" for season information.",
 						rawParentDir
 				);
 				String parentDir = MetadataOps.removeUnwantedSpaces(rawParentDir);
 				// Look in file's immediate parent directory
-				newFn = matchSeasonOnly(parentDir);
+				newFn = matchSeasonOnly(parentDir, FilenameTokens.ofText(parentDir));
 				if (!parentDir.equals(newFn)) { // If the return value is not equal to the original, the season number was identified
 					// fn stays the same
 					foundSeas = true;
@@ -155,45 +160,33 @@ public class TV extends Media {
 			}
 		}
 		if (!foundEp || !foundSeas) {
-			logger.debug("No regular expression pattern match against \"{}\", defaulting to legacy code.", fn);
-			this.seriesName = episodes(seasons()).trim();
+			logger.debug("No token match against \"{}\", defaulting to legacy templates.", fn);
+			this.seriesName = episodes(seasons(original)).trim();
 		} else this.seriesName = fn;
 	}
 
-	private String matchEpisodeOnly(String fn) {
+	private String matchEpisodeOnly(String fn, FilenameTokens tokens) {
 		logger.debug("Parsing episode number from string \"{}\".", fn);
-		for (int i = 0; i < regexSoloEp.length; i++) {
-			Pattern epPat = regexSoloEp[i];
-			Matcher soloEpMatch = epPat.matcher(fn);
-			if (soloEpMatch.find() && soloEpMatch.group("episode") != null && soloEpMatch.group("epInd") != null) {
-				logger.debug(
-						"Exclusive episode pattern (idx = {}) matches against \"{}\" with value of {}.",
-						i,
-						fn,
-						Integer.parseInt(soloEpMatch.group("episode"))
-				);
-				this.episodeNumber = Integer.parseInt(soloEpMatch.group("episode"));
-				fn = fn.replace(soloEpMatch.group(0), "").trim();
+		for (FilenameTokens.Kind kind : SOLO_EPISODE_KINDS) {
+			FilenameTokens.Token token = tokens.first(kind);
+			if (token != null) {
+				logger.debug("Exclusive episode token {} found in \"{}\" with value of {}.", kind, fn, token.episode());
+				this.episodeNumber = token.episode();
+				fn = fn.replace(token.text, "").trim();
 				return fn;
 			}
 		}
 		return fn;
 	}
 
-	private String matchSeasonOnly(String fn) {
+	private String matchSeasonOnly(String fn, FilenameTokens tokens) {
 		logger.debug("Parsing season number from string \"{}\".", fn);
-		for (int i = 0; i < regexSoloSeason.length; i++) {
-			Pattern seasonPat = regexSoloSeason[i];
-			Matcher soloSeasonMatcher = seasonPat.matcher(fn);
-			if (soloSeasonMatcher.find() && soloSeasonMatcher.group("season") != null && soloSeasonMatcher.group("seasonInd") != null) {
-				logger.debug(
-						"Exclusive season pattern (idx = {}) matches against \"{}\" with value of {}.",
-						i,
-						fn,
-						Integer.parseInt(soloSeasonMatcher.group("season"))
-				);
-				this.seasonNumber = Integer.parseInt(soloSeasonMatcher.group("season"));
-				fn = fn.replace(soloSeasonMatcher.group(0), "").trim();
+		for (FilenameTokens.Kind kind : SOLO_SEASON_KINDS) {
+			FilenameTokens.Token token = tokens.first(kind);
+			if (token != null) {
+				logger.debug("Exclusive season token {} found in \"{}\" with value of {}.", kind, fn, token.season());
+				this.seasonNumber = token.season();
+				fn = fn.replace(token.text, "").trim();
 				return fn;
 			}
 		}
@@ -205,101 +198,60 @@ public class TV extends Media {
 	 *
 	 * @return a string of what episode it determined from the file name in '01' notation, "Special" if it could not.
 	 */
-	private String episodes(String fn) {
-		final String[] regex = {
-				"(?<seq>Episode (?<num>\\d{1,3}))",
-				" ?(?<seq>E(?<num>\\d{1,3})+)",
-				"(?<seq>- (?<num>\\d{1,3}))"
-		};
-		logger.debug("Parsing episode information for {} object \"{}\".", this.getClass().getName(), this.getFile().getName());
-		if (fn.matches(".*\\d{1,3}.*")) { // If the name contains a number between 0 and 999
-			String[] templates;
-			for (String templatePattern : regex) {
-				logger.trace("Matching pattern \"{}\" against \"{}\".", templatePattern, fn);
-
-				var p = Pattern.compile(
-						templatePattern,
-						Pattern.CASE_INSENSITIVE
-				);
-
-				var m = p.matcher(fn);
-
-				if (m.find() && m.groupCount() == 2) {
-					this.episodeNumber = Integer.parseInt(m.group("num"));
-					logger.debug("Pattern \"{}\" matches against the filename with a result of {}.", templatePattern, this.episodeNumber);
-					String seq = m.group("seq");
-					return fn.substring(0, fn.indexOf(seq));
-
-				} else {
-					logger.trace("Failed matching pattern \"{}\" against \"{}\".", templatePattern, fn);
+	private String episodes(FilenameTokens tokens) {
+		String fn = tokens.text();
+		logger.debug("Parsing episode information for {} object \"{}\".", this.getClass().getName(), this.getFileName());
+		if (tokens.hasDigit()) { // If the name contains a number between 0 and 999
+			for (FilenameTokens.Kind kind : EPISODE_KINDS) {
+				FilenameTokens.Token token = tokens.first(kind);
+				if (token != null) {
+					this.episodeNumber = token.episode();
+					logger.debug("Token {} matches against the filename with a result of {}.", kind, this.episodeNumber);
+					return fn.substring(0, token.start);
 				}
 			}
-			logger.debug("Regex pattern matching failed for \"{}\", attempting lazy search.", fn);
-
-			for (int i = 1; i < MetadataOps.MAX_NUMBER_OF_EPISODES; ++i) {
-				templates = new String[]{
-						String.format("Episode %2d", i),
-						String.format("Episode %d", i),
-						String.format("- %03d", i),
-						String.format("- %02d", i),
-						"E" + String.format("%02d ", i),
-						("E" + i + " ")
-				};
-
-				for (String template : templates) {
-					if (fn.toLowerCase().contains(template.toLowerCase())) {
-						this.episodeNumber = i;
-						logger.debug("Template \"{}\" matches against the filename with a result of {}.", template, this.episodeNumber);
-						String substring = fn.substring(0, fn.toLowerCase().indexOf(template.toLowerCase()));
-
-						logger.trace("Returning \"{}\" as reduced filename.", substring);
-						return substring;
-					}
-				}
+			logger.debug("Token matching failed for \"{}\", attempting lazy search.", fn);
+
+			if (tokens.spacedEpisodeTemplate() > 0) {
+				this.episodeNumber = tokens.spacedEpisodeTemplate();
+				String template = String.format("Episode %2d", this.episodeNumber);
+				logger.debug("Template \"{}\" matches against the filename with a result of {}.", template, this.episodeNumber);
+				String substring = fn.substring(0, fn.toLowerCase().indexOf(template.toLowerCase()));
+
+				logger.trace("Returning \"{}\" as reduced filename.", substring);
+				return substring;
 			}
 		}
 
 		logger.warn(
 				"No episode information could be retrieved from the filename of \"{}\"; assigning -1 as episode number.",
-				this.getFile().getName()
+				this.getFileName()
 		);
 		this.episodeNumber = -1;
 		return fn;
 	}
 
 	/**
-	 * Helper method. Finds the season of the current TV object, if any. If it is found, returns the name of the file without the season indicator.
+	 * Helper method. Finds the season of the current TV object, if any. If it is found, returns the tokens of the name of the file without the
+	 * season indicator.
 	 *
-	 * @return the modified name of the file.
+	 * @return the tokens of the modified name of the file.
 	 */
-	private String seasons() {
-		// TODO: This method is inefficient; implementing regex patterns would speed it up and refine it.
-		logger.debug("Parsing season information for {} object \"{}\".", this.getClass().getName(), this.getFile().getName());
-		String[] templates;
-		String filename = this.getFile().getName();
-		String fn = MetadataOps.removeUnwantedSpaces(filename.substring(0, filename.lastIndexOf('.')));
-		for (int i = 1; i < MetadataOps.MAX_NUMBER_OF_SEASONS; ++i) {
-			templates = new String[]{
-					"SEASON " + i,
-					"Season " + i,
-					"season " + i,
-					"s" + i,
-					"s0" + i,
-					"S" + i,
-					"S0" + i
-			};
-
-			for (String template : templates) {
+	private FilenameTokens seasons(FilenameTokens tokens) {
+		logger.debug("Parsing season information for {} object \"{}\".", this.getClass().getName(), this.getFileName());
+		String fn = tokens.text();
+		int i = tokens.seasonTemplate();
+		if (i > 0) {
+			for (String template : new String[]{"SEASON " + i, "Season " + i, "season " + i, "s" + i, "s0" + i, "S" + i, "S0" + i}) {
 				if (fn.contains(template)) {
 					this.seasonNumber = i;
 					logger.debug("Template \"{}\" matches against the filename with a result of {}.", template, this.seasonNumber);
-					return fn.replace(template, "");
+					return FilenameTokens.ofText(fn.replace(template, ""));
 				}
 			}
-
 		}
-		logger.debug("No season information could be retrieved from the filename of \"{}\"; assigning 1 as season number.", this.getFile().getName());
-		return fn;
+		logger.debug("No season information could be retrieved from the filename of \"{}\"; assigning 1 as season number.", this.getFileName());
+		return tokens;
 	}
 
 	public int getEpisodeNumber() {
@@ -354,7 +306,7 @@ public class TV extends Media {
 	@Override
 	public boolean isValid() {
 		/* If the file exists and both the series name and custom name exist, then it is a valid TV object */
-		return this.getFile().isFile() && !this.seriesName.isEmpty() && !this.customName.isEmpty();
+		return this.isRegularFile() && !this.seriesName.isEmpty() && !this.customName.isEmpty();
 	}
 
 }
@@ -3,11 +3,11 @@ package yjohnson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Credit: Réal Gagnon for the checksum generation and conversion code
@@ -15,53 +15,249 @@ import java.security.NoSuchAlgorithmException;
  */
 public class Checksum {
 	private static final Logger logger = LoggerFactory.getLogger(Checksum.class);
-	private static final String algorithm = "MD5";
+	private static final int SAMPLE_BLOCK_SIZE = 1 << 20;
+	private static final int HEAD_AND_TAIL_BLOCK_SIZE = 1 << 16;
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+	private static final ThreadLocal<ByteBuffer> sampleBlocks = ThreadLocal.withInitial(() -> ByteBuffer.allocate(SAMPLE_BLOCK_SIZE));
+	private static final ThreadLocal<ByteBuffer> directBuffers = new ThreadLocal<>();
+	private static volatile ChecksumAlgorithm algorithm = ChecksumAlgorithm.MD5;
+	private static volatile int bufferSize = 1 << 20;
+	private static volatile long mappedThreshold = 1L << 28;
+	private static volatile long mappedWindowSize = 1L << 26;
+
+	/**
+	 * Selects the algorithm that every subsequent checksum of this run is computed with. Checksums of different algorithms are never comparable,
+	 * so this should only be changed between operations.
+	 *
+	 * @param algorithm the algorithm to use.
+	 */
+	public static void setAlgorithm(ChecksumAlgorithm algorithm) {
+		logger.debug("Checksum algorithm set to {}.", algorithm);
+		Checksum.algorithm = algorithm;
+	}
+
+	public static ChecksumAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	/**
+	 * Sets the size of the direct buffer that each thread reads files through when they are not memory-mapped. Defaults to 1 MiB.
+	 *
+	 * @param bufferSize the buffer size in bytes.
+	 */
+	public static void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) throw new IllegalArgumentException("Buffer size must be positive (bufferSize = " + bufferSize + ").");
+		Checksum.bufferSize = bufferSize;
+	}
+
+	/**
+	 * Sets the file size from which files are hashed through memory-mapped windows rather than a read buffer. Defaults to 256 MiB.
+	 *
+	 * @param mappedThreshold the threshold in bytes; Long.MAX_VALUE disables memory mapping.
+	 */
+	public static void setMappedThreshold(long mappedThreshold) {
+		Checksum.mappedThreshold = mappedThreshold;
+	}
+
+	/**
+	 * Sets the size of each memory-mapped window of a large file. Defaults to 64 MiB.
+	 *
+	 * @param mappedWindowSize the window size in bytes; it may not exceed Integer.MAX_VALUE.
+	 */
+	public static void setMappedWindowSize(long mappedWindowSize) {
+		if (mappedWindowSize <= 0 || mappedWindowSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Mapped window size is out of range (mappedWindowSize = " + mappedWindowSize + ").");
+		}
+		Checksum.mappedWindowSize = mappedWindowSize;
+	}
 
 	public static String getChecksum(String filename) throws IOException {
 		logger.debug("Generating checksum for \"{}\".", filename);
-		byte[] b = createChecksum(filename);
+		String result = toHexString(createChecksum(Path.of(filename)));
+		logger.debug("Generated checksum for file \"{}\" (checksum = {}).", filename, result);
+		return result;
+	}
+
+	/**
+	 * Generates the checksum of the whole file like {@link #getChecksum(String)}, acquiring every block that is read from the given rate limiter.
+	 * While the limiter is limited, the file is read through the direct buffer even if it is large enough to be memory-mapped.
+	 *
+	 * @param path    the file to hash.
+	 * @param limiter the rate limiter of the read, or null to read at full speed.
+	 *
+	 * @return the checksum of the file's contents.
+	 *
+	 * @throws IOException if the file could not be read, or if the thread was interrupted while waiting for the limiter.
+	 */
+	public static String getChecksum(Path path, RateLimiter limiter) throws IOException {
+		logger.debug("Generating checksum for \"{}\" (rate limit = {} bytes/s).", path, limiter == null ? 0 : limiter.getBytesPerSecond());
+		String result = toHexString(createChecksum(path, limiter));
+		logger.debug("Generated checksum for file \"{}\" (checksum = {}).", path, result);
+		return result;
+	}
+
+	/**
+	 * Generates a checksum from the size of the file and from three blocks at its head, middle and tail. Files that are smaller than the three
+	 * blocks combined are hashed whole. This is far cheaper than {@link #getChecksum(String)} for large files, but it will not detect corruption
+	 * outside of the sampled blocks.
+	 *
+	 * @param path the file to sample.
+	 *
+	 * @return the sampled checksum.
+	 *
+	 * @throws IOException if the file could not be read.
+	 */
+	public static String getSampledChecksum(Path path) throws IOException {
+		return getSampledChecksum(path, null);
+	}
+
+	/**
+	 * Generates a {@link #getSampledChecksum(Path) sampled checksum}, acquiring every block that is read from the given rate limiter.
+	 *
+	 * @param path    the file to sample.
+	 * @param limiter the rate limiter of the read, or null to read at full speed.
+	 *
+	 * @return the sampled checksum.
+	 *
+	 * @throws IOException if the file could not be read, or if the thread was interrupted while waiting for the limiter.
+	 */
+	public static String getSampledChecksum(Path path, RateLimiter limiter) throws IOException {
+		logger.trace("Creating sampled checksum (path = \"{}\", algorithm = {}).", path, algorithm);
+		String result = hashBlocks(path, SAMPLE_BLOCK_SIZE, true, limiter);
+		logger.debug("Generated sampled checksum for file \"{}\" (checksum = {}).", path, result);
+		return result;
+	}
 
-		StringBuilder result = new StringBuilder();
+	/**
+	 * Generates a checksum from the size of the file and from one small block at its head and one at its tail. Files that are smaller than the two
+	 * blocks combined are hashed whole, so for them, the result is as conclusive as a full checksum. This is meant to tell apart files of the same
+	 * size cheaply, before their full checksums are compared.
+	 *
+	 * @param path the file to sample.
+	 *
+	 * @return the head and tail checksum.
+	 *
+	 * @throws IOException if the file could not be read.
+	 */
+	public static String getHeadAndTailChecksum(Path path) throws IOException {
+		logger.trace("Creating head and tail checksum (path = \"{}\", algorithm = {}).", path, algorithm);
+		String result = hashBlocks(path, HEAD_AND_TAIL_BLOCK_SIZE, false, null);
+		logger.trace("Generated head and tail checksum for file \"{}\" (checksum = {}).", path, result);
+		return result;
+	}
+
+	/**
+	 * Checks whether {@link #getHeadAndTailChecksum(Path)} reads the whole of a file of the given size.
+	 *
+	 * @param size the size of the file.
+	 *
+	 * @return true if the head and tail checksum covers every byte of the file.
+	 */
+	public static boolean isHeadAndTailComplete(long size) {
+		return size <= 2L * HEAD_AND_TAIL_BLOCK_SIZE;
+	}
+
+	/**
+	 * Hashes the size of the file along with blocks at its head and tail (and middle), or the whole file if it is no larger than those blocks.
+	 */
+	private static String hashBlocks(Path path, int blockSize, boolean middle, RateLimiter limiter) throws IOException {
+		ChecksumAlgorithm.Hasher complete = algorithm.hasher();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			complete.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
 
-		for (byte value : b) {
-			result.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+			ByteBuffer block = sampleBlocks.get();
+			long[] offsets;
+			if (size <= (middle ? 3L : 2L) * blockSize) offsets = new long[]{0};
+			else if (middle) offsets = new long[]{0, size / 2 - blockSize / 2, size - blockSize};
+			else offsets = new long[]{0, size - blockSize};
+			for (long offset : offsets) {
+				long end = offsets.length == 1 ? size : offset + blockSize;
+				for (long position = offset; position < end; ) {
+					block.clear().limit((int) Math.min(blockSize, end - position));
+					int numRead = channel.read(block, position);
+					if (numRead == -1) break;
+					if (limiter != null && numRead > 0) limiter.acquire(numRead);
+					position += numRead;
+					block.flip();
+					complete.update(block);
+				}
+			}
 		}
-		logger.debug("Generated checksum for file \"{}\" (checksum = {}).", filename, result);
-		return result.toString();
-	}
-
-	public static byte[] createChecksum(String filename) throws IOException {
-		logger.trace("Creating checksum (filename = \"{}\").", filename);
-
-		InputStream fis = new FileInputStream(filename);
-		byte[] buffer = new byte[1024];
-		MessageDigest complete = null;
-
-		try {
-			complete = MessageDigest.getInstance(algorithm);
-		} catch (NoSuchAlgorithmException e) {
-			logger.error(
-					"Failed to get instance for MessageDigest due to an {} using algorithm name \"{}\"",
-					e.getClass().getSimpleName(),
-					algorithm
-			);
-			logger.error(e.toString());
-			e.printStackTrace();
+		return toHexString(complete.digest());
+	}
+
+	static String toHexString(byte[] b) {
+		char[] result = new char[b.length * 2];
+
+		for (int i = 0; i < b.length; i++) {
+			result[2 * i] = HEX_DIGITS[(b[i] >> 4) & 0xf];
+			result[2 * i + 1] = HEX_DIGITS[b[i] & 0xf];
 		}
-		int numRead;
+		return new String(result);
+	}
 
-		do {
-			numRead = fis.read(buffer);
-			if (numRead > 0) {
-				assert complete != null;
-				complete.update(buffer, 0, numRead);
-			}
-		} while (numRead != -1);
+	/**
+	 * Hashes the file through a FileChannel. Files of at least {@link #setMappedThreshold(long) the mapped threshold} are mapped into memory one
+	 * window at a time, which lets the hasher read straight from the page cache; smaller files are read into a direct buffer of
+	 * {@link #setBufferSize(int) the configured size}, which is reused by the calling thread.
+	 *
+	 * @param path the file to hash.
+	 *
+	 * @return the checksum of the file's contents.
+	 *
+	 * @throws IOException if the file could not be read.
+	 */
+	public static byte[] createChecksum(Path path) throws IOException {
+		return createChecksum(path, null);
+	}
 
-		fis.close();
-		assert complete != null;
+	/**
+	 * Hashes the file like {@link #createChecksum(Path)}, acquiring every buffer that is read from the given rate limiter. While the limiter is
+	 * limited, the file is never memory-mapped, since a mapped window is read at whatever pace the hasher consumes it.
+	 *
+	 * @param path    the file to hash.
+	 * @param limiter the rate limiter of the read, or null to read at full speed.
+	 *
+	 * @return the checksum of the file's contents.
+	 *
+	 * @throws IOException if the file could not be read, or if the thread was interrupted while waiting for the limiter.
+	 */
+	public static byte[] createChecksum(Path path, RateLimiter limiter) throws IOException {
+		logger.trace("Creating checksum (path = \"{}\", algorithm = {}).", path, algorithm);
+		boolean limited = limiter != null && limiter.isLimited();
+		ChecksumAlgorithm.Hasher complete = algorithm.hasher();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size >= mappedThreshold && !limited) {
+				long window = mappedWindowSize;
+				for (long position = 0; position < size; position += window) {
+					complete.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position)));
+				}
+			} else {
+				ByteBuffer buffer = getDirectBuffer();
+				int read;
+				while ((read = channel.read(buffer.clear())) != -1) {
+					/* Only the bytes that were actually read are paid for; the read that hits the end of the file costs nothing */
+					if (limited && read > 0) limiter.acquire(read);
+					buffer.flip();
+					complete.update(buffer);
+				}
+			}
+		}
 		return complete.digest();
 	}
 
+	private static ByteBuffer getDirectBuffer() {
+		ByteBuffer buffer = directBuffers.get();
+		if (buffer == null || buffer.capacity() != bufferSize) {
+			buffer = ByteBuffer.allocateDirect(bufferSize);
+			directBuffers.set(buffer);
+		}
+		return buffer;
+	}
+
 
 }
@@ -0,0 +1,170 @@
+package yjohnson;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32C;
+
+/**
+ * The algorithms that {@link Checksum} can verify files with. CRC32C and xxHash64 are meant for integrity checks only and cost a fraction of the
+ * CPU time of MD5; MD5 and SHA-256 are kept for compatibility with checksums computed elsewhere.
+ * <p>
+ * Every thread keeps one {@link Hasher} per algorithm, so that hashing many files does not allocate a new digest for each one.
+ */
+public enum ChecksumAlgorithm {
+	CRC32C {
+		@Override
+		Hasher createHasher() {
+			return new Hasher() {
+				private final CRC32C crc = new CRC32C();
+
+				@Override
+				public void update(byte[] b, int off, int len) {
+					crc.update(b, off, len);
+				}
+
+				@Override
+				public void update(ByteBuffer buffer) {
+					crc.update(buffer);
+				}
+
+				@Override
+				public byte[] digest() {
+					long value = crc.getValue();
+					crc.reset();
+					return ByteBuffer.allocate(Integer.BYTES).putInt((int) value).array();
+				}
+
+				@Override
+				public void reset() {
+					crc.reset();
+				}
+			};
+		}
+	},
+	XXHASH64 {
+		@Override
+		Hasher createHasher() {
+			return new Hasher() {
+				private final XxHash64 xxHash = new XxHash64();
+				private final byte[] scratch = new byte[1 << 13];
+
+				@Override
+				public void update(byte[] b, int off, int len) {
+					xxHash.update(b, off, len);
+				}
+
+				@Override
+				public void update(ByteBuffer buffer) {
+					if (buffer.hasArray()) {
+						xxHash.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+						buffer.position(buffer.limit());
+						return;
+					}
+					while (buffer.hasRemaining()) {
+						int len = Math.min(scratch.length, buffer.remaining());
+						buffer.get(scratch, 0, len);
+						xxHash.update(scratch, 0, len);
+					}
+				}
+
+				@Override
+				public byte[] digest() {
+					return ByteBuffer.allocate(Long.BYTES).putLong(xxHash.digest()).array();
+				}
+
+				@Override
+				public void reset() {
+					xxHash.reset();
+				}
+			};
+		}
+	},
+	MD5("MD5"),
+	SHA_256("SHA-256");
+
+	private final String digestName;
+	private final ThreadLocal<Hasher> hashers = ThreadLocal.withInitial(this::createHasher);
+
+	ChecksumAlgorithm() {
+		this(null);
+	}
+
+	ChecksumAlgorithm(String digestName) {
+		this.digestName = digestName;
+	}
+
+	/**
+	 * Returns this thread's hasher for this algorithm, reset and ready for a new file. The hasher must not be shared with other threads nor be
+	 * used for two files at once.
+	 *
+	 * @return a reset hasher.
+	 */
+	public Hasher hasher() {
+		Hasher hasher = hashers.get();
+		hasher.reset();
+		return hasher;
+	}
+
+	Hasher createHasher() {
+		try {
+			MessageDigest digest = MessageDigest.getInstance(digestName);
+			return new Hasher() {
+				@Override
+				public void update(byte[] b, int off, int len) {
+					digest.update(b, off, len);
+				}
+
+				@Override
+				public void update(ByteBuffer buffer) {
+					digest.update(buffer);
+				}
+
+				@Override
+				public byte[] digest() {
+					return digest.digest();
+				}
+
+				@Override
+				public void reset() {
+					digest.reset();
+				}
+			};
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MessageDigest algorithm \"" + digestName + "\" is not available.", e);
+		}
+	}
+
+	public static String[] toStringArray() {
+		String[] strings = new String[values().length];
+		ChecksumAlgorithm[] values = values();
+		for (int i = 0; i < values.length; i++) {
+			ChecksumAlgorithm algorithm = values[i];
+			strings[i] = algorithm.toString().replace('_', '-');
+		}
+		return strings;
+	}
+
+	/**
+	 * An incremental checksum computation.
+	 */
+	public interface Hasher {
+		void update(byte[] b, int off, int len);
+
+		/**
+		 * Hashes the remaining bytes of the buffer and advances its position to its limit.
+		 *
+		 * @param buffer the bytes to hash.
+		 */
+		void update(ByteBuffer buffer);
+
+		/**
+		 * Completes the computation and resets this hasher.
+		 *
+		 * @return the checksum of every byte given since the last reset.
+		 */
+		byte[] digest();
+
+		void reset();
+	}
+}
@@ -0,0 +1,261 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache of file checksums, so that files which are relocated again (retries, re-runs of an interrupted batch) do not have to be
+ * hashed again. Entries are keyed by the identity of the file (its file key, which holds the device and inode on Unix-like systems) and by
+ * algorithm, and they are only trusted while the file's size and last modified time are the ones recorded alongside them.
+ * <p>
+ * The cache file is append-only: one tab-separated record per line (file key, size, modified time in nanoseconds, algorithm, checksum), where a
+ * later record replaces an earlier one with the same key. Once the file holds enough superseded records, it is compacted into a new file with
+ * only the live entries.
+ */
+public class ChecksumCache implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(ChecksumCache.class);
+	private static final char SEPARATOR = '\t';
+	private static final int COMPACTION_INTERVAL = 4096;
+	private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+
+	private final Path file;
+	private final Map<String, Entry> entries = new HashMap<>();
+	private BufferedWriter writer;
+	private int records;
+	private int appendsSinceCompaction;
+	private boolean closed;
+
+	private ChecksumCache(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Loads the cache stored at the given path, creating it (and its parent directories) if it does not exist yet.
+	 *
+	 * @param file the cache file.
+	 *
+	 * @return the loaded cache.
+	 *
+	 * @throws IOException if the cache file could not be read or created.
+	 */
+	public static ChecksumCache open(Path file) throws IOException {
+		ChecksumCache cache = new ChecksumCache(file);
+		cache.load();
+		cache.compactIfWasteful();
+		if (cache.writer == null) cache.openWriter();
+		return cache;
+	}
+
+	/**
+	 * Returns the cached checksum of the given file, if the file has not changed since it was recorded. Stale entries are dropped.
+	 *
+	 * @param path      the file to look up.
+	 * @param algorithm the algorithm the checksum must have been computed with.
+	 *
+	 * @return the cached checksum, or null if there is none or if it is stale.
+	 */
+	public synchronized String get(Path path, ChecksumAlgorithm algorithm) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (IOException e) {
+			logger.debug("Could not read the attributes of \"{}\" for a checksum cache lookup ({}).", path, e.toString());
+			return null;
+		}
+
+		String key = key(path, attributes, algorithm);
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			logger.trace("Checksum cache miss for \"{}\" ({}).", path, algorithm);
+			return null;
+		}
+		if (entry.size != attributes.size() || entry.modified != attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)) {
+			logger.debug("Checksum cache entry for \"{}\" is stale; the file has changed since it was hashed.", path);
+			entries.remove(key);
+			return null;
+		}
+		logger.debug("Checksum cache hit for \"{}\" ({} = {}).", path, algorithm, entry.checksum);
+		return entry.checksum;
+	}
+
+	/**
+	 * Records the checksum of a file.
+	 *
+	 * @param path       the file that was hashed.
+	 * @param attributes the attributes of the file, read before it was hashed; if the file changed while it was hashed, the entry will be stale.
+	 * @param algorithm  the algorithm the checksum was computed with.
+	 * @param checksum   the checksum of the file.
+	 */
+	public synchronized void put(Path path, BasicFileAttributes attributes, ChecksumAlgorithm algorithm, String checksum) {
+		String key = key(path, attributes, algorithm);
+		if (key.indexOf(SEPARATOR) != key.lastIndexOf(SEPARATOR) || key.indexOf('\n') >= 0) {
+			logger.debug("File key of \"{}\" cannot be stored in the checksum cache.", path);
+			return;
+		}
+
+		Entry entry = new Entry(attributes.size(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), checksum);
+		entries.put(key, entry);
+		try {
+			append(key, entry);
+			if (++appendsSinceCompaction >= COMPACTION_INTERVAL) compactIfWasteful();
+		} catch (IOException e) {
+			logger.error("Could not append to the checksum cache at \"{}\".", file);
+			logger.error(e.toString());
+		}
+	}
+
+	/**
+	 * Records the checksum of a file, reading its current attributes.
+	 *
+	 * @param path      the file that was hashed.
+	 * @param algorithm the algorithm the checksum was computed with.
+	 * @param checksum  the checksum of the file.
+	 */
+	public void put(Path path, ChecksumAlgorithm algorithm, String checksum) {
+		try {
+			put(path, Files.readAttributes(path, BasicFileAttributes.class), algorithm, checksum);
+		} catch (IOException e) {
+			logger.debug("Could not read the attributes of \"{}\" to cache its checksum ({}).", path, e.toString());
+		}
+	}
+
+	/**
+	 * Rewrites the cache file with only its live entries. If the compacted file could not be written, the cache file is left as it was and new
+	 * entries are still appended to it.
+	 *
+	 * @throws IOException if the compacted file could not be written.
+	 */
+	public synchronized void compact() throws IOException {
+		logger.debug("Compacting checksum cache \"{}\" ({} records, {} live entries).", file, records, entries.size());
+		closeWriter();
+
+		try {
+			Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+				for (Map.Entry<String, Entry> e : entries.entrySet()) {
+					write(out, e.getKey(), e.getValue());
+				}
+			}
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			records = entries.size();
+			appendsSinceCompaction = 0;
+		} finally {
+			if (!closed) openWriter();
+		}
+	}
+
+	/**
+	 * Closes the cache file. Checksums that are put afterwards are only kept in memory.
+	 *
+	 * @throws IOException if the cache file could not be closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		closeWriter();
+	}
+
+	private void load() throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				records++;
+				String[] fields = line.split(String.valueOf(SEPARATOR));
+				if (fields.length != 5) {
+					logger.warn("Skipping malformed checksum cache record \"{}\".", line);
+					continue;
+				}
+				try {
+					entries.put(
+							fields[0] + SEPARATOR + fields[3],
+							new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[4])
+					);
+				} catch (NumberFormatException e) {
+					logger.warn("Skipping malformed checksum cache record \"{}\".", line);
+				}
+			}
+			logger.debug("Loaded checksum cache \"{}\" ({} records, {} live entries).", file, records, entries.size());
+		} catch (NoSuchFileException e) {
+			logger.debug("No checksum cache exists at \"{}\" yet; starting an empty one.", file);
+		}
+	}
+
+	private void compactIfWasteful() throws IOException {
+		if (records >= MIN_RECORDS_BEFORE_COMPACTION && records > 2 * entries.size()) {
+			compact();
+		}
+		appendsSinceCompaction = 0;
+	}
+
+	private void append(String key, Entry entry) throws IOException {
+		if (writer == null) {
+			logger.debug("Checksum cache \"{}\" is closed; a new checksum is only kept in memory.", file);
+			return;
+		}
+		write(writer, key, entry);
+		writer.flush();
+		records++;
+	}
+
+	private static void write(BufferedWriter out, String key, Entry entry) throws IOException {
+		int split = key.lastIndexOf(SEPARATOR);
+		out.write(key, 0, split);
+		out.write(SEPARATOR);
+		out.write(Long.toString(entry.size));
+		out.write(SEPARATOR);
+		out.write(Long.toString(entry.modified));
+		out.write(SEPARATOR);
+		out.write(key, split + 1, key.length() - split - 1);
+		out.write(SEPARATOR);
+		out.write(entry.checksum);
+		out.write('\n');
+	}
+
+	private void openWriter() throws IOException {
+		writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+	}
+
+	private void closeWriter() throws IOException {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+	}
+
+	/**
+	 * Identifies a file by its file key (device and inode on Unix-like systems) or, where the file system has no file keys, by its absolute path.
+	 */
+	private static String key(Path path, BasicFileAttributes attributes, ChecksumAlgorithm algorithm) {
+		Object fileKey = attributes.fileKey();
+		return (fileKey != null ? fileKey.toString() : path.toAbsolutePath().toString()) + SEPARATOR + algorithm.name();
+	}
+
+	private static class Entry {
+		private final long size;
+		private final long modified;
+		private final String checksum;
+
+		private Entry(long size, long modified, String checksum) {
+			this.size = size;
+			this.modified = modified;
+			this.checksum = checksum;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.FileStore;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes how many files a {@link TransferScheduler} copies onto each device at once, from the throughput and latency of the copies that finish,
+ * so that the right parallelism does not have to be found by hand for every destination (a local SSD, a USB drive, an NFS share...).
+ * <p>
+ * The copies to every device are measured in windows of at least {@link #setWindow(long, TimeUnit) the window length} and of at least as many
+ * files as the current limit. At the end of each window, the limit of the device is adjusted in an additive-increase/multiplicative-decrease way:
+ * <ul>
+ *     <li>if the time a copy takes per MiB rose to more than {@value #LATENCY_TOLERANCE} times the lowest time seen on the device, the device is
+ *     overloaded and the limit is halved;</li>
+ *     <li>if the last increase of the limit did not raise the throughput by at least {@value #PLATEAU_GAIN_PERCENT} %, the device is saturated;
+ *     the limit goes back down by one and is held for {@value #COOLDOWN_WINDOWS} windows before it is probed again;</li>
+ *     <li>otherwise, if the device had as many copies in flight as it was allowed, the limit goes up by one.</li>
+ * </ul>
+ * The lowest time per MiB drifts up by {@value #BASELINE_DRIFT_PERCENT} % every window, so that a device that became slower for good (e.g. one
+ * that is busy serving others) is not held at its lowest limit forever.
+ */
+public class ConcurrencyController {
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrencyController.class);
+	private static final long DEFAULT_WINDOW_MILLIS = 2000;
+	private static final double LATENCY_TOLERANCE = 2.0;
+	private static final int PLATEAU_GAIN_PERCENT = 5;
+	private static final int BASELINE_DRIFT_PERCENT = 5;
+	private static final int COOLDOWN_WINDOWS = 3;
+	private static final long MEBIBYTE = 1 << 20;
+
+	private final int minConcurrency, maxConcurrency;
+	private final Map<FileStore, Window> windows = new HashMap<>();
+	private volatile long windowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_WINDOW_MILLIS);
+
+	/**
+	 * Prepares a controller that starts every device at the lowest limit and raises it from there.
+	 *
+	 * @param minConcurrency the lowest number of concurrent copies per device; at least 1.
+	 * @param maxConcurrency the highest number of concurrent copies per device, e.g. the number of workers that copy files.
+	 */
+	public ConcurrencyController(int minConcurrency, int maxConcurrency) {
+		if (minConcurrency < 1 || maxConcurrency < minConcurrency) {
+			throw new IllegalArgumentException(
+					"Concurrency bounds are out of range (minConcurrency = " + minConcurrency + ", maxConcurrency = " + maxConcurrency + ").");
+		}
+		this.minConcurrency = minConcurrency;
+		this.maxConcurrency = maxConcurrency;
+	}
+
+	/**
+	 * Sets the shortest time over which the copies to a device are measured before its limit is adjusted. Defaults to
+	 * {@value #DEFAULT_WINDOW_MILLIS} ms.
+	 *
+	 * @param window the window length.
+	 * @param unit   the unit of the window length.
+	 */
+	public void setWindow(long window, TimeUnit unit) {
+		if (window <= 0) throw new IllegalArgumentException("Window must be positive (window = " + window + ").");
+		this.windowNanos = unit.toNanos(window);
+	}
+
+	/**
+	 * Returns how many files may currently be copied onto the given device at once.
+	 *
+	 * @param store the device.
+	 *
+	 * @return the current limit of the device.
+	 */
+	public synchronized int getConcurrency(FileStore store) {
+		return window(store).limit;
+	}
+
+	/**
+	 * Records a copy onto the given device that has finished, and adjusts the device's limit if the copy closes a window.
+	 *
+	 * @param store    the device that was written to.
+	 * @param inFlight the number of copies to the device that were in flight when this one finished, including it.
+	 * @param bytes    the number of bytes that were copied.
+	 * @param nanos    how long the copy took.
+	 *
+	 * @return the limit of the device from now on.
+	 */
+	synchronized int onTransferComplete(FileStore store, int inFlight, long bytes, long nanos) {
+		Window w = window(store);
+		long now = System.nanoTime();
+		w.bytes += bytes;
+		w.files++;
+		w.peakInFlight = Math.max(w.peakInFlight, inFlight);
+		/* Small files take about as long to open and close as to copy, so only large ones tell how busy the device is */
+		if (bytes >= MEBIBYTE) {
+			w.nanosPerMebibyte += (double) nanos * MEBIBYTE / bytes;
+			w.latencySamples++;
+		}
+		if (now - w.start < windowNanos || w.files < w.limit) return w.limit;
+
+		double throughput = (double) w.bytes * TimeUnit.SECONDS.toNanos(1) / (now - w.start);
+		double latency = w.latencySamples > 0 ? w.nanosPerMebibyte / w.latencySamples : Double.NaN;
+		int limit = w.limit;
+		String reason;
+		if (!Double.isNaN(latency) && !Double.isNaN(w.baselineLatency) && latency > w.baselineLatency * LATENCY_TOLERANCE) {
+			limit = Math.max(minConcurrency, limit / 2);
+			w.cooldown = COOLDOWN_WINDOWS;
+			reason = "latency rose";
+		} else if (w.lastLimit > 0 && limit > w.lastLimit && throughput < w.lastThroughput * (100 + PLATEAU_GAIN_PERCENT) / 100) {
+			limit = Math.max(minConcurrency, limit - 1);
+			w.cooldown = COOLDOWN_WINDOWS;
+			reason = "throughput plateaued";
+		} else if (w.cooldown > 0) {
+			w.cooldown--;
+			reason = "cooling down";
+		} else if (w.peakInFlight >= limit) {
+			limit = Math.min(maxConcurrency, limit + 1);
+			reason = "probing";
+		} else {
+			reason = "not saturated";
+		}
+
+		logger.debug(
+				"Measured \"{}\" over {} files (throughput = {} MB/s, latency = {} ms/MiB, baseline = {} ms/MiB, peak in flight = {}, limit = {} -> {}, {}).",
+				store,
+				w.files,
+				String.format("%.1f", throughput / 1_000_000),
+				String.format("%.1f", latency / 1_000_000),
+				String.format("%.1f", w.baselineLatency / 1_000_000),
+				w.peakInFlight,
+				w.limit,
+				limit,
+				reason
+		);
+		if (limit != w.limit) {
+			logger.info("Number of concurrent copies to \"{}\" adjusted from {} to {} ({}).", store, w.limit, limit, reason);
+		}
+		if (!Double.isNaN(latency)) {
+			w.baselineLatency = Double.isNaN(w.baselineLatency) ? latency : Math.min(w.baselineLatency * (100 + BASELINE_DRIFT_PERCENT) / 100, latency);
+		}
+		w.lastThroughput = throughput;
+		w.lastLimit = w.limit;
+		w.limit = limit;
+		w.reset(now);
+		return limit;
+	}
+
+	private Window window(FileStore store) {
+		return windows.computeIfAbsent(store, s -> new Window(minConcurrency));
+	}
+
+	/**
+	 * The measurements of the copies onto a single device.
+	 */
+	private static class Window {
+		private int limit, lastLimit, peakInFlight, files, latencySamples, cooldown;
+		private long start, bytes;
+		private double nanosPerMebibyte, lastThroughput, baselineLatency = Double.NaN;
+
+		private Window(int limit) {
+			this.limit = limit;
+			reset(System.nanoTime());
+		}
+
+		private void reset(long now) {
+			start = now;
+			bytes = 0;
+			files = 0;
+			peakInFlight = 0;
+			latencySamples = 0;
+			nanosPerMebibyte = 0;
+		}
+	}
+}
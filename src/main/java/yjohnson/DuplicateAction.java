@@ -0,0 +1,32 @@
+package yjohnson;
+
+/**
+ * What happens to a file whose contents are identical to another file of the same queue, or to a file that is already in the destination. A
+ * duplicate is never copied, except under {@link #REPORT}.
+ */
+public enum DuplicateAction {
+
+	/**
+	 * Leaves the duplicate where it is.
+	 */
+	SKIP,
+	/**
+	 * Only reports the duplicate; it is relocated like any other file.
+	 */
+	REPORT,
+	/**
+	 * Creates the duplicate's target as a hard link to the identical file in the destination and deletes the duplicate's source, unless the file
+	 * operation keeps sources. Duplicates that cannot be linked (e.g. because the link would cross file systems) are left where they are.
+	 */
+	HARDLINK;
+
+	public static String[] toStringArray() {
+		String[] strings = new String[values().length];
+		DuplicateAction[] values = values();
+		for (int i = 0; i < values.length; i++) {
+			DuplicateAction action = values[i];
+			strings[i] = action.toString().replace('_', ' ');
+		}
+		return strings;
+	}
+}
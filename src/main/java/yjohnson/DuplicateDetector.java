@@ -0,0 +1,281 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds the files of a relocation plan whose contents are identical to another file of the plan, or to a file that is already in one of the
+ * plan's target directories, before anything is copied. Files are compared in three steps, each of which only looks at the files that the
+ * previous step could not tell apart:
+ * <ol>
+ *     <li>files are grouped by their exact size, which was already read when they were found;</li>
+ *     <li>files of the same size are grouped by a checksum of a small block at their head and one at their tail;</li>
+ *     <li>files that still match are grouped by a checksum of their whole contents, which is looked up in the checksum cache first.</li>
+ * </ol>
+ * Most files have a size of their own, so they are never read at all.
+ */
+public class DuplicateDetector {
+	private static final Logger logger = LoggerFactory.getLogger(DuplicateDetector.class);
+
+	private final ChecksumCache cache;
+	private final RateLimiter limiter;
+	private int headAndTailChecksums, fullChecksums, cachedChecksums;
+
+	/**
+	 * Prepares a duplicate detector.
+	 *
+	 * @param cache the checksum cache that full checksums are looked up in and recorded to, or null to hash every file that needs it.
+	 */
+	public DuplicateDetector(ChecksumCache cache) {
+		this(cache, null);
+	}
+
+	/**
+	 * Prepares a duplicate detector whose full checksums read the files no faster than the given rate limiter allows.
+	 *
+	 * @param cache   the checksum cache that full checksums are looked up in and recorded to, or null to hash every file that needs it.
+	 * @param limiter the rate limiter of the full checksums, or null to read at full speed.
+	 */
+	public DuplicateDetector(ChecksumCache cache, RateLimiter limiter) {
+		this.cache = cache;
+		this.limiter = limiter;
+	}
+
+	/**
+	 * Finds the duplicates among the files of the given plan. Of every set of identical files, a file that is already in the destination is kept;
+	 * failing that, the first file of the plan that will be relocated is kept. Every other file of the plan in the set is a duplicate of the kept
+	 * one. Files that already are in place, or whose directory could not be created, are not looked at.
+	 *
+	 * @param plan the relocation plan to look for duplicates in.
+	 *
+	 * @return the duplicate entries of the plan, in plan order, mapped to what they duplicate.
+	 */
+	public Map<RelocationPlan.Entry, Duplicate> find(RelocationPlan plan) {
+		long start = System.nanoTime();
+		List<Candidate> candidates = collectCandidates(plan);
+
+		Map<Long, List<Candidate>> bySize = new LinkedHashMap<>();
+		for (Candidate candidate : candidates) {
+			if (candidate.size > 0) bySize.computeIfAbsent(candidate.size, s -> new ArrayList<>()).add(candidate);
+		}
+
+		Map<RelocationPlan.Entry, Duplicate> duplicates = new LinkedHashMap<>();
+		for (List<Candidate> sameSize : bySize.values()) {
+			if (!isWorthComparing(sameSize)) continue;
+
+			for (List<Candidate> sameHeadAndTail : group(sameSize, this::headAndTailChecksum).values()) {
+				if (!isWorthComparing(sameHeadAndTail)) continue;
+
+				if (Checksum.isHeadAndTailComplete(sameHeadAndTail.get(0).size)) {
+					addDuplicates(sameHeadAndTail, duplicates);
+					continue;
+				}
+				for (List<Candidate> identical : group(sameHeadAndTail, this::fullChecksum).values()) {
+					if (isWorthComparing(identical)) addDuplicates(identical, duplicates);
+				}
+			}
+		}
+
+		/* The map is filled one set at a time, so it is put back into plan order */
+		Map<RelocationPlan.Entry, Duplicate> ordered = new LinkedHashMap<>();
+		for (RelocationPlan.Entry entry : plan.getEntries()) {
+			Duplicate duplicate = duplicates.get(entry);
+			if (duplicate != null) ordered.put(entry, duplicate);
+		}
+		logger.info(
+				"Found {} duplicates among {} files in {} ms ({} head and tail checksums, {} full checksums, {} taken from the cache).",
+				ordered.size(),
+				candidates.size(),
+				(System.nanoTime() - start) / 1_000_000,
+				headAndTailChecksums,
+				fullChecksums,
+				cachedChecksums
+		);
+		return ordered;
+	}
+
+	/**
+	 * Collects the files of the plan that can be relocated, or that were kept from relocation by another file, along with the files that are already
+	 * in the plan's target directories.
+	 */
+	private List<Candidate> collectCandidates(RelocationPlan plan) {
+		List<Candidate> candidates = new ArrayList<>();
+		Set<Path> sources = new HashSet<>();
+		for (RelocationPlan.Entry entry : plan.getEntries()) {
+			switch (entry.getConflict()) {
+				case ALREADY_IN_PLACE:
+				case DIRECTORY_FAILED:
+					continue;
+				default:
+					BasicFileAttributes attributes = entry.getMedia().getAttributes();
+					try {
+						if (attributes == null) attributes = Files.readAttributes(entry.getSource(), BasicFileAttributes.class);
+						candidates.add(new Candidate(entry.getSource(), attributes, entry));
+						sources.add(entry.getSource());
+					} catch (IOException e) {
+						logger.warn("Could not read the attributes of \"{}\"; it will not be checked for duplicates ({}).", entry.getSource(), e.toString());
+					}
+			}
+		}
+
+		/* A source that already is in a target directory (under another name) must not be compared against itself */
+		Set<Path> missing = plan.getMissingDirectories();
+		for (Path dir : plan.getDirectories()) {
+			if (missing.contains(dir)) continue;
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+				for (Path file : stream) {
+					BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					if (attributes.isRegularFile() && !sources.contains(file)) candidates.add(new Candidate(file, attributes, null));
+				}
+			} catch (IOException e) {
+				logger.warn("Could not list destination directory \"{}\"; its files will not be checked for duplicates ({}).", dir, e.toString());
+			}
+		}
+		return candidates;
+	}
+
+	/**
+	 * Only groups that hold more than one file, at least one of which is to be relocated, can hold a duplicate.
+	 */
+	private static boolean isWorthComparing(List<Candidate> group) {
+		if (group.size() < 2) return false;
+		for (Candidate candidate : group) {
+			if (candidate.entry != null) return true;
+		}
+		return false;
+	}
+
+	private static Map<String, List<Candidate>> group(List<Candidate> candidates, ChecksumFunction checksum) {
+		Map<String, List<Candidate>> groups = new LinkedHashMap<>();
+		for (Candidate candidate : candidates) {
+			try {
+				groups.computeIfAbsent(checksum.apply(candidate), c -> new ArrayList<>()).add(candidate);
+			} catch (IOException e) {
+				logger.warn("Could not read \"{}\"; it will not be checked for duplicates ({}).", candidate.path, e.toString());
+			}
+		}
+		return groups;
+	}
+
+	private String headAndTailChecksum(Candidate candidate) throws IOException {
+		headAndTailChecksums++;
+		return Checksum.getHeadAndTailChecksum(candidate.path);
+	}
+
+	private String fullChecksum(Candidate candidate) throws IOException {
+		if (cache != null) {
+			String cached = cache.get(candidate.path, Checksum.getAlgorithm());
+			if (cached != null) {
+				cachedChecksums++;
+				return cached;
+			}
+		}
+		fullChecksums++;
+		String checksum = Checksum.getChecksum(candidate.path, limiter);
+		if (cache != null) cache.put(candidate.path, candidate.attributes, Checksum.getAlgorithm(), checksum);
+		return checksum;
+	}
+
+	/**
+	 * Picks the file to keep out of a set of identical files and records every other file of the plan in the set as its duplicate.
+	 */
+	private static void addDuplicates(List<Candidate> identical, Map<RelocationPlan.Entry, Duplicate> duplicates) {
+		Candidate kept = null;
+		for (Candidate candidate : identical) {
+			if (candidate.entry == null) {
+				kept = candidate;
+				break;
+			}
+			if (kept == null && candidate.entry.isRelocatable()) kept = candidate;
+		}
+		if (kept == null) kept = identical.get(0);
+
+		for (Candidate candidate : identical) {
+			if (candidate == kept || candidate.entry == null) continue;
+			Duplicate duplicate = new Duplicate(candidate.entry, kept.path, kept.entry);
+			duplicates.put(candidate.entry, duplicate);
+			logger.info("\"{}\" is a duplicate of \"{}\".", candidate.path, kept.path);
+		}
+	}
+
+	/**
+	 * A file of a relocation plan whose contents are identical to a file that is kept.
+	 */
+	public static class Duplicate {
+		private final RelocationPlan.Entry entry;
+		private final Path original;
+		private final RelocationPlan.Entry originalEntry;
+
+		private Duplicate(RelocationPlan.Entry entry, Path original, RelocationPlan.Entry originalEntry) {
+			this.entry = entry;
+			this.original = original;
+			this.originalEntry = originalEntry;
+		}
+
+		public RelocationPlan.Entry getEntry() {
+			return entry;
+		}
+
+		/**
+		 * Returns the kept file as it is now: a file in the destination, or the source of another entry of the plan.
+		 *
+		 * @return the path of the kept file.
+		 */
+		public Path getOriginal() {
+			return original;
+		}
+
+		/**
+		 * Returns the entry of the plan that is kept, if the kept file is not in the destination yet.
+		 *
+		 * @return the kept entry, or null if the kept file already is in the destination.
+		 */
+		public RelocationPlan.Entry getOriginalEntry() {
+			return originalEntry;
+		}
+
+		/**
+		 * Returns where the kept file is once the plan has been executed, i.e. where a hard link to it should point.
+		 *
+		 * @return the path of the kept file in the destination.
+		 */
+		public Path getOriginalTarget() {
+			return originalEntry != null ? originalEntry.getTarget() : original;
+		}
+	}
+
+	/**
+	 * A file that may be a duplicate or be duplicated.
+	 */
+	private static class Candidate {
+		private final Path path;
+		private final BasicFileAttributes attributes;
+		private final long size;
+		private final RelocationPlan.Entry entry;
+
+		private Candidate(Path path, BasicFileAttributes attributes, RelocationPlan.Entry entry) {
+			this.path = path;
+			this.attributes = attributes;
+			this.size = attributes.size();
+			this.entry = entry;
+		}
+	}
+
+	@FunctionalInterface
+	private interface ChecksumFunction {
+		String apply(Candidate candidate) throws IOException;
+	}
+}
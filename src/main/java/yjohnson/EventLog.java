@@ -0,0 +1,282 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A structured log of what happens to every file (scanned, parsed, planned, copied, moved, linked, verified, skipped, failed), written as JSON Lines so that a run
+ * can be analysed afterwards. Unlike the slf4j log, recording an event never waits for formatting or I/O: the calling thread fills in one of a
+ * fixed pool of preallocated records and hands it over to a background thread, which writes the records in batches and flushes once per batch.
+ * <p>
+ * When the background thread falls behind and every record is in use, new events are dropped (and counted) instead of blocking the caller. At
+ * most one event log is open at a time; {@link #record(Type, Path, Path, long, String)} does nothing while none is.
+ */
+public class EventLog implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(EventLog.class);
+	private static final int DEFAULT_CAPACITY = 4096;
+	private static final int MAX_BATCH = 512;
+	private static final Event STOP = new Event();
+
+	private static volatile EventLog current;
+
+	private final Path file;
+	private final Writer out;
+	private final BlockingQueue<Event> free;
+	private final BlockingQueue<Event> filled;
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread writer;
+	private volatile boolean closed;
+
+	private EventLog(Path file, Writer out, int capacity) {
+		this.file = file;
+		this.out = out;
+		this.free = new ArrayBlockingQueue<>(capacity);
+		/* Holds at most every record of the pool, plus the stop marker */
+		this.filled = new ArrayBlockingQueue<>(capacity + 1);
+		for (int i = 0; i < capacity; i++) {
+			free.add(new Event());
+		}
+		this.writer = new Operations.WorkerThreadFactory("event-log").newThread(this::drain);
+	}
+
+	/**
+	 * Opens the event log at the given path, creating it (and its parent directories) if it does not exist yet, and makes it the log that
+	 * {@link #record(Type, Path, Path, long, String)} writes to. New events are appended to the events of earlier runs.
+	 *
+	 * @param file the JSON Lines file to append events to.
+	 *
+	 * @return the opened event log.
+	 *
+	 * @throws IOException if the file could not be created or opened.
+	 */
+	public static EventLog open(Path file) throws IOException {
+		return open(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Opens the event log at the given path with the given number of preallocated records.
+	 *
+	 * @param file     the JSON Lines file to append events to.
+	 * @param capacity the number of events that can be waiting to be written before new events are dropped.
+	 *
+	 * @return the opened event log.
+	 *
+	 * @throws IOException if the file could not be created or opened.
+	 */
+	public static EventLog open(Path file, int capacity) throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		Writer out = Files.newBufferedWriter(
+				file,
+				StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.APPEND,
+				StandardOpenOption.WRITE
+		);
+		EventLog log = new EventLog(file, out, Math.max(1, capacity));
+		log.writer.start();
+		current = log;
+		logger.debug("Opened event log at \"{}\" (capacity = {}).", file, capacity);
+		return log;
+	}
+
+	/**
+	 * Records an event without a target or duration.
+	 *
+	 * @param type the type of the event.
+	 * @param file the file the event concerns.
+	 */
+	public static void record(Type type, Path file) {
+		record(type, file, null, -1, null);
+	}
+
+	/**
+	 * Records an event in the open event log, if any. Only references are stored on the calling thread; the event is formatted and written by the
+	 * background thread.
+	 *
+	 * @param type          the type of the event.
+	 * @param file          the file the event concerns.
+	 * @param target        the target path of the file, or null if it has none (yet).
+	 * @param durationNanos how long the step took in nanoseconds, or a negative value if it was not timed.
+	 * @param detail        a short description, e.g. the reason of a failure, or null.
+	 */
+	public static void record(Type type, Path file, Path target, long durationNanos, String detail) {
+		EventLog log = current;
+		if (log != null) log.add(type, file, target, durationNanos, detail);
+	}
+
+	/**
+	 * Returns the number of events that were dropped because every preallocated record was waiting to be written.
+	 *
+	 * @return the number of dropped events.
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * Writes every event recorded so far, stops the background thread and closes the file. Events recorded afterwards are ignored.
+	 *
+	 * @throws IOException if the file could not be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		if (current == this) current = null;
+
+		filled.add(STOP);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while waiting for the event log to be written; some events may be lost.");
+			Thread.currentThread().interrupt();
+		}
+		if (dropped.get() > 0) {
+			logger.warn("{} events could not be written to the event log at \"{}\" because it fell behind.", dropped.get(), file);
+		}
+		out.close();
+		logger.debug("Closed event log at \"{}\".", file);
+	}
+
+	private void add(Type type, Path file, Path target, long durationNanos, String detail) {
+		if (closed) return;
+		Event event = free.poll();
+		if (event == null) {
+			dropped.incrementAndGet();
+			return;
+		}
+		event.time = System.currentTimeMillis();
+		event.type = type;
+		event.file = file;
+		event.target = target;
+		event.durationNanos = durationNanos;
+		event.detail = detail;
+		filled.add(event);
+	}
+
+	/**
+	 * Runs on the background thread: waits for events, writes every event that is waiting as one batch, and flushes the file once per batch.
+	 */
+	private void drain() {
+		List<Event> batch = new ArrayList<>(MAX_BATCH);
+		StringBuilder line = new StringBuilder(256);
+		boolean stopped = false;
+		while (!stopped) {
+			try {
+				batch.add(filled.take());
+			} catch (InterruptedException e) {
+				logger.warn("Event log writer was interrupted; events that are still waiting will not be written.");
+				return;
+			}
+			filled.drainTo(batch, MAX_BATCH - 1);
+
+			try {
+				for (Event event : batch) {
+					if (event == STOP) {
+						stopped = true;
+						continue;
+					}
+					line.setLength(0);
+					event.appendTo(line);
+					out.append(line);
+				}
+				out.flush();
+			} catch (IOException e) {
+				logger.error("Could not write {} events to the event log at \"{}\".", batch.size(), file);
+				logger.error(e.toString());
+			}
+
+			for (Event event : batch) {
+				if (event == STOP) continue;
+				event.clear();
+				free.offer(event);
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * A preallocated, reusable event record.
+	 */
+	private static class Event {
+		private long time;
+		private Type type;
+		private Path file;
+		private Path target;
+		private long durationNanos;
+		private String detail;
+
+		private void appendTo(StringBuilder sb) {
+			sb.append("{\"time\":\"").append(Instant.ofEpochMilli(time)).append('"');
+			sb.append(",\"event\":\"").append(type).append('"');
+			if (file != null) appendString(sb.append(",\"file\":"), file.toString());
+			if (target != null) appendString(sb.append(",\"target\":"), target.toString());
+			if (durationNanos >= 0) sb.append(",\"durationNanos\":").append(durationNanos);
+			if (detail != null) appendString(sb.append(",\"detail\":"), detail);
+			sb.append("}\n");
+		}
+
+		private void clear() {
+			file = target = null;
+			detail = null;
+			type = null;
+		}
+
+		private static void appendString(StringBuilder sb, String s) {
+			sb.append('"');
+			for (int i = 0; i < s.length(); i++) {
+				char c = s.charAt(i);
+				switch (c) {
+					case '"':
+						sb.append("\\\"");
+						break;
+					case '\\':
+						sb.append("\\\\");
+						break;
+					case '\n':
+						sb.append("\\n");
+						break;
+					case '\r':
+						sb.append("\\r");
+						break;
+					case '\t':
+						sb.append("\\t");
+						break;
+					default:
+						if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+						else sb.append(c);
+				}
+			}
+			sb.append('"');
+		}
+	}
+
+	/**
+	 * The steps of a file's way through the program that are recorded.
+	 */
+	public enum Type {
+		SCANNED,
+		PARSED,
+		PLANNED,
+		COPIED,
+		MOVED,
+		LINKED,
+		VERIFIED,
+		SKIPPED,
+		FAILED
+	}
+}
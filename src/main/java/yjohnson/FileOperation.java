@@ -2,7 +2,47 @@ package yjohnson;
 
 public enum FileOperation {
 
-	MOVE_FILE_ATOMICALLY, COPY_FILE_AND_DELETE_SRC;
+	MOVE_FILE_ATOMICALLY, COPY_FILE_AND_DELETE_SRC,
+	/**
+	 * Creates the organized path as a hard link to the source file; both names share the same data, and the source stays where it is. The
+	 * destination must be on the same file system as the source.
+	 */
+	HARDLINK,
+	/**
+	 * Creates the organized path as a symbolic link to the absolute path of the source file, which stays where it is.
+	 */
+	SYMLINK,
+	/**
+	 * Renames the source file to its custom name within its own directory; no destination directory is used.
+	 */
+	RENAME_IN_PLACE;
+
+	/**
+	 * Checks whether this operation only changes file system metadata (one link or rename per file) instead of moving the file's data.
+	 *
+	 * @return true for {@link #HARDLINK}, {@link #SYMLINK} and {@link #RENAME_IN_PLACE}.
+	 */
+	public boolean isMetadataOnly() {
+		return this == HARDLINK || this == SYMLINK || this == RENAME_IN_PLACE;
+	}
+
+	/**
+	 * Checks whether the source file is left where it is by this operation, e.g. so that it can still be seeded.
+	 *
+	 * @return true for {@link #HARDLINK} and {@link #SYMLINK}.
+	 */
+	public boolean keepsSource() {
+		return this == HARDLINK || this == SYMLINK;
+	}
+
+	/**
+	 * Checks whether this operation places files under a destination directory.
+	 *
+	 * @return false for {@link #RENAME_IN_PLACE}, true otherwise.
+	 */
+	public boolean usesDestination() {
+		return this != RENAME_IN_PLACE;
+	}
 
 	public static String[] toStringArray() {
 		String[] strings = new String[values().length];
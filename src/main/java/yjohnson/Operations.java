@@ -8,6 +8,21 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 
@@ -17,138 +32,728 @@ public class Operations {
 	private final FileOperation selectedOp;
 	private final MediaQueue mediaQueue;
 	private final File destinationDir;
+	private final int workerCount;
+	private VerificationPolicy verificationPolicy = VerificationPolicy.FULL_HASH;
+	private final TransferEngine transferEngine = new TransferEngine();
+	private final TransferScheduler transferScheduler = new TransferScheduler();
+	private ChecksumCache checksumCache;
+	private TransferJournal journal;
+	private RelocationPlan relocationPlan;
+	private boolean relocationPlanExecuted;
+	private DuplicateAction duplicateAction;
+	private Map<RelocationPlan.Entry, DuplicateDetector.Duplicate> duplicates;
+	private final Queue<MediaIOWrapper> pendingLinks = new ConcurrentLinkedQueue<>();
+	private Set<RelocationPlan.Entry> crossStoreEntries = Set.of();
+	private final List<MediaIOWrapper> results = new ArrayList<>();
+	private final Set<Path> claimedTargets = ConcurrentHashMap.newKeySet();
+
 	public Operations(FileOperation fOp, MediaQueue mQ, File destinationDir) {
+		this(fOp, mQ, destinationDir, 1);
+	}
+
+	/**
+	 * Prepares a file operation without a pre-built media queue. Media objects are handed over one at a time instead, e.g. by a
+	 * {@link RelocationPipeline}.
+	 *
+	 * @param fOp            the file operation to perform.
+	 * @param destinationDir the root directory of the organized structure.
+	 */
+	public Operations(FileOperation fOp, File destinationDir) {
+		this(fOp, null, destinationDir, 1);
+	}
+
+	/**
+	 * Prepares a file operation over every Media object of the given queue.
+	 *
+	 * @param fOp            the file operation to perform.
+	 * @param mQ             the media queue to relocate.
+	 * @param destinationDir the root directory of the organized structure; not used by {@link FileOperation#RENAME_IN_PLACE}.
+	 * @param workerCount    the number of files to relocate concurrently; values below 2 relocate the queue sequentially.
+	 */
+	public Operations(FileOperation fOp, MediaQueue mQ, File destinationDir, int workerCount) {
 		this.selectedOp = fOp;
 		this.mediaQueue = mQ;
 		this.destinationDir = destinationDir;
+		this.workerCount = Math.max(1, workerCount);
+		this.transferEngine.setRateLimiter(transferScheduler.getCopyLimiter());
 	}
 
+	/**
+	 * Relocates every Media object of the queue according to the relocation plan. The first run uses the plan (and duplicates) already returned by
+	 * {@link #getRelocationPlan()} and {@link #getDuplicates()}, if any, so that the run does what was reported; every later run plans again, since
+	 * the files that an earlier run relocated are no longer where that plan expects them.
+	 */
 	public void executeFileOperation(){
+		if (mediaQueue == null) {
+			logger.error("No media queue was given to this {} instance; nothing to execute.", this.getClass().getSimpleName());
+			return;
+		}
+		/* Only the outcome of this run is reported by getResults() */
+		results.clear();
+		if (relocationPlanExecuted) invalidateRelocationPlan();
+		relocationPlanExecuted = true;
+		finishPendingDeletes();
+		RelocationPlan plan = getRelocationPlan();
+		getDuplicates();
+		plan.createDirectories();
 		switch (selectedOp) {
 			case MOVE_FILE_ATOMICALLY:
-				ioStandardMoveRunner(mediaQueue, destinationDir);
+				ioStandardMoveRunner(plan, destinationDir);
 				break;
 			case COPY_FILE_AND_DELETE_SRC:
-				ioNonAtomicMoveRunner(mediaQueue,destinationDir);
+				ioNonAtomicMoveRunner(plan,destinationDir);
+				break;
+			case HARDLINK:
+			case SYMLINK:
+			case RENAME_IN_PLACE:
+				ioMetadataRunner(plan, destinationDir);
+				break;
 			default:
 				logger.error("Operation {} not implemented!", selectedOp);
 		}
+		linkPendingDuplicates();
+	}
+
+	/**
+	 * Forgets the relocation plan and duplicates of an earlier run, along with the targets that plan claimed, so that they are computed again.
+	 */
+	private void invalidateRelocationPlan() {
+		if (relocationPlan != null) {
+			for (RelocationPlan.Entry entry : relocationPlan.getEntries()) {
+				if (entry.isRelocatable()) claimedTargets.remove(entry.getTarget());
+			}
+		}
+		relocationPlan = null;
+		duplicates = null;
+	}
+
+	/**
+	 * Sets how files whose contents are identical to another file of the queue, or to a file that is already in the destination, are handled. The
+	 * duplicates are looked for when the operation is executed (or when {@link #getDuplicates()} is first called), before anything is copied.
+	 * Duplicates are not looked for by default.
+	 *
+	 * @param duplicateAction the action to take on duplicates, or null to relocate every file without looking for duplicates.
+	 */
+	public void setDuplicateAction(DuplicateAction duplicateAction) {
+		this.duplicateAction = duplicateAction;
+	}
+
+	/**
+	 * Returns the files of this operation's relocation plan that duplicate another file, computing them on the first call. The checksum cache must
+	 * be set before the duplicates are computed for it to be used.
+	 *
+	 * @return the duplicate entries of the plan, in plan order; empty if no duplicate action was set.
+	 */
+	public Map<RelocationPlan.Entry, DuplicateDetector.Duplicate> getDuplicates() {
+		if (duplicates == null) {
+			RelocationPlan plan = getRelocationPlan();
+			duplicates = duplicateAction == null || plan == null ? Map.of() : new DuplicateDetector(checksumCache, transferScheduler.getVerificationLimiter()).find(plan);
+		}
+		return Collections.unmodifiableMap(duplicates);
+	}
+
+	/**
+	 * Returns the plan of the relocation of this operation's media queue, computing it on the first call. The plan lists the target of every file
+	 * and the files that will be skipped because of a conflict; it is computed without changing anything, so that conflicts can be reported
+	 * before {@link #executeFileOperation()} is called. The transfer journal must be set before the plan is computed.
+	 *
+	 * @return the relocation plan, or null if this operation was not given a media queue.
+	 */
+	public RelocationPlan getRelocationPlan() {
+		if (relocationPlan == null && mediaQueue != null) {
+			relocationPlan = RelocationPlan.of(
+					mediaQueue,
+					selectedOp.usesDestination() ? destinationDir.toPath() : null,
+					this::generateTarget,
+					journal
+			);
+			for (RelocationPlan.Entry entry : relocationPlan.getEntries()) {
+				if (entry.isRelocatable()) claimedTargets.add(entry.getTarget());
+			}
+		}
+		return relocationPlan;
+	}
+
+	/**
+	 * Sets how copied files are verified before their source is deleted. Defaults to {@link VerificationPolicy#FULL_HASH}.
+	 *
+	 * @param verificationPolicy the policy to verify copies with.
+	 */
+	public void setVerificationPolicy(VerificationPolicy verificationPolicy) {
+		this.verificationPolicy = verificationPolicy;
+	}
+
+	/**
+	 * Sets the persistent cache that source checksums are looked up in before a file is hashed, and that new checksums are recorded in. No cache
+	 * is used by default.
+	 *
+	 * @param checksumCache the checksum cache, or null to hash every file.
+	 */
+	public void setChecksumCache(ChecksumCache checksumCache) {
+		this.checksumCache = checksumCache;
+	}
+
+	/**
+	 * Sets the journal that the states of copied files are recorded in, so that an interrupted run can be continued. Copies recorded by an earlier
+	 * run are resumed from their last durable offset, and verified sources that were not yet deleted are deleted before this operation starts. No
+	 * journal is used by default.
+	 *
+	 * @param journal the transfer journal, or null to copy without one.
+	 */
+	public void setTransferJournal(TransferJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Returns the engine that copies files for this operation, e.g. to change its rate limiter.
+	 *
+	 * @return the transfer engine of this operation.
+	 */
+	public TransferEngine getTransferEngine() {
+		return transferEngine;
+	}
+
+	/**
+	 * Returns the scheduler that throttles the copies and verification reads of this operation and caps the number of copies per device, e.g. to
+	 * change those limits while files are being copied.
+	 *
+	 * @return the transfer scheduler of this operation.
+	 */
+	public TransferScheduler getTransferScheduler() {
+		return transferScheduler;
 	}
-	private void ioStandardMoveRunner(MediaQueue mQ, File destinationDir) {
-		MediaIOWrapper wrapper;
 
+	/**
+	 * Returns the outcome of every file processed by the last call to {@link #executeFileOperation()}, in queue order.
+	 *
+	 * @return an unmodifiable view of the per-file results.
+	 */
+	public List<MediaIOWrapper> getResults() {
+		return Collections.unmodifiableList(results);
+	}
+	/**
+	 * Moves the files of the plan in two batches: first every file whose source is on the same FileStore as the destination, with one atomic
+	 * rename each, and then every other file, with the copy engine. The results are put back into queue order afterwards.
+	 */
+	private void ioStandardMoveRunner(RelocationPlan plan, File destinationDir) {
 		logger.info("Starting organized move operation into \"{}\" for given media queue.", destinationDir);
-		for (MediaQueue.MediaList mediaList : mQ) {
-			logger.trace("Processing Media objects within media list \"{}\".", mediaList.toString());
+		crossStoreEntries = findCrossStoreEntries(plan);
+		List<RelocationPlan.Entry> renames = new ArrayList<>(), copies = new ArrayList<>();
+		for (RelocationPlan.Entry entry : plan.getEntries()) {
+			(crossStoreEntries.contains(entry) ? copies : renames).add(entry);
+		}
+		logger.info("Renaming {} files within their FileStore; copying {} files across FileStores.", renames.size(), copies.size());
+		runForEachEntry(renames, this::relocate);
+		runForEachEntry(copies, this::relocate);
+
+		Map<Media, Integer> positions = new IdentityHashMap<>();
+		for (RelocationPlan.Entry entry : plan.getEntries()) {
+			positions.put(entry.getMedia(), positions.size());
+		}
+		results.sort(Comparator.comparingInt(wrapper -> positions.getOrDefault(wrapper.media, -1)));
+	}
+
+	/**
+	 * Finds the entries of the plan whose source is on another FileStore than the destination, so that they can be copied right away instead of
+	 * each failing an atomic move first. The FileStore of the destination, and of the source directory of every media list, is resolved only once.
+	 * A file that is on another FileStore than its source directory (e.g. below a mount point inside it) is still caught by the fallback of
+	 * {@link #atomicMove(MediaIOWrapper)}.
+	 *
+	 * @param plan the relocation plan to route.
+	 *
+	 * @return the entries to copy; empty if the FileStore of the destination could not be resolved.
+	 */
+	private Set<RelocationPlan.Entry> findCrossStoreEntries(RelocationPlan plan) {
+		FileStore destinationStore = resolveFileStore(destinationDir.toPath().toAbsolutePath());
+		if (destinationStore == null) return Set.of();
+
+		Map<Path, FileStore> sourceStores = new HashMap<>();
+		Map<Media, FileStore> storeOfMedia = new IdentityHashMap<>();
+		for (MediaQueue.MediaList mediaList : mediaQueue) {
+			Path dir = mediaList.getDirectory().toAbsolutePath();
+			FileStore store = sourceStores.containsKey(dir) ? sourceStores.get(dir) : resolveFileStore(dir);
+			sourceStores.put(dir, store);
 			for (Media mediaObj : mediaList) {
-				Path newFilePath;
-				logger.trace("Processing {} object \"{}\".", mediaObj.getClass().getName(), mediaObj.getCustomFilename());
+				storeOfMedia.put(mediaObj, store);
+			}
+		}
+
+		Set<RelocationPlan.Entry> crossStore = Collections.newSetFromMap(new IdentityHashMap<>());
+		Map<FileStore, Integer> groups = new LinkedHashMap<>();
+		for (RelocationPlan.Entry entry : plan.getEntries()) {
+			if (!entry.isRelocatable()) continue;
+			FileStore store = storeOfMedia.get(entry.getMedia());
+			if (store == null) continue;
+			groups.merge(store, 1, Integer::sum);
+			if (!store.equals(destinationStore)) crossStore.add(entry);
+		}
+		for (Map.Entry<FileStore, Integer> group : groups.entrySet()) {
+			logger.debug(
+					"{} files from FileStore \"{}\" to \"{}\" ({}).",
+					group.getValue(),
+					group.getKey(),
+					destinationStore,
+					group.getKey().equals(destinationStore) ? "rename" : "copy"
+			);
+		}
+		return crossStore;
+	}
+
+	private static FileStore resolveFileStore(Path path) {
+		try {
+			return Files.getFileStore(path);
+		} catch (IOException e) {
+			logger.warn("Could not resolve the FileStore of \"{}\"; its files will be moved atomically where possible ({}).", path, e.toString());
+			return null;
+		}
+	}
+
+	private void ioNonAtomicMoveRunner(RelocationPlan plan, File destinationDir) {
+		logger.info("Starting safe move operation into \"{}\" for given media queue.", destinationDir);
+		runForEachEntry(plan.getEntries(), this::relocate);
+	}
+
+	private void ioMetadataRunner(RelocationPlan plan, File destinationDir) {
+		logger.info("Starting {} operation (destination = \"{}\") for given media queue.", selectedOp, selectedOp.usesDestination() ? destinationDir : "none");
+		runForEachEntry(plan.getEntries(), this::relocate);
+	}
 
-				newFilePath = mediaObj.generateCustomPathStructure(destinationDir.toPath());
+	/**
+	 * Generates the target path of the given Media object for the selected operation: its custom path structure under the destination directory,
+	 * or, for {@link FileOperation#RENAME_IN_PLACE}, its custom name in the directory it already is in.
+	 *
+	 * @param mediaObj the media to generate the target path of.
+	 *
+	 * @return the absolute, normalized target path.
+	 */
+	private Path generateTarget(Media mediaObj) {
+		if (selectedOp.usesDestination()) return mediaObj.generateCustomPathStructure(destinationDir.toPath()).normalize();
+		return mediaObj.getFile().toPath().toAbsolutePath().normalize().resolveSibling(mediaObj.getCustomFilename().trim() + mediaObj.getExt());
+	}
 
-				wrapper = new MediaIOWrapper(mediaObj, mediaObj.getFile().toPath(), newFilePath);
+	/**
+	 * Applies the given per-file operation to every given entry and stores the resulting wrappers in the same order. When this instance was given
+	 * more than one worker, the files are handed to a fixed thread pool; otherwise, they are processed one at a time on the calling thread.
+	 *
+	 * @param entries   the entries of the relocation plan to process.
+	 * @param operation the per-file operation; it must never throw for an expected IO failure.
+	 */
+	private void runForEachEntry(List<RelocationPlan.Entry> entries, Function<RelocationPlan.Entry, MediaIOWrapper> operation) {
+		if (workerCount < 2) {
+			for (RelocationPlan.Entry entry : entries) {
+				results.add(operation.apply(entry));
+			}
+			return;
+		}
 
+		logger.debug("Relocating media queue with {} workers.", workerCount);
+		ExecutorService pool = Executors.newFixedThreadPool(workerCount, new WorkerThreadFactory("relocation-worker"));
+		List<Future<MediaIOWrapper>> pending = new ArrayList<>();
+		try {
+			for (RelocationPlan.Entry entry : entries) {
+				pending.add(pool.submit(() -> operation.apply(entry)));
+			}
+			for (Future<MediaIOWrapper> future : pending) {
 				try {
-					File tmp;
-
-					/*
-					 * Every call to a java.nio.Files method that involves a target directory must also include a Files.createDirectories() for the
-					 * target's parent path to avoid a NoSuchFileException
-					 */
-					{
-						Files.createDirectories(wrapper.to.getParent());
-						logger.trace("Created/verified directories exist at \"{}\".", wrapper.to.getParent());
-
-						wrapper.setOperationSuccess((tmp = Files.move(wrapper.from.toAbsolutePath(), wrapper.to, ATOMIC_MOVE).toFile()).exists());
-						logger.trace("'Java NIO Atomic Move' file operation returned 'success = {}'", wrapper.didOperationSucceed());
-					}
-
-					if (wrapper.didOperationSucceed() && tmp.isFile()) {
-						wrapper.media.setFile(tmp);
-						logger.info("Successfully moved \"{}\" to \"{}\".", wrapper.media.getCustomFilename(), wrapper.to);
-					}
-
-				} catch (NoSuchFileException e) {
-					wrapper.setOperationSuccess(false);
-
-					logger.error("Java NIO reports a {}.", e.toString());
-					logger.error(e.toString());
-
-					e.printStackTrace();
-				} catch (AtomicMoveNotSupportedException e) {
-					wrapper.setOperationSuccess(false);
-
-					logger.warn(
-							"Could not move file atomically with Java NIO implementation (not supported). It is likely that the source and target destinations are in different FileStores.");
-					logger.warn("Attempting \"safe\" non-atomic move w/ checksum validation.");
-					safeNonAtomicMove(wrapper, newFilePath);
-				} catch (IOException e) {
-					wrapper.setOperationSuccess(false);
-
-					logger.error(
-							"An IO exception was thrown while attempting to move a {} file from \"{}\" to \"{}\".",
-							wrapper.media.getType(),
-							wrapper.media.getFile().getAbsolutePath(),
-							wrapper.to
-					);
-					logger.error(e.toString());
-					e.printStackTrace();
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					logger.error("A relocation worker failed unexpectedly.");
+					logger.error(e.getCause().toString());
+					logger.debug("Stack trace of the exception above:", e.getCause());
+				}
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while waiting for relocation workers; cancelling the remaining files.");
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Runs the full per-file sequence (plan, transfer, verify) of the selected operation on a single Media object.
+	 *
+	 * @param mediaObj the media to relocate.
+	 *
+	 * @return the wrapper that holds the outcome of the operation.
+	 */
+	MediaIOWrapper relocate(Media mediaObj) {
+		MediaIOWrapper wrapper = plan(mediaObj);
+		try {
+			transfer(wrapper);
+			verify(wrapper);
+		} finally {
+			release(wrapper);
+		}
+		return wrapper;
+	}
+
+	/**
+	 * Gives up the target that {@link #plan(Media)} claimed for the wrapper, once its relocation is over. A long-running caller (e.g. the watch
+	 * daemon) may relocate another file to the same target later, e.g. a file that was downloaded again.
+	 *
+	 * @param wrapper the wrapper whose relocation is over.
+	 */
+	void release(MediaIOWrapper wrapper) {
+		if (wrapper.claimed) {
+			wrapper.claimed = false;
+			claimedTargets.remove(wrapper.to);
+		}
+	}
+
+	/**
+	 * Runs the transfer and verification of the selected operation on a single entry of the relocation plan, whose target was claimed and whose
+	 * directories were created when the plan was made. Entries with a conflict are not transferred.
+	 *
+	 * @param entry the planned relocation.
+	 *
+	 * @return the wrapper that holds the outcome of the operation.
+	 */
+	MediaIOWrapper relocate(RelocationPlan.Entry entry) {
+		MediaIOWrapper wrapper = new MediaIOWrapper(entry.getMedia(), entry.getSource(), entry.getTarget(), checksumCache);
+		wrapper.crossStore = crossStoreEntries.contains(entry);
+		DuplicateDetector.Duplicate duplicate = duplicates.get(entry);
+		if (duplicate != null && duplicateAction != DuplicateAction.REPORT) {
+			wrapper.setOperationSuccess(false);
+			if (duplicateAction == DuplicateAction.HARDLINK && entry.isRelocatable()) {
+				/* The kept file may be relocated by another worker, so the link is made once every file has been relocated */
+				wrapper.duplicate = duplicate;
+				pendingLinks.add(wrapper);
+			} else {
+				logger.debug("Skipping \"{}\", a duplicate of \"{}\".", wrapper.from, duplicate.getOriginal());
+				EventLog.record(EventLog.Type.SKIPPED, wrapper.from, wrapper.to, -1, "duplicate of " + duplicate.getOriginal());
+			}
+			return wrapper;
+		}
+		switch (entry.getConflict()) {
+			case NONE:
+				wrapper.planned = true;
+				if (journal != null && (selectedOp == FileOperation.COPY_FILE_AND_DELETE_SRC || wrapper.crossStore) && journal.find(wrapper.from, wrapper.to) == null) {
+					journal.record(wrapper.from, wrapper.to, TransferJournal.State.PLANNED, 0);
 				}
+				EventLog.record(EventLog.Type.PLANNED, wrapper.from, wrapper.to, -1, null);
+				break;
+			case ALREADY_IN_PLACE:
+				wrapper.setOperationSuccess(true);
+				EventLog.record(EventLog.Type.SKIPPED, wrapper.from, wrapper.to, -1, entry.describeConflict());
+				return wrapper;
+			default:
+				wrapper.setOperationSuccess(false);
+				EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, -1, entry.describeConflict());
+				return wrapper;
+		}
+		transfer(wrapper);
+		verify(wrapper);
+		return wrapper;
+	}
 
+	/**
+	 * Creates the target of every duplicate that is to be hard linked as a link to the file it duplicates, now that every kept file is in place, and
+	 * deletes the duplicate's source (unless the selected operation keeps sources). A duplicate is only linked to a file that was in the destination
+	 * before the run, or whose relocation during this run succeeded; a duplicate of a file whose relocation failed is relocated like any other file
+	 * instead, since the kept file's target may be a partial or corrupt copy. A duplicate that cannot be linked is left where it is.
+	 */
+	private void linkPendingDuplicates() {
+		Map<Media, MediaIOWrapper> outcomes = new IdentityHashMap<>();
+		for (MediaIOWrapper result : results) {
+			outcomes.put(result.media, result);
+		}
+		for (MediaIOWrapper wrapper; (wrapper = pendingLinks.poll()) != null; ) {
+			long start = System.nanoTime();
+			Path original = wrapper.duplicate.getOriginalTarget();
+			RelocationPlan.Entry originalEntry = wrapper.duplicate.getOriginalEntry();
+			MediaIOWrapper kept = originalEntry != null ? outcomes.get(originalEntry.getMedia()) : null;
+			if (originalEntry != null && (kept == null || !kept.didOperationSucceed())) {
+				logger.warn("Kept file \"{}\" of duplicate \"{}\" was not relocated; the duplicate is relocated on its own.", originalEntry.getSource(), wrapper.from);
+				wrapper.duplicate = null;
+				wrapper.planned = true;
+				if (journal != null && (selectedOp == FileOperation.COPY_FILE_AND_DELETE_SRC || wrapper.crossStore) && journal.find(wrapper.from, wrapper.to) == null) {
+					journal.record(wrapper.from, wrapper.to, TransferJournal.State.PLANNED, 0);
+				}
+				EventLog.record(EventLog.Type.PLANNED, wrapper.from, wrapper.to, -1, "kept file " + originalEntry.getSource() + " was not relocated");
+				transfer(wrapper);
+				verify(wrapper);
+				continue;
 			}
+			if (!Files.isRegularFile(original)) {
+				logger.warn("Kept copy \"{}\" of duplicate \"{}\" is missing; the duplicate is left where it is.", original, wrapper.from);
+				EventLog.record(EventLog.Type.SKIPPED, wrapper.from, wrapper.to, -1, "kept copy " + original + " is missing");
+				continue;
+			}
+			try {
+				Files.createLink(wrapper.to, original);
+				logger.debug("Linked duplicate \"{}\" to \"{}\" at \"{}\".", wrapper.from, original, wrapper.to);
+				if (selectedOp.keepsSource()) {
+					wrapper.setOperationSuccess(true);
+					EventLog.record(EventLog.Type.LINKED, wrapper.from, wrapper.to, System.nanoTime() - start, "hard link to " + original);
+					continue;
+				}
+				removeSourceFilePostMove(wrapper);
+				if (wrapper.didOperationSucceed()) {
+					wrapper.media.setFile(wrapper.to.toFile());
+					EventLog.record(EventLog.Type.MOVED, wrapper.from, wrapper.to, System.nanoTime() - start, "hard link to " + original);
+				}
+			} catch (IOException | UnsupportedOperationException e) {
+				logger.warn("Could not link duplicate \"{}\" to \"{}\"; the duplicate is left where it is ({}).", wrapper.from, original, e.toString());
+				EventLog.record(EventLog.Type.SKIPPED, wrapper.from, wrapper.to, System.nanoTime() - start, "could not link: " + e);
+			}
+		}
+	}
 
+	/**
+	 * Generates the target path of the given Media object, claims it for this batch and makes sure its parent directories exist.
+	 *
+	 * @param mediaObj the media to plan the relocation of.
+	 *
+	 * @return the wrapper of the planned relocation; it will not be transferred if planning failed.
+	 */
+	MediaIOWrapper plan(Media mediaObj) {
+		logger.trace("Processing {} object \"{}\".", mediaObj.getClass().getName(), mediaObj.getCustomFilename());
+
+		long start = System.nanoTime();
+		Path newFilePath = generateTarget(mediaObj);
+		MediaIOWrapper wrapper = new MediaIOWrapper(mediaObj, mediaObj.getFile().toPath(), newFilePath, checksumCache);
+		if (!claimTarget(wrapper)) {
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, "target already claimed");
+			return wrapper;
 		}
 
+		/*
+		 * Every call to a java.nio.Files method that involves a target directory must also include a Files.createDirectories() for the
+		 * target's parent path to avoid a NoSuchFileException
+		 */
+		try {
+			createTargetDirectories(wrapper.to.getParent());
+			wrapper.planned = true;
+			if (journal != null && selectedOp == FileOperation.COPY_FILE_AND_DELETE_SRC && journal.find(wrapper.from, wrapper.to) == null) {
+				journal.record(wrapper.from, wrapper.to, TransferJournal.State.PLANNED, 0);
+			}
+			EventLog.record(EventLog.Type.PLANNED, wrapper.from, wrapper.to, System.nanoTime() - start, null);
+		} catch (IOException e) {
+			logger.error("An IO exception was thrown while attempting to create the target directory \"{}\".", wrapper.to.getParent());
+			logger.error(e.toString());
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
+		}
+		return wrapper;
 	}
-	private void ioNonAtomicMoveRunner(MediaQueue mQ, File destinationDir) {
-		MediaIOWrapper wrapper;
 
-		logger.info("Starting safe move operation into \"{}\" for given media queue.", destinationDir);
-		for (MediaQueue.MediaList mediaList : mQ) {
-			logger.trace("Processing Media objects within media list \"{}\".", mediaList.toString());
-			for (Media mediaObj : mediaList) {
-				Path newFilePath;
-				logger.trace("Processing {} object \"{}\".", mediaObj.getClass().getName(), mediaObj.getCustomFilename());
+	/**
+	 * Moves or copies the file of a planned wrapper into its target path, depending on the selected operation. Copied files are left for
+	 * {@link #verify(MediaIOWrapper)} to validate before the source is removed.
+	 *
+	 * @param wrapper the planned wrapper.
+	 */
+	void transfer(MediaIOWrapper wrapper) {
+		if (!wrapper.planned) return;
 
-				newFilePath = mediaObj.generateCustomPathStructure(destinationDir.toPath());
+		switch (selectedOp) {
+			case MOVE_FILE_ATOMICALLY:
+				/* Files that are known to be on another FileStore skip the atomic move that would fail for each of them */
+				if (wrapper.crossStore) safeNonAtomicMove(wrapper);
+				else atomicMove(wrapper);
+				break;
+			case COPY_FILE_AND_DELETE_SRC:
+				safeNonAtomicMove(wrapper);
+				break;
+			case HARDLINK:
+			case SYMLINK:
+			case RENAME_IN_PLACE:
+				metadataOperation(wrapper);
+				break;
+			default:
+				logger.error("Operation {} not implemented!", selectedOp);
+		}
+	}
 
-				wrapper = new MediaIOWrapper(mediaObj, mediaObj.getFile().toPath(), newFilePath);
-				try {
-					File tmp;
-					{
-						Files.createDirectories(wrapper.to.getParent());
-						logger.trace("Created/verified directories exist at \"{}\".", wrapper.to.getParent());
-
-						wrapper.setOperationSuccess((tmp = 					safeNonAtomicMove(wrapper, wrapper.to)).exists());
-					}
-
-
-					if (wrapper.didOperationSucceed() && tmp.isFile()) {
-						wrapper.media.setFile(tmp);
-						logger.info("Successfully moved \"{}\" to \"{}\".", wrapper.media.getCustomFilename(), wrapper.to);
-					} else {
-						logger.error("Copy-paste-delete operation was not fully successful.");
-					}
-				} catch (IOException e) {
-					wrapper.setOperationSuccess(false);
-
-					logger.error(
-							"An IO exception was thrown while attempting to move a {} file from \"{}\" to \"{}\".",
-							wrapper.media.getType(),
-							wrapper.media.getFile().getAbsolutePath(),
-							wrapper.to
-					);
-					logger.error(e.toString());
-					e.printStackTrace();
-				}
+	/**
+	 * Links or renames the file of a planned wrapper with a single file system call; no data is read or written. Links leave the source file (and
+	 * the Media object) where they are.
+	 *
+	 * @param wrapper the planned wrapper.
+	 */
+	private void metadataOperation(MediaIOWrapper wrapper) {
+		long start = System.nanoTime();
+		try {
+			switch (selectedOp) {
+				case HARDLINK:
+					Files.createLink(wrapper.to, wrapper.from);
+					break;
+				case SYMLINK:
+					Files.createSymbolicLink(wrapper.to, wrapper.from.toAbsolutePath());
+					break;
+				case RENAME_IN_PLACE:
+					/* Without ATOMIC_MOVE, an existing target is never replaced */
+					wrapper.media.setFile(Files.move(wrapper.from, wrapper.to).toFile());
+					break;
+				default:
+					logger.error("Operation {} is not a metadata operation!", selectedOp);
+					return;
+			}
+			wrapper.setOperationSuccess(true);
+			logger.debug("Successfully applied {} to \"{}\" (from = \"{}\", to = \"{}\").", selectedOp, wrapper.media.getCustomFilename(), wrapper.from, wrapper.to);
+			EventLog.record(
+					selectedOp.keepsSource() ? EventLog.Type.LINKED : EventLog.Type.MOVED,
+					wrapper.from,
+					wrapper.to,
+					System.nanoTime() - start,
+					selectedOp.toString()
+			);
+		} catch (FileAlreadyExistsException e) {
+			wrapper.setOperationSuccess(false);
+			logger.error("{} failed; there is already a file in the target destination (target = {}).", selectedOp, wrapper.to);
+			logger.error(e.toString());
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
+		} catch (IOException | UnsupportedOperationException e) {
+			wrapper.setOperationSuccess(false);
+			logger.error(
+					"An exception was thrown while attempting to apply {} to a {} file from \"{}\" to \"{}\".",
+					selectedOp,
+					wrapper.media.getType(),
+					wrapper.from,
+					wrapper.to
+			);
+			logger.error(e.toString());
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
+		}
+	}
+
+	/**
+	 * Validates the copy made by {@link #transfer(MediaIOWrapper)}, if any, according to the verification policy and deletes the source file once
+	 * the copy is known to be intact.
+	 * <p>
+	 * A copy that fails validation is deleted and its journal entry is reset, so that the next run copies the file again from the start rather
+	 * than validating the same corrupt copy over and over.
+	 *
+	 * @param wrapper the transferred wrapper.
+	 */
+	void verify(MediaIOWrapper wrapper) {
+		if (!wrapper.copied) return;
+
+		long start = System.nanoTime();
+		if (wrapper.validate(verificationPolicy, transferScheduler.getVerificationLimiter())) {
+			EventLog.record(EventLog.Type.VERIFIED, wrapper.from, wrapper.to, System.nanoTime() - start, verificationPolicy.toString());
+			if (journal != null) journal.record(wrapper.from, wrapper.to, TransferJournal.State.VERIFIED, 0);
+			wrapper.media.setFile(wrapper.to.toFile());
+			logger.debug("Copied \"{}\" to {}.", wrapper.media.getCustomFilename(), wrapper.to);
+			logger.debug(
+					"Successfully copied \"{}\" over to destination; deleting original file (at = \"{}\").",
+					wrapper.media.getCustomFilename(),
+					wrapper.from
+			);
 
+			removeSourceFilePostMove(wrapper);
+			if (journal != null && wrapper.didOperationSucceed()) {
+				journal.record(wrapper.from, wrapper.to, TransferJournal.State.SOURCE_DELETED, 0);
 			}
+		} else {
+			discardCopy(wrapper);
+		}
+
+		if (wrapper.didOperationSucceed()) {
+			logger.debug("Successfully moved \"{}\" to \"{}\".", wrapper.media.getCustomFilename(), wrapper.to);
+			EventLog.record(EventLog.Type.MOVED, wrapper.from, wrapper.to, System.nanoTime() - start, "copied and source deleted");
+		} else {
+			logger.error("Copy-paste-delete operation was not fully successful.");
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, "copy could not be verified or source not deleted");
+		}
+	}
+
+	/**
+	 * Deletes a copy that failed validation and resets its journal entry to {@link TransferJournal.State#PLANNED}. The source is left untouched.
+	 */
+	private void discardCopy(MediaIOWrapper wrapper) {
+		try {
+			Files.deleteIfExists(wrapper.to);
+			logger.warn("Deleted the copy at \"{}\" because it failed validation; the source \"{}\" is kept.", wrapper.to, wrapper.from);
+			if (journal != null) journal.record(wrapper.from, wrapper.to, TransferJournal.State.PLANNED, 0);
+		} catch (IOException e) {
+			logger.error("An IO exception was thrown while attempting to delete the invalid copy at \"{}\".", wrapper.to);
+			logger.error(e.toString());
+			logger.debug("Stack trace of the exception above:", e);
+		}
+	}
+
+	private void atomicMove(MediaIOWrapper wrapper) {
+		long start = System.nanoTime();
+		try {
+			/* An atomic move either completes or throws, so the target does not need to be checked afterwards */
+			Path moved = Files.move(wrapper.from.toAbsolutePath(), wrapper.to, ATOMIC_MOVE);
+			wrapper.setOperationSuccess(true);
+			logger.trace("'Java NIO Atomic Move' file operation returned 'success = {}'", wrapper.didOperationSucceed());
+
+			wrapper.media.setFile(moved.toFile());
+			logger.debug("Successfully moved \"{}\" to \"{}\".", wrapper.media.getCustomFilename(), wrapper.to);
+			EventLog.record(EventLog.Type.MOVED, wrapper.from, wrapper.to, System.nanoTime() - start, null);
+
+		} catch (NoSuchFileException e) {
+			wrapper.setOperationSuccess(false);
 
+			logger.error("Java NIO reports a {}.", e.toString());
+			logger.error(e.toString());
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
+		} catch (AtomicMoveNotSupportedException e) {
+			wrapper.setOperationSuccess(false);
+
+			logger.warn(
+					"Could not move file atomically with Java NIO implementation (not supported). It is likely that the source and target destinations are in different FileStores.");
+			logger.warn("Attempting \"safe\" non-atomic move w/ checksum validation.");
+			safeNonAtomicMove(wrapper);
+		} catch (IOException e) {
+			wrapper.setOperationSuccess(false);
+
+			logger.error(
+					"An IO exception was thrown while attempting to move a {} file from \"{}\" to \"{}\".",
+					wrapper.media.getType(),
+					wrapper.media.getFile().getAbsolutePath(),
+					wrapper.to
+			);
+			logger.error(e.toString());
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
 		}
+	}
+
+	/**
+	 * Reserves the wrapper's target path until its relocation is over. Two Media objects that generate the same target path would otherwise race
+	 * each other into the same file when relocated concurrently; only the first one to claim the path is relocated.
+	 *
+	 * @param wrapper the MediaIOWrapper whose target path is claimed.
+	 *
+	 * @return true if the target was not claimed by another file of this batch, false otherwise.
+	 */
+	private boolean claimTarget(MediaIOWrapper wrapper) {
+		if (claimedTargets.add(wrapper.to)) {
+			wrapper.claimed = true;
+			return true;
+		}
+
+		logger.error(
+				"Another file in this batch is already being relocated to \"{}\"; skipping \"{}\".",
+				wrapper.to,
+				wrapper.from
+		);
+		wrapper.setOperationSuccess(false);
+		return false;
+	}
 
+	/**
+	 * Creates the given directory (and its parents) if it does not exist. This is checked for every file rather than remembered, since a
+	 * long-running caller may see a directory deleted between two files; concurrent workers that create the same directory do not fail.
+	 *
+	 * @param dir the directory that must exist before a file is relocated into it.
+	 *
+	 * @throws IOException if the directories could not be created.
+	 */
+	private static void createTargetDirectories(Path dir) throws IOException {
+		Files.createDirectories(dir);
+		logger.trace("Created/verified directories exist at \"{}\".", dir);
 	}
 
-	private File safeNonAtomicMove(MediaIOWrapper wrapper, Path newFilePath) {
+	private void safeNonAtomicMove(MediaIOWrapper wrapper) {
 		logger.debug(
 				"Attempting safe move operation on {} object {} (from = \"{}\", to = \"{}\").",
 				wrapper.media.getClass().getSimpleName(),
@@ -156,33 +761,32 @@ public class Operations {
 				wrapper.from,
 				wrapper.to
 		);
+		long start = System.nanoTime();
 		try {
-
-			if (copyMedia(wrapper)) {
-				wrapper.media.setFile(newFilePath.toFile());
-				logger.debug(
-						"Successfully copied \"{}\" over to destination; deleting original file (at = \"{}\").",
-						wrapper.media.getCustomFilename(),
-						wrapper.from
-				);
-
-				removeSourceFilePostMove(wrapper);
-			}
-			return wrapper.to.toFile();
+			wrapper.copied = copyMedia(wrapper);
+			EventLog.record(
+					wrapper.copied ? EventLog.Type.COPIED : EventLog.Type.FAILED,
+					wrapper.from,
+					wrapper.to,
+					System.nanoTime() - start,
+					wrapper.copied ? null : "copy produced no file"
+			);
 		} catch (FileAlreadyExistsException e) {
 			logger.error(
 					"Media copy operation failed; there is already a file in the target destination (target = {}).",
 					wrapper.to.toAbsolutePath()
 			);
 			logger.error(e.toString());
-			e.printStackTrace();
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
 		} catch (SecurityException e) {
 			logger.error(
 					"Media copy operation failed; the operation was interrupted by the security manager (target = {}).",
 					wrapper.to.toAbsolutePath()
 			);
 			logger.error(e.toString());
-			e.printStackTrace();
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
 		} catch (IOException e) {
 			logger.error(
 					"An IO exception was thrown while attempting to copy a {} file from \"{}\" to \"{}\".",
@@ -191,49 +795,156 @@ public class Operations {
 					wrapper.to
 			);
 			logger.error(e.toString());
-			e.printStackTrace();
+			logger.debug("Stack trace of the exception above:", e);
+			EventLog.record(EventLog.Type.FAILED, wrapper.from, wrapper.to, System.nanoTime() - start, e.toString());
 		}
-		return new File("");
 	}
 
 	/**
-	 * Initiates a copy operation using the Java NIO package's Files class. Using the MediaIOWrapper class, it will validate a checksum for the
-	 * operation; if the destination file was successfully copied and has an equivalent checksum, the method returns true.
-	 * <p></p>
-	 * When either of the above are false, the method returns false. The method will not attempt to delete the erroneously copied file in such cases.
+	 * Copies the media's file into the target path with the {@link TransferEngine}. Under {@link VerificationPolicy#FULL_HASH}, the checksum of the
+	 * source is computed while it is copied, so that the source is only read once; every other policy copies with FileChannel.transferTo. Under
+	 * {@link VerificationPolicy#SIZE_AND_MTIME}, the copy also inherits the source's last modified time as it was read before the copy started.
+	 * The size and modified time read then are kept for the validation. The copy is not validated here;
+	 * {@link #verify(MediaIOWrapper)} does so before the source is deleted.
+	 * <p>
+	 * When a transfer journal is set, the copy checkpoints its durable offset in it, and a copy that the journal knows about is resumed (or
+	 * skipped) instead of started over. An interrupted copy is only resumed if its source still has the size and modified time it had when the
+	 * copy started; otherwise, it is copied again from the start.
 	 *
 	 * @param wrapper the MediaIOWrapper that encapsulates the Media to be moved.
 	 *
-	 * @return true if copy operation (and checksum validation) succeeded, false otherwise.
+	 * @return true if the copy operation produced a file at the target path, false otherwise.
 	 */
 	private boolean copyMedia(MediaIOWrapper wrapper) throws IOException {
-		logger.info(
+		logger.debug(
 				"Copying {} file from \"{}\" to \"{}\".",
 				wrapper.media.getType(),
 				wrapper.media.getFile().getAbsolutePath(),
 				wrapper.to
 		);
-		if (wrapper.to.toFile().exists()) {
+		Path source = wrapper.media.getFile().toPath(), target = wrapper.to.toAbsolutePath();
+		TransferJournal.Entry entry = journal == null ? null : journal.find(source, target);
+		if (entry != null && entry.getState().compareTo(TransferJournal.State.COPYING) > 0) {
+			return resumeCompletedCopy(wrapper, entry);
+		}
+		BasicFileAttributes sourceAttributes = Files.readAttributes(source, BasicFileAttributes.class);
+		wrapper.expectSource(sourceAttributes.size(), sourceAttributes.lastModifiedTime());
+		long resumeOffset = -1;
+		if (entry != null && entry.getState() == TransferJournal.State.COPYING) {
+			if (entry.matches(sourceAttributes)) {
+				logger.debug("Resuming interrupted copy of \"{}\" at byte {}.", wrapper.media.getCustomFilename(), entry.getOffset());
+				resumeOffset = entry.getOffset();
+			} else {
+				/* The bytes copied so far may be from an older version of the source */
+				logger.warn("\"{}\" changed since its copy was interrupted; copying it again from the start.", source);
+				resumeOffset = 0;
+			}
+		} else if (wrapper.to.toFile().exists()) {
 			logger.warn("File already exists at \"{}\"; copy operation may fail.", wrapper.to
 			);
 		}
-
-		if (wrapper.to.getParent().toFile().exists()) {
-			Files.createDirectories(wrapper.to.getParent());
-			logger.trace("Created/verified directories \"{}\".", wrapper.to.getParent());
-		}
+		if (journal != null && resumeOffset <= 0) journal.recordStart(source, target, sourceAttributes);
 
 		logger.debug("Initiating file copy (media = {}, to = {}).", wrapper.media.getCustomFilename(), wrapper.to);
-		Path target = Files.copy(wrapper.media.getFile().toPath(), wrapper.to.toAbsolutePath());
-		if (target.toFile().exists() && wrapper.validateChecksum()) {
-			wrapper.media.setFile(target.toFile());
-			logger.info("Copied \"{}\" to {}.", wrapper.media.getCustomFilename(), wrapper.to);
+		TransferEngine.ProgressListener checkpoint = null;
+		if (journal != null) {
+			checkpoint = (src, transferred, total) -> journal.record(source, target, TransferJournal.State.COPYING, transferred);
+		}
+		try (TransferScheduler.Permit permit = transferScheduler.acquire(target)) {
+			copyWithPolicy(wrapper, source, target, resumeOffset, checkpoint);
+			permit.setBytesTransferred(Files.size(target) - Math.max(0, resumeOffset));
+		}
+		if (target.toFile().exists()) {
+			if (journal != null) journal.record(source, target, TransferJournal.State.COPIED, Files.size(target));
 			return true;
 		}
+
 		logger.error("Failed to copy file (media = {}, to = {}).", wrapper.media.getCustomFilename(), wrapper.to);
+		return false;
+	}
 
+	private void copyWithPolicy(MediaIOWrapper wrapper, Path source, Path target, long resumeOffset, TransferEngine.ProgressListener checkpoint)
+			throws IOException {
+		switch (verificationPolicy) {
+			case FULL_HASH:
+				String cached = checksumCache == null ? null : checksumCache.get(source, Checksum.getAlgorithm());
+				if (cached != null) {
+					/* The source does not need to be hashed again, so the copy can skip user space entirely */
+					wrapper.checksum = cached;
+					copyOrResume(source, target, resumeOffset, checkpoint);
+				} else {
+					BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+					wrapper.checksum = resumeOffset < 0
+					                   ? transferEngine.copyWithChecksum(source, target, checkpoint)
+					                   : transferEngine.resumeWithChecksum(source, target, resumeOffset, checkpoint);
+					if (checksumCache != null) checksumCache.put(source, attributes, Checksum.getAlgorithm(), wrapper.checksum);
+				}
+				break;
+			case SIZE_AND_MTIME:
+				copyOrResume(source, target, resumeOffset, checkpoint);
+				Files.setLastModifiedTime(target, wrapper.expectedModified);
+				break;
+			default:
+				copyOrResume(source, target, resumeOffset, checkpoint);
+		}
+	}
 
-		return false;
+	private void copyOrResume(Path source, Path target, long resumeOffset, TransferEngine.ProgressListener checkpoint) throws IOException {
+		if (resumeOffset < 0) {
+			transferEngine.copy(source, target, checkpoint);
+		} else {
+			transferEngine.resume(source, target, resumeOffset, checkpoint);
+		}
+	}
+
+	/**
+	 * Picks up a file that an earlier run had already copied, according to its journal entry: a copy that was not verified yet goes on to
+	 * {@link #verify(MediaIOWrapper)}, while a file whose source is already gone is considered relocated.
+	 *
+	 * @return true if the copy still needs to be verified, false otherwise.
+	 */
+	private boolean resumeCompletedCopy(MediaIOWrapper wrapper, TransferJournal.Entry entry) {
+		logger.debug(
+				"\"{}\" was already copied by an earlier run (state = {}); it will not be copied again.",
+				wrapper.media.getCustomFilename(),
+				entry.getState()
+		);
+		if (entry.getState() == TransferJournal.State.SOURCE_DELETED) {
+			wrapper.media.setFile(wrapper.to.toFile());
+			wrapper.setOperationSuccess(true);
+			return false;
+		}
+		wrapper.expectSource(entry.getSourceSize(), entry.getSourceModified());
+		return true;
+	}
+
+	/**
+	 * Deletes the sources of the files that an earlier run copied and verified but did not get to delete, as recorded by the transfer journal.
+	 * A source is never deleted if its copy is missing.
+	 */
+	void finishPendingDeletes() {
+		if (journal == null) return;
+
+		for (TransferJournal.Entry entry : journal.getPendingDeletes()) {
+			if (!Files.isRegularFile(entry.getTarget())) {
+				logger.warn(
+						"Verified copy \"{}\" of \"{}\" is missing; its source will not be deleted.",
+						entry.getTarget(),
+						entry.getSource()
+				);
+				continue;
+			}
+			try {
+				if (Files.deleteIfExists(entry.getSource())) {
+					logger.debug("Deleted \"{}\", which was verified at \"{}\" by an earlier run.", entry.getSource(), entry.getTarget());
+				}
+				journal.record(entry.getSource(), entry.getTarget(), TransferJournal.State.SOURCE_DELETED, entry.getOffset());
+			} catch (IOException e) {
+				logger.error("An IO exception was thrown while finishing the pending delete of \"{}\".", entry.getSource());
+				logger.error(e.toString());
+				logger.debug("Stack trace of the exception above:", e);
+			}
+		}
 	}
 
 	private static void removeSourceFilePostMove(MediaIOWrapper wrapper) {
@@ -260,70 +971,201 @@ public class Operations {
 					wrapper.from
 			);
 			logger.warn(e.toString());
-			e.printStackTrace();
+			logger.debug("Stack trace of the exception above:", e);
 		} catch (IOException e) {
 			logger.error(
 					"An IO exception was thrown while attempting to delete the original file from an organized move operation (orig. = \"{}\").",
 					wrapper.from
 			);
 			logger.error(e.toString());
-			e.printStackTrace();
+			logger.debug("Stack trace of the exception above:", e);
 		}
 	}
 
 
-	private static class MediaIOWrapper {
+	/**
+	 * Encapsulates a Media object for the duration of a file operation, along with where it was moved from and to and whether the operation
+	 * succeeded.
+	 */
+	public static class MediaIOWrapper {
 		private final Media media;
 		private final Path from, to;
+		private final ChecksumCache cache;
 		String checksum;
 		private boolean operationSuccess;
+		private boolean planned, copied, crossStore, claimed;
+		private long expectedSize = -1;
+		private FileTime expectedModified;
+		private DuplicateDetector.Duplicate duplicate;
 
-		public MediaIOWrapper(Media media, Path from, Path to) {
+		private MediaIOWrapper(Media media, Path from, Path to, ChecksumCache cache) {
 
 			this.media = media;
 			this.from = from;
 			this.to = to;
+			this.cache = cache;
 
-			try {
-				logger.trace(
-						"Created new {} instance (media = {}, from = \"{}\", to = \"{}\").",
-						this.getClass().getSimpleName(),
-						media.getCustomFilename(),
-						this.from,
-						this.to
-				);
-				checksum = Checksum.getChecksum(from.toString());
-			} catch (Exception e) {
-				logger.error("Error when calculating checksum for \"{}\".", media.getMediaTitle());
-				e.printStackTrace();
-			}
+			logger.trace(
+					"Created new {} instance (media = {}, from = \"{}\", to = \"{}\").",
+					this.getClass().getSimpleName(),
+					media.getCustomFilename(),
+					this.from,
+					this.to
+			);
 		}
 
-		private boolean validateChecksum() {
-			logger.debug("Validating checksum for media {}.", media.getCustomFilename());
-			if (!this.from.toFile().isFile() || !this.to.toFile().isFile()) {
+		/**
+		 * Records the size and modified time of the source as they were read before it was copied, for the validation of the copy.
+		 */
+		private void expectSource(long size, FileTime modified) {
+			this.expectedSize = size;
+			this.expectedModified = modified;
+		}
+
+		/**
+		 * Verifies the target file against the source with the given policy.
+		 *
+		 * @param policy  the verification policy to apply.
+		 * @param limiter the rate limiter of the files that are read, or null to read at full speed.
+		 *
+		 * @return true if the target is considered an intact copy of the source, false otherwise.
+		 */
+		private boolean validate(VerificationPolicy policy, RateLimiter limiter) {
+			logger.debug("Validating media {} (policy = {}).", media.getCustomFilename(), policy);
+			/* The copy has only just been made, so both files are read again here (once), and the checks below reuse what was read */
+			BasicFileAttributes source, target;
+			try {
+				source = Files.readAttributes(this.from, BasicFileAttributes.class);
+				target = Files.readAttributes(this.to, BasicFileAttributes.class);
+			} catch (IOException e) {
 				logger.warn("Either source or target file does not exist. (source = {}, target = {})", this.from, this.to);
 				return false;
 			}
+			if (!source.isRegularFile() || !target.isRegularFile()) {
+				logger.warn("Either source or target is not a regular file. (source = {}, target = {})", this.from, this.to);
+				return false;
+			}
 
 			try {
-				if (this.checksum.equals(Checksum.getChecksum(this.to.toString()))) {
-					logger.debug("MD5 checksum (MD5 = {}) matches for media {}.", this.checksum, media.getCustomFilename());
-					return true;
-				} else {
-					logger.warn(
-							"MD5 checksum failed for media {}. (expected = {}, actual = {})",
-							media.getCustomFilename(),
-							this.checksum,
-							Checksum.getChecksum(this.to.toString())
-					);
+				switch (policy) {
+					case NONE:
+						return true;
+					case SIZE_AND_MTIME:
+						return validateSizeAndModifiedTime(source, target);
+					case SAMPLED:
+						return validateSampledChecksum(limiter);
+					case FULL_HASH:
+					default:
+						return validateChecksum(limiter);
 				}
-			} catch (Exception e) {
-				e.printStackTrace();
+			} catch (IOException e) {
+				logger.error("An IO exception was thrown while validating media {}.", media.getCustomFilename());
+				logger.error(e.toString());
+				logger.debug("Stack trace of the exception above:", e);
+			}
+			return false;
+		}
+
+		/**
+		 * Checks the copy against the size and modified time the source had before it was copied: the source must still have both (i.e. it did not
+		 * change while it was copied), and the copy must have the same size. The copy's own modified time is not compared, since the copy was given
+		 * the source's.
+		 */
+		private boolean validateSizeAndModifiedTime(BasicFileAttributes source, BasicFileAttributes target) {
+			if (expectedSize < 0 || expectedModified == null) {
+				logger.warn("Source of media {} was not measured before it was copied; the copy cannot be validated.", media.getCustomFilename());
+				return false;
+			}
+			if (source.size() != expectedSize || !source.lastModifiedTime().equals(expectedModified)) {
+				logger.warn(
+						"Source of media {} changed while it was copied. (before = {} B @ {}, after = {} B @ {})",
+						media.getCustomFilename(),
+						expectedSize,
+						expectedModified,
+						source.size(),
+						source.lastModifiedTime()
+				);
+				return false;
+			}
+			if (target.size() != expectedSize) {
+				logger.warn("Size differs for media {}. (expected = {} B, actual = {} B)", media.getCustomFilename(), expectedSize, target.size());
+				return false;
 			}
+			logger.debug("Size matches and source is unchanged for media {}.", media.getCustomFilename());
+			return true;
+		}
+
+		private boolean validateSampledChecksum(RateLimiter limiter) throws IOException {
+			String expected = Checksum.getSampledChecksum(this.from, limiter), actual = Checksum.getSampledChecksum(this.to, limiter);
+			if (expected.equals(actual)) {
+				logger.debug("Sampled checksum ({} = {}) matches for media {}.", Checksum.getAlgorithm(), expected, media.getCustomFilename());
+				return true;
+			}
+			logger.warn("Sampled checksum failed for media {}. (expected = {}, actual = {})", media.getCustomFilename(), expected, actual);
 			return false;
 		}
 
+		/**
+		 * Compares the checksum of the source against a single read of the target file. The source checksum is normally computed while the file is
+		 * copied; it is only computed here if it was not recorded.
+		 *
+		 * @param limiter the rate limiter of the files that are read, or null to read at full speed.
+		 *
+		 * @return true if both checksums match, false otherwise.
+		 */
+		private boolean validateChecksum(RateLimiter limiter) throws IOException {
+			String expected = getSourceChecksum(limiter);
+			String actual = Checksum.getChecksum(this.to, limiter);
+			if (expected.equals(actual)) {
+				logger.debug("{} checksum ({}) matches for media {}.", Checksum.getAlgorithm(), expected, media.getCustomFilename());
+				if (cache != null) cache.put(this.to, Checksum.getAlgorithm(), actual);
+				return true;
+			}
+			logger.warn(
+					"{} checksum failed for media {}. (expected = {}, actual = {})",
+					Checksum.getAlgorithm(),
+					media.getCustomFilename(),
+					expected,
+					actual
+			);
+			return false;
+		}
+
+		/**
+		 * Returns the checksum of the source file. If it was not recorded while copying, it is looked up in the checksum cache and, failing that,
+		 * computed (and cached) on first use.
+		 *
+		 * @param limiter the rate limiter of the source, if it has to be read, or null to read at full speed.
+		 *
+		 * @return the checksum of the source file.
+		 *
+		 * @throws IOException if the source could not be read.
+		 */
+		private String getSourceChecksum(RateLimiter limiter) throws IOException {
+			if (this.checksum == null && cache != null) {
+				this.checksum = cache.get(this.from, Checksum.getAlgorithm());
+			}
+			if (this.checksum == null) {
+				logger.debug("No checksum was recorded for the source of media {}; computing it now.", media.getCustomFilename());
+				BasicFileAttributes attributes = Files.readAttributes(this.from, BasicFileAttributes.class);
+				this.checksum = Checksum.getChecksum(this.from, limiter);
+				if (cache != null) cache.put(this.from, attributes, Checksum.getAlgorithm(), this.checksum);
+			}
+			return this.checksum;
+		}
+
+		public Media getMedia() {
+			return media;
+		}
+
+		public Path getSource() {
+			return from;
+		}
+
+		public Path getTarget() {
+			return to;
+		}
+
 		public boolean didOperationSucceed() {
 			return operationSuccess;
 		}
@@ -332,4 +1174,23 @@ public class Operations {
 			this.operationSuccess = operationSuccess;
 		}
 	}
+
+	/**
+	 * Names the threads of a worker pool so that their log lines can be told apart.
+	 */
+	static class WorkerThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		WorkerThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + "-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
 }
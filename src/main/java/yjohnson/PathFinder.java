@@ -1 +1 @@
-package yjohnson;import org.slf4j.Logger;import org.slf4j.LoggerFactory;import java.io.File;import java.io.IOException;import java.nio.file.Files;import java.nio.file.Path;import java.util.LinkedList;import java.util.List;import java.util.Locale;import java.util.stream.Collectors;import java.util.stream.Stream;/** * PathFinder: Class reserved for file and directory operations. */public class PathFinder {	private static final Logger logger = LoggerFactory.getLogger(PathFinder.class);	/**	 * https://github.com/mkyong/core-java	 *	 * @param path          the source to find files in	 * @param fileExtension the file extension you want to filter	 *	 * @return A list that contains all the files that matched the query.	 */	public static List<File> findFiles(Path path, String fileExtension) {		logger.info("Searching for files with extension \"{}\" inside directory \"{}\".", fileExtension, path);		List<File> result;		if (!Files.isDirectory(path)) {			logger.error("Given path is not a directory (path = \"{}\").", path);			return new LinkedList<>();		}		try (Stream<Path> walk = Files.walk(path)) {			result = walk					.filter(p -> !Files.isDirectory(p))					.filter(f -> f.toString().toLowerCase(Locale.ROOT).endsWith(fileExtension))					.map(Path::toFile)					.collect(Collectors.toList());			return result;		} catch (IOException e) {			logger.error("An IOException occurred when finding files with Files.walk() (path = \"{}\").", path);			logger.error(e.toString());			e.printStackTrace();			return new LinkedList<>();		}	}}
\ No newline at end of file
+package yjohnson;import org.slf4j.Logger;import org.slf4j.LoggerFactory;import java.io.File;import java.io.IOException;import java.nio.file.DirectoryStream;import java.nio.file.FileVisitResult;import java.nio.file.Files;import java.nio.file.LinkOption;import java.nio.file.Path;import java.nio.file.SimpleFileVisitor;import java.nio.file.attribute.BasicFileAttributes;import java.util.ArrayList;import java.util.HashMap;import java.util.HashSet;import java.util.LinkedHashMap;import java.util.LinkedList;import java.util.List;import java.util.Locale;import java.util.Map;import java.util.Set;import java.util.concurrent.ForkJoinPool;import java.util.concurrent.RecursiveTask;import java.util.function.BiPredicate;import java.util.stream.Collectors;import java.util.stream.Stream;/** * PathFinder: Class reserved for file and directory operations. */public class PathFinder {	private static final Logger logger = LoggerFactory.getLogger(PathFinder.class);	/**	 * https://github.com/mkyong/core-java	 *	 * @param path          the source to find files in	 * @param fileExtension the file extension you want to filter	 *	 * @return A list that contains all the files that matched the query.	 */	public static List<File> findFiles(Path path, String fileExtension) {		logger.info("Searching for files with extension \"{}\" inside directory \"{}\".", fileExtension, path);		List<File> result;		if (!Files.isDirectory(path)) {			logger.error("Given path is not a directory (path = \"{}\").", path);			return new LinkedList<>();		}		try (Stream<Path> walk = streamFiles(path, fileExtension)) {			result = walk					.map(Path::toFile)					.collect(Collectors.toList());			return result;		} catch (IOException e) {			logger.error("An IOException occurred when finding files with Files.walk() (path = \"{}\").", path);			logger.error(e.toString());			e.printStackTrace();			return new LinkedList<>();		}	}	/**	 * Finds every file that has any of the given extensions in a single walk of the directory, instead of one walk per extension. Each file is	 * matched with a hash set lookup per dot in its name, so the cost of the filter does not grow with the number of extensions.	 *	 * @param path           the source to find files in	 * @param fileExtensions the file extensions you want to filter, each starting with a '.'	 *	 * @return A list that contains all the files that matched the query.	 */	public static List<File> findFiles(Path path, Set<String> fileExtensions) {		List<File> result = new ArrayList<>();		for (Path file : findFileAttributes(path, fileExtensions).keySet()) {			result.add(file.toFile());		}		return result;	}	/**	 * Finds the same files as {@link #findFiles(Path, Set)}, in the same order, along with the attributes that the walk read for each of them.	 * Later checks can look at these instead of asking the file system again; for a symbolic link, they are the attributes of the file it points	 * to.	 *	 * @param path           the source to find files in	 * @param fileExtensions the file extensions you want to filter, each starting with a '.'	 *	 * @return the files that matched the query, in the order they were found, mapped to their attributes.	 */	public static Map<Path, BasicFileAttributes> findFileAttributes(Path path, Set<String> fileExtensions) {		logger.info("Searching for files with extensions {} inside directory \"{}\".", fileExtensions, path);		Map<Path, BasicFileAttributes> result = new LinkedHashMap<>();		if (!Files.isDirectory(path)) {			logger.error("Given path is not a directory (path = \"{}\").", path);			return result;		}		try {			walkFiles(path, fileExtensions, (file, attributes) -> {				result.put(file, attributes);				return true;			});		} catch (IOException e) {			logger.error("An IOException occurred when finding files with Files.walkFileTree() (path = \"{}\").", path);			logger.error(e.toString());			e.printStackTrace();			result.clear();		}		return result;	}	/**	 * Walks the given directory and hands every file that has any of the given extensions to the visitor, along with its attributes, as soon as	 * the walk reaches it. The attributes are the ones the walk reads anyway to tell files from directories, so every entry is only read once;	 * symbolic links are read a second time to find out what they point to. As with Files.walk(), symbolic links to directories are not followed.	 *	 * @param path           the source to find files in	 * @param fileExtensions the file extensions you want to filter, each starting with a '.'	 * @param visitor        called with every file that matches the query and its attributes; the walk stops as soon as it returns false	 *	 * @throws IOException if a directory or file could not be read.	 */	public static void walkFiles(Path path, Set<String> fileExtensions, BiPredicate<Path, BasicFileAttributes> visitor) throws IOException {		Set<String> extensions = normalizeExtensions(fileExtensions);		Files.walkFileTree(path, new SimpleFileVisitor<>() {			@Override			public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {				if (!hasExtension(file, extensions)) return FileVisitResult.CONTINUE;				if (attributes.isSymbolicLink()) {					try {						attributes = Files.readAttributes(file, BasicFileAttributes.class);					} catch (IOException e) {						logger.trace("Symbolic link \"{}\" could not be followed ({}).", file, e.toString());					}					if (attributes.isDirectory()) return FileVisitResult.CONTINUE;				}				EventLog.record(EventLog.Type.SCANNED, file);				return visitor.test(file, attributes) ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;			}		});	}	/**	 * Returns a lower case copy of the given extensions, for use with {@link #hasExtension(Path, Set)}.	 *	 * @param fileExtensions the file extensions, in any case.	 *	 * @return the lower case extensions.	 */	public static Set<String> normalizeExtensions(Set<String> fileExtensions) {		Set<String> extensions = new HashSet<>();		for (String ext : fileExtensions) {			extensions.add(ext.toLowerCase(Locale.ROOT));		}		return extensions;	}	/**	 * Checks whether the name of a file ends with one of the given extensions, ignoring case. Every suffix of the name that starts with a '.' is	 * looked up, so extensions with more than one dot (e.g. ".en.srt") are matched as well.	 *	 * @param file           the file to check.	 * @param fileExtensions the lower case file extensions to look for.	 *	 * @return true if the file has one of the extensions.	 */	public static boolean hasExtension(Path file, Set<String> fileExtensions) {		Path name = file.getFileName();		if (name == null) return false;		String fn = name.toString().toLowerCase(Locale.ROOT);		for (int dot = fn.indexOf('.'); dot >= 0; dot = fn.indexOf('.', dot + 1)) {			if (fileExtensions.contains(fn.substring(dot))) return true;		}		return false;	}	/**	 * Lazily walks the given directory for files with the given extension. Unlike {@link #findFiles(Path, String)}, files are handed to the caller	 * as the walk reaches them, so that consumers can start working before the whole tree has been visited. The returned stream must be closed.	 *	 * @param path          the source to find files in	 * @param fileExtension the file extension you want to filter	 *	 * @return a lazily populated stream of the files that match the query.	 *	 * @throws IOException if the starting directory could not be opened.	 */	public static Stream<Path> streamFiles(Path path, String fileExtension) throws IOException {		return Files.find(				path,				Integer.MAX_VALUE,				(p, attributes) -> p.toString().toLowerCase(Locale.ROOT).endsWith(fileExtension) && !isDirectory(p, attributes)		);	}	/**	 * Finds the same files as {@link #findFileAttributes(Path, Set)}, in the same order and with the same attributes, but lists the subdirectories	 * of each directory in parallel on a work-stealing ForkJoinPool. This pays off where each directory listing is slow, e.g. on network file	 * systems. Directories that cannot be listed are skipped. With a parallelism of 1, the directory is walked sequentially instead.	 *	 * @param path           the source to find files in	 * @param fileExtensions the file extensions you want to filter, each starting with a '.'	 * @param parallelism    the number of directories to list concurrently	 *	 * @return the files that matched the query, in the order they were found, mapped to their attributes.	 */	public static Map<Path, BasicFileAttributes> findFileAttributes(Path path, Set<String> fileExtensions, int parallelism) {		if (parallelism <= 1) return findFileAttributes(path, fileExtensions);		logger.info("Searching for files with extensions {} inside directory \"{}\" (parallelism = {}).", fileExtensions, path, parallelism);		if (!Files.isDirectory(path)) {			logger.error("Given path is not a directory (path = \"{}\").", path);			return new LinkedHashMap<>();		}		return walkInParallel(path, normalizeExtensions(fileExtensions), parallelism, Integer.MAX_VALUE);	}	/**	 * Finds the same files as {@link #findFiles(Path, String)}, in the same order, but lists the subdirectories of each directory in parallel like	 * {@link #findFileAttributes(Path, Set, int)}, and only down to the given depth.	 *	 * @param path          the source to find files in	 * @param fileExtension the file extension you want to filter	 * @param parallelism   the number of directories to list concurrently	 * @param maxDepth      the maximum number of directory levels to descend into, as with Files.walk(Path, int); 1 only searches the given	 *                      directory itself	 *	 * @return A list that contains all the files that matched the query.	 */	public static List<File> findFiles(Path path, String fileExtension, int parallelism, int maxDepth) {		logger.info(				"Searching for files with extension \"{}\" inside directory \"{}\" (parallelism = {}, max depth = {}).",				fileExtension, path, parallelism, maxDepth		);		if (!Files.isDirectory(path)) {			logger.error("Given path is not a directory (path = \"{}\").", path);			return new LinkedList<>();		}		List<File> result = new ArrayList<>();		for (Path p : walkInParallel(path, normalizeExtensions(Set.of(fileExtension)), parallelism, Math.max(0, maxDepth)).keySet()) {			result.add(p.toFile());		}		return result;	}	private static Map<Path, BasicFileAttributes> walkInParallel(Path path, Set<String> extensions, int parallelism, int maxDepth) {		ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));		try {			return pool.invoke(new DirectoryWalk(path, 0, maxDepth, extensions));		} finally {			pool.shutdown();		}	}	/**	 * Tells directories apart from files with the attributes the walk has already read. Only symbolic links are read again, since they count as	 * directories when they point to one.	 */	private static boolean isDirectory(Path path, BasicFileAttributes attributes) {		return attributes.isDirectory() || attributes.isSymbolicLink() && Files.isDirectory(path);	}	/**	 * Lists one directory and forks a task for each of its subdirectories. The results of the subtasks are spliced into the listing where their	 * directories appear, which reproduces the pre-order of Files.walk(). Like Files.walk(), symbolic links to directories are not followed, and	 * a matching symbolic link to a file is reported with the attributes of the file it points to.	 */	private static class DirectoryWalk extends RecursiveTask<Map<Path, BasicFileAttributes>> {		private static final long serialVersionUID = 1L;		private final Path dir;		private final int depth;		private final int maxDepth;		private final Set<String> extensions;		private DirectoryWalk(Path dir, int depth, int maxDepth, Set<String> extensions) {			this.dir = dir;			this.depth = depth;			this.maxDepth = maxDepth;			this.extensions = extensions;		}		@Override		protected Map<Path, BasicFileAttributes> compute() {			List<Object> entries = new ArrayList<>();			Map<Path, BasicFileAttributes> found = new HashMap<>();			Map<Path, BasicFileAttributes> result = new LinkedHashMap<>();			if (depth >= maxDepth) return result;			try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {				for (Path child : stream) {					BasicFileAttributes attributes;					try {						attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);					} catch (IOException e) {						logger.warn("Could not read the attributes of \"{}\"; it will be skipped ({}).", child, e.toString());						continue;					}					if (attributes.isDirectory()) {						if (depth + 1 < maxDepth) {							DirectoryWalk walk = new DirectoryWalk(child, depth + 1, maxDepth, extensions);							walk.fork();							entries.add(walk);						}					} else if (hasExtension(child, extensions)) {						if (attributes.isSymbolicLink()) {							try {								attributes = Files.readAttributes(child, BasicFileAttributes.class);							} catch (IOException e) {								logger.trace("Symbolic link \"{}\" could not be followed ({}).", child, e.toString());							}							if (attributes.isDirectory()) continue;						}						EventLog.record(EventLog.Type.SCANNED, child);						found.put(child, attributes);						entries.add(child);					}				}			} catch (IOException e) {				logger.error("An IOException occurred when listing directory \"{}\"; it will be skipped.", dir);				logger.error(e.toString());			}			for (Object entry : entries) {				if (entry instanceof DirectoryWalk) result.putAll(((DirectoryWalk) entry).join());				else result.put((Path) entry, found.get(entry));			}			return result;		}	}}
\ No newline at end of file
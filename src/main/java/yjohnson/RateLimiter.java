@@ -0,0 +1,104 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket that limits how many bytes per second are read or written by all of the threads that share it. The bucket holds at most one
+ * second worth of bytes, so an idle limiter allows a short burst before it settles at its rate.
+ * <p>
+ * The rate can be changed at any time, e.g. to slow imports down during viewing hours; threads that are waiting for bytes pick up the new rate
+ * within {@value #MAX_WAIT_MILLIS} ms. A rate of 0 disables the limit.
+ */
+public class RateLimiter {
+	private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+	private static final long MAX_WAIT_MILLIS = 100;
+
+	private final String name;
+	private volatile long bytesPerSecond;
+	private double available;
+	private long lastRefill = System.nanoTime();
+
+	/**
+	 * @param name           the name of the limiter, for the log.
+	 * @param bytesPerSecond the initial rate, or 0 for no limit.
+	 */
+	public RateLimiter(String name, long bytesPerSecond) {
+		if (bytesPerSecond < 0) throw new IllegalArgumentException("Rate must not be negative (bytesPerSecond = " + bytesPerSecond + ").");
+		this.name = name;
+		this.bytesPerSecond = bytesPerSecond;
+		this.available = bytesPerSecond;
+	}
+
+	/**
+	 * Changes the rate of this limiter. Bytes that were already granted are not taken back.
+	 *
+	 * @param bytesPerSecond the new rate, or 0 for no limit.
+	 */
+	public synchronized void setBytesPerSecond(long bytesPerSecond) {
+		if (bytesPerSecond < 0) throw new IllegalArgumentException("Rate must not be negative (bytesPerSecond = " + bytesPerSecond + ").");
+		refill(System.nanoTime());
+		this.bytesPerSecond = bytesPerSecond;
+		available = Math.min(available, bytesPerSecond);
+		logger.info("Rate limit of {} set to {}.", name, bytesPerSecond == 0 ? "unlimited" : bytesPerSecond + " bytes/s");
+	}
+
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Checks whether this limiter currently limits anything.
+	 *
+	 * @return true if a rate is set.
+	 */
+	public boolean isLimited() {
+		return bytesPerSecond > 0;
+	}
+
+	/**
+	 * Waits until the given number of bytes may be read or written. A request for more than one second worth of bytes is granted once the bucket
+	 * is full, and the excess is paid back before the next request is granted.
+	 *
+	 * @param bytes the number of bytes about to be read or written.
+	 *
+	 * @throws InterruptedIOException if the thread was interrupted while waiting.
+	 */
+	public void acquire(long bytes) throws InterruptedIOException {
+		while (true) {
+			long waitNanos;
+			synchronized (this) {
+				long rate = bytesPerSecond;
+				if (rate == 0) return;
+				long now = System.nanoTime();
+				refill(now);
+				double needed = Math.min(bytes, rate);
+				if (available >= needed) {
+					available -= bytes;
+					return;
+				}
+				waitNanos = (long) ((needed - available) * TimeUnit.SECONDS.toNanos(1) / rate);
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(Math.max(1, Math.min(waitNanos, TimeUnit.MILLISECONDS.toNanos(MAX_WAIT_MILLIS))));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the rate limit of " + name + ".");
+			}
+		}
+	}
+
+	private void refill(long now) {
+		long rate = bytesPerSecond;
+		if (rate > 0) available = Math.min(rate, available + (double) (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1));
+		lastRefill = now;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
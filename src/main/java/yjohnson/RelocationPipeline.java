@@ -0,0 +1,275 @@
+package yjohnson;
+
+import media.Media;
+import media.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Relocates the files of a source directory as a chain of stages (scan, parse, plan, transfer, verify) instead of building a whole MediaQueue
+ * before the first byte is moved. Each stage has its own worker pool and hands its output to the next stage through a bounded queue, so that
+ * transfers start as soon as the first Media object is parsed and a full queue blocks the stages upstream of it (i.e. the scanner can never run
+ * far ahead of the copier).
+ * <p>
+ * An empty Optional travels down each queue to signal the end of the stream.
+ */
+public class RelocationPipeline {
+	private static final Logger logger = LoggerFactory.getLogger(RelocationPipeline.class);
+	private static final int DEFAULT_QUEUE_CAPACITY = 32;
+
+	private final Path src;
+	private final Set<String> exts;
+	private final MediaType type;
+	private final Operations operations;
+	private final int transferWorkers;
+	private final int queueCapacity;
+
+	/**
+	 * Prepares a pipeline for every file with the given extension under src.
+	 *
+	 * @param src             the source directory to search within.
+	 * @param ext             the extension to filter by.
+	 * @param type            the Media subtype to assign the files to.
+	 * @param operations      the file operation to run on each Media object.
+	 * @param transferWorkers the number of files to transfer (and verify) concurrently.
+	 */
+	public RelocationPipeline(Path src, String ext, MediaType type, Operations operations, int transferWorkers) {
+		this(src, ext, type, operations, transferWorkers, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Prepares a pipeline for every file with the given extension under src.
+	 *
+	 * @param src             the source directory to search within.
+	 * @param ext             the extension to filter by.
+	 * @param type            the Media subtype to assign the files to.
+	 * @param operations      the file operation to run on each Media object.
+	 * @param transferWorkers the number of files to transfer (and verify) concurrently.
+	 * @param queueCapacity   the number of items each hand-off queue holds before its producer blocks.
+	 */
+	public RelocationPipeline(Path src, String ext, MediaType type, Operations operations, int transferWorkers, int queueCapacity) {
+		this(src, Set.of(ext), type, operations, transferWorkers, queueCapacity);
+	}
+
+	/**
+	 * Prepares a pipeline for every file with any of the given extensions under src.
+	 *
+	 * @param src             the source directory to search within.
+	 * @param exts            the extensions to filter by, each starting with a '.'.
+	 * @param type            the Media subtype to assign the files to.
+	 * @param operations      the file operation to run on each Media object.
+	 * @param transferWorkers the number of files to transfer (and verify) concurrently.
+	 */
+	public RelocationPipeline(Path src, Set<String> exts, MediaType type, Operations operations, int transferWorkers) {
+		this(src, exts, type, operations, transferWorkers, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	private RelocationPipeline(Path src, Set<String> exts, MediaType type, Operations operations, int transferWorkers, int queueCapacity) {
+		if (!Files.isDirectory(src)) {
+			logger.error("Given source path (src = \"{}\") is not a directory.", src);
+			throw new IllegalArgumentException("Given source path (src = \"" + src + "\") is not a directory.");
+		}
+		for (String ext : exts) {
+			if (!ext.startsWith(".")) {
+				logger.error("Given extension string (ext = \"{}\") for {} constructor is not valid.", ext, this.getClass().getName());
+				throw new IllegalArgumentException(
+						"Given extension string (ext = \"" + ext + "\") for " + this.getClass().getName() + " constructor is not valid.");
+			}
+		}
+		this.src = src;
+		this.exts = Set.copyOf(exts);
+		this.type = type;
+		this.operations = operations;
+		this.transferWorkers = Math.max(1, transferWorkers);
+		this.queueCapacity = Math.max(1, queueCapacity);
+	}
+
+	/**
+	 * Runs every stage of the pipeline and blocks until the last file has gone through the verify stage.
+	 *
+	 * @return the outcome of every file that reached the plan stage, in the order they finished.
+	 */
+	public List<Operations.MediaIOWrapper> run() {
+		logger.info("Starting relocation pipeline for \"{}\" (exts = {}, type = {}).", src, exts, type);
+		operations.finishPendingDeletes();
+		BlockingQueue<Optional<Map.Entry<Path, BasicFileAttributes>>> scanned = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Optional<Media>> parsed = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Optional<Operations.MediaIOWrapper>> planned = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Optional<Operations.MediaIOWrapper>> transferred = new ArrayBlockingQueue<>(queueCapacity);
+		BlockingQueue<Optional<Operations.MediaIOWrapper>> verified = new LinkedBlockingQueue<>();
+
+		List<Stage<?, ?>> stages = List.of(
+				new Stage<>("parse", Runtime.getRuntime().availableProcessors(), scanned, parsed, this::parse),
+				new Stage<>("plan", 1, parsed, planned, operations::plan),
+				new Stage<>("transfer", transferWorkers, planned, transferred, wrapper -> {
+					operations.transfer(wrapper);
+					return wrapper;
+				}),
+				new Stage<>("verify", transferWorkers, transferred, verified, wrapper -> {
+					try {
+						operations.verify(wrapper);
+					} finally {
+						operations.release(wrapper);
+					}
+					return wrapper;
+				})
+		);
+		stages.forEach(Stage::start);
+
+		List<Operations.MediaIOWrapper> results = new ArrayList<>();
+		try {
+			scan(scanned);
+
+			Optional<Operations.MediaIOWrapper> result;
+			while ((result = verified.take()).isPresent()) {
+				results.add(result.get());
+			}
+			logger.info("Relocation pipeline finished for \"{}\" ({} files).", src, results.size());
+		} catch (InterruptedException e) {
+			logger.warn("Relocation pipeline was interrupted; stopping every stage.");
+			stages.forEach(Stage::stop);
+			Thread.currentThread().interrupt();
+		}
+		return results;
+	}
+
+	/**
+	 * Walks the source directory on the calling thread. Putting into the bounded queue blocks once the parse stage falls behind, which pauses the
+	 * walk itself. Each file travels with the attributes the walk read for it, so the parse stage does not have to check it again.
+	 */
+	private void scan(BlockingQueue<Optional<Map.Entry<Path, BasicFileAttributes>>> out) throws InterruptedException {
+		try {
+			PathFinder.walkFiles(src, exts, (file, attributes) -> {
+				logger.trace("Scanned \"{}\".", file);
+				try {
+					out.put(Optional.of(Map.entry(file, attributes)));
+					return true;
+				} catch (InterruptedException e) {
+					/* Stops the walk; the interrupt is seen again by the final put below */
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			});
+		} catch (IOException e) {
+			logger.error("An IOException occurred when scanning for files (path = \"{}\").", src);
+			logger.error(e.toString());
+			e.printStackTrace();
+		} finally {
+			out.put(Optional.empty());
+		}
+	}
+
+	private Media parse(Map.Entry<Path, BasicFileAttributes> file) {
+		Path path = file.getKey();
+		try {
+			return type.instantiate(path, file.getValue());
+		} catch (IllegalArgumentException e) {
+			logger.error("Passing file \"{}\" to {} instantiation method produced a \"Not a file\" error", path, type);
+			logger.error(e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * A pool of workers that take items from an input queue, apply a function to them and put the non-null results into an output queue. When a
+	 * worker takes the end-of-stream marker it puts it back for its siblings; the last worker to stop forwards the marker downstream, even if it
+	 * stopped because of an Error, so that the stages downstream (and {@link #run()}) are never left waiting for it. If the last worker died before
+	 * the marker arrived, it first drains the rest of its input, so that the stages upstream are not left blocked on a full queue either.
+	 */
+	private static class Stage<I, O> {
+		private final String name;
+		private final int workers;
+		private final BlockingQueue<Optional<I>> in;
+		private final BlockingQueue<Optional<O>> out;
+		private final Function<I, O> function;
+		private final AtomicInteger running;
+		private final ExecutorService pool;
+
+		private Stage(String name, int workers, BlockingQueue<Optional<I>> in, BlockingQueue<Optional<O>> out, Function<I, O> function) {
+			this.name = name;
+			this.workers = workers;
+			this.in = in;
+			this.out = out;
+			this.function = function;
+			this.running = new AtomicInteger(workers);
+			this.pool = Executors.newFixedThreadPool(workers, new Operations.WorkerThreadFactory("pipeline-" + name));
+		}
+
+		private void start() {
+			logger.debug("Starting pipeline stage \"{}\" with {} workers.", name, workers);
+			for (int i = 0; i < workers; i++) {
+				pool.execute(this::work);
+			}
+			pool.shutdown();
+		}
+
+		private void stop() {
+			pool.shutdownNow();
+		}
+
+		private void work() {
+			boolean drained = false;
+			try {
+				Optional<I> item;
+				while ((item = in.take()).isPresent()) {
+					try {
+						O result = function.apply(item.get());
+						if (result != null) out.put(Optional.of(result));
+					} catch (RuntimeException e) {
+						logger.error("Pipeline stage \"{}\" failed to process {}.", name, item.get());
+						logger.error(e.toString());
+						e.printStackTrace();
+					}
+				}
+				drained = true;
+				in.put(item);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (Error e) {
+				logger.error("A worker of pipeline stage \"{}\" died.", name);
+				logger.error(e.toString());
+				throw e;
+			} finally {
+				if (running.decrementAndGet() == 0) {
+					if (!drained && !Thread.currentThread().isInterrupted()) discardRemaining();
+					forwardEndOfStream();
+				}
+			}
+		}
+
+		private void discardRemaining() {
+			logger.error("Every worker of pipeline stage \"{}\" died; the rest of its input is discarded.", name);
+			try {
+				Optional<I> item;
+				while ((item = in.take()).isPresent()) {
+					logger.error("Pipeline stage \"{}\" discarded {}.", name, item.get());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void forwardEndOfStream() {
+			logger.debug("Pipeline stage \"{}\" has drained its input.", name);
+			try {
+				out.put(Optional.empty());
+			} catch (InterruptedException e) {
+				logger.warn("Pipeline stage \"{}\" was interrupted before it could signal the end of its output.", name);
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package yjohnson;
+
+import media.Media;
+import media.MediaQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+/**
+ * The target path of every file of a media queue, computed before any file is relocated. Planning the whole queue at once lets conflicts show up
+ * before the first file is touched: two files that would be relocated to the same target, targets that are already taken by another file, and
+ * files that are already where they belong. Files with a conflict are left out of the relocation instead of failing halfway through it.
+ * <p>
+ * The plan also collects the distinct directories that the targets need. Only the ones that do not exist yet are created, each exactly once, and
+ * parents before their children, instead of calling Files.createDirectories() once per file.
+ */
+public class RelocationPlan {
+	private static final Logger logger = LoggerFactory.getLogger(RelocationPlan.class);
+	private static final Comparator<Path> PARENT_FIRST = Comparator.comparingInt(Path::getNameCount).thenComparing(Comparator.naturalOrder());
+
+	private final Path destinationDir;
+	private final List<Entry> entries;
+	private final SortedSet<Path> directories;
+	private final SortedSet<Path> missingDirectories;
+
+	private RelocationPlan(Path destinationDir, List<Entry> entries, SortedSet<Path> directories, SortedSet<Path> missingDirectories) {
+		this.destinationDir = destinationDir;
+		this.entries = entries;
+		this.directories = directories;
+		this.missingDirectories = missingDirectories;
+	}
+
+	/**
+	 * Computes the target path of every Media object of the given queue and checks the targets against each other and against the files that are
+	 * already in the destination. The file system is only read, and only for directories that already exist; nothing is created or moved.
+	 * <p>
+	 * A target that already exists is not a conflict if the transfer journal holds a copy from the same source to it, since that copy is resumed.
+	 *
+	 * @param queue          the media queue to plan the relocation of.
+	 * @param destinationDir the root directory of the organized structure.
+	 * @param journal        the transfer journal of the operation, or null if it has none.
+	 *
+	 * @return the plan, with an entry for every Media object of the queue in queue order.
+	 */
+	public static RelocationPlan of(MediaQueue queue, Path destinationDir, TransferJournal journal) {
+		Path root = destinationDir.toAbsolutePath().normalize();
+		return of(queue, root, media -> media.generateCustomPathStructure(root).normalize(), journal);
+	}
+
+	/**
+	 * Plans the relocation of every Media object of the given queue to the targets generated by the given function, like
+	 * {@link #of(MediaQueue, Path, TransferJournal)}. Only the directories below the destination directory are created by the plan; without a
+	 * destination directory, every target must be in a directory that already exists (e.g. next to its source).
+	 *
+	 * @param queue          the media queue to plan the relocation of.
+	 * @param destinationDir the root directory of the organized structure, or null if the targets are not placed under one.
+	 * @param targets        generates the absolute, normalized target path of a Media object.
+	 * @param journal        the transfer journal of the operation, or null if it has none.
+	 *
+	 * @return the plan, with an entry for every Media object of the queue in queue order.
+	 */
+	public static RelocationPlan of(MediaQueue queue, Path destinationDir, Function<Media, Path> targets, TransferJournal journal) {
+		Path root = destinationDir != null ? destinationDir.toAbsolutePath().normalize() : null;
+		logger.debug("Planning the relocation of {} files (destination = \"{}\").", queue.size(), root);
+
+		List<Entry> entries = new ArrayList<>(queue.size());
+		Map<Path, Entry> byTarget = new HashMap<>();
+		SortedSet<Path> directories = new TreeSet<>(PARENT_FIRST);
+		for (MediaQueue.MediaList mediaList : queue) {
+			for (Media media : mediaList) {
+				Path source = media.getFile().toPath().toAbsolutePath().normalize();
+				Path target = targets.apply(media);
+				Entry entry = new Entry(media, source, target);
+				entries.add(entry);
+
+				Entry first = byTarget.putIfAbsent(target, entry);
+				if (source.equals(target)) {
+					entry.conflict = Conflict.ALREADY_IN_PLACE;
+				} else if (first != null) {
+					entry.conflict = Conflict.DUPLICATE_TARGET;
+					entry.conflictingEntry = first;
+				} else if (root != null) {
+					for (Path dir = target.getParent(); dir != null && dir.startsWith(root) && !dir.equals(root); dir = dir.getParent()) {
+						if (!directories.add(dir)) break;
+					}
+				}
+			}
+		}
+
+		/* A directory whose parent is missing is missing as well, so only the topmost missing directories are looked up */
+		SortedSet<Path> missing = new TreeSet<>(PARENT_FIRST);
+		if (root != null && !Files.isDirectory(root)) missing.add(root);
+		for (Path dir : directories) {
+			if (missing.contains(dir.getParent()) || !Files.isDirectory(dir)) missing.add(dir);
+		}
+
+		for (Entry entry : entries) {
+			if (entry.conflict != Conflict.NONE || missing.contains(entry.target.getParent())) continue;
+			if (Files.exists(entry.target, LinkOption.NOFOLLOW_LINKS)
+					&& (journal == null || journal.find(entry.source, entry.target) == null)) {
+				entry.conflict = Conflict.TARGET_EXISTS;
+			}
+		}
+
+		RelocationPlan plan = new RelocationPlan(root, entries, directories, missing);
+		plan.logConflicts();
+		return plan;
+	}
+
+	/**
+	 * Creates the directories of the plan that do not exist yet, parents before their children, with one call per directory. When a directory
+	 * cannot be created, neither are the directories below it, and the entries that target any of them are marked with
+	 * {@link Conflict#DIRECTORY_FAILED}.
+	 *
+	 * @return the number of directories that were created.
+	 */
+	public int createDirectories() {
+		int created = 0;
+		Set<Path> failed = new HashSet<>();
+		for (Path dir : missingDirectories) {
+			if (failed.contains(dir.getParent())) {
+				failed.add(dir);
+				continue;
+			}
+			try {
+				if (dir.equals(destinationDir)) Files.createDirectories(dir);
+				else Files.createDirectory(dir);
+				created++;
+				logger.trace("Created directory \"{}\".", dir);
+			} catch (FileAlreadyExistsException e) {
+				if (!Files.isDirectory(dir)) {
+					logger.error("Could not create directory \"{}\"; a file of the same name is in the way.", dir);
+					failed.add(dir);
+				}
+			} catch (IOException e) {
+				logger.error("An IO exception was thrown while attempting to create the target directory \"{}\".", dir);
+				logger.error(e.toString());
+				e.printStackTrace();
+				failed.add(dir);
+			}
+		}
+
+		if (!failed.isEmpty()) {
+			for (Entry entry : entries) {
+				if (entry.conflict == Conflict.NONE && failed.contains(entry.target.getParent())) entry.conflict = Conflict.DIRECTORY_FAILED;
+			}
+		}
+		logger.debug("Created {} of the {} directories planned under \"{}\" ({} failed).", created, directories.size(), destinationDir, failed.size());
+		missingDirectories.removeIf(dir -> !failed.contains(dir));
+		return created;
+	}
+
+	/**
+	 * Returns every entry of the plan, in queue order.
+	 *
+	 * @return an unmodifiable view of the entries.
+	 */
+	public List<Entry> getEntries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	/**
+	 * Returns the entries that will not be relocated, in queue order.
+	 *
+	 * @return the entries with a conflict.
+	 */
+	public List<Entry> getConflicts() {
+		List<Entry> conflicts = new ArrayList<>();
+		for (Entry entry : entries) {
+			if (entry.conflict != Conflict.NONE) conflicts.add(entry);
+		}
+		return conflicts;
+	}
+
+	/**
+	 * Returns every directory below the destination that the targets of the plan need, parents before their children.
+	 *
+	 * @return an unmodifiable view of the directories.
+	 */
+	public SortedSet<Path> getDirectories() {
+		return Collections.unmodifiableSortedSet(directories);
+	}
+
+	/**
+	 * Returns the directories of the plan that do not exist (yet), parents before their children. After {@link #createDirectories()}, only the
+	 * directories that could not be created are left.
+	 *
+	 * @return an unmodifiable view of the missing directories.
+	 */
+	public SortedSet<Path> getMissingDirectories() {
+		return Collections.unmodifiableSortedSet(missingDirectories);
+	}
+
+	private void logConflicts() {
+		int conflicts = 0;
+		for (Entry entry : entries) {
+			switch (entry.conflict) {
+				case NONE:
+					continue;
+				case ALREADY_IN_PLACE:
+					logger.info("\"{}\" is already in place and will not be relocated.", entry.source);
+					break;
+				default:
+					logger.warn("\"{}\" will not be relocated: {}.", entry.source, entry.describeConflict());
+			}
+			conflicts++;
+		}
+		logger.info(
+				"Planned the relocation of {} files (destination = \"{}\", {} conflicts, {} directories needed, {} to be created).",
+				entries.size(),
+				destinationDir,
+				conflicts,
+				directories.size(),
+				missingDirectories.size()
+		);
+	}
+
+	/**
+	 * The planned relocation of a single Media object.
+	 */
+	public static class Entry {
+		private final Media media;
+		private final Path source, target;
+		private Conflict conflict = Conflict.NONE;
+		private Entry conflictingEntry;
+
+		private Entry(Media media, Path source, Path target) {
+			this.media = media;
+			this.source = source;
+			this.target = target;
+		}
+
+		public Media getMedia() {
+			return media;
+		}
+
+		public Path getSource() {
+			return source;
+		}
+
+		public Path getTarget() {
+			return target;
+		}
+
+		public Conflict getConflict() {
+			return conflict;
+		}
+
+		/**
+		 * Returns the entry that claimed the same target first, for a {@link Conflict#DUPLICATE_TARGET}.
+		 *
+		 * @return the conflicting entry, or null if there is none.
+		 */
+		public Entry getConflictingEntry() {
+			return conflictingEntry;
+		}
+
+		/**
+		 * Checks whether this entry is to be relocated, i.e. whether it has no conflict.
+		 *
+		 * @return true if this entry has no conflict.
+		 */
+		public boolean isRelocatable() {
+			return conflict == Conflict.NONE;
+		}
+
+		/**
+		 * Describes the conflict of this entry for the user.
+		 *
+		 * @return a short description of the conflict.
+		 */
+		public String describeConflict() {
+			switch (conflict) {
+				case ALREADY_IN_PLACE:
+					return "already in place";
+				case DUPLICATE_TARGET:
+					return "\"" + conflictingEntry.source + "\" is relocated to the same target \"" + target + "\"";
+				case TARGET_EXISTS:
+					return "there is already a file at \"" + target + "\"";
+				case DIRECTORY_FAILED:
+					return "directory \"" + target.getParent() + "\" could not be created";
+				case NONE:
+				default:
+					return "no conflict";
+			}
+		}
+	}
+
+	/**
+	 * Why an entry of a plan is not relocated.
+	 */
+	public enum Conflict {
+
+		/**
+		 * The entry is relocated.
+		 */
+		NONE,
+		/**
+		 * The file already is at its target path.
+		 */
+		ALREADY_IN_PLACE,
+		/**
+		 * An earlier file of the same queue is relocated to the same target path.
+		 */
+		DUPLICATE_TARGET,
+		/**
+		 * Another file already exists at the target path.
+		 */
+		TARGET_EXISTS,
+		/**
+		 * The directory of the target path could not be created.
+		 */
+		DIRECTORY_FAILED
+	}
+}
@@ -0,0 +1,327 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Copies files between FileChannels one chunk at a time. Plain copies go through {@link FileChannel#transferTo(long, long,
+ * java.nio.channels.WritableByteChannel)}, which lets the kernel move the bytes between file systems (e.g. with sendfile or copy_file_range)
+ * without passing them through the JVM; copies that must be hashed on the way are read into a direct buffer instead.
+ * <p>
+ * Checkpointed copies report their durable progress to their {@link ProgressListener} after every chunk. A copy is cancelled by interrupting the
+ * thread that runs it, which stops the copy at its next chunk (or slice) boundary; other copies of the engine are not affected.
+ * <p>
+ * When a {@link RateLimiter} is set, every copy of this engine is throttled to its rate: copies are then written in slices of
+ * {@value #THROTTLED_SLICE_SIZE} bytes, each of which is acquired from the limiter first, so that the rate holds even while a single chunk is
+ * being copied.
+ */
+public class TransferEngine {
+	private static final Logger logger = LoggerFactory.getLogger(TransferEngine.class);
+	private static final long DEFAULT_CHUNK_SIZE = 1L << 26;
+	private static final int HASH_BUFFER_SIZE = 1 << 20;
+	private static final int THROTTLED_SLICE_SIZE = 1 << 20;
+	private static final int MAX_STALLED_TRANSFERS = 16;
+	private static final ThreadLocal<ByteBuffer> hashBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(HASH_BUFFER_SIZE));
+
+	private final long chunkSize;
+	private volatile RateLimiter rateLimiter;
+
+	public TransferEngine() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize the number of bytes to transfer between two checkpoints (and interruption checks).
+	 */
+	public TransferEngine(long chunkSize) {
+		if (chunkSize <= 0) throw new IllegalArgumentException("Chunk size must be positive (chunkSize = " + chunkSize + ").");
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Throttles every copy of this engine, including the ones already running, to the rate of the given limiter.
+	 *
+	 * @param rateLimiter the limiter to acquire copied bytes from, or null to copy at full speed.
+	 */
+	public void setRateLimiter(RateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+	}
+
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Copies the source into a new file at the target path with FileChannel.transferTo.
+	 *
+	 * @param source the file to copy.
+	 * @param target the path of the copy; no file may exist there yet.
+	 *
+	 * @return the number of bytes copied.
+	 *
+	 * @throws FileAlreadyExistsException if a file already exists at the target path.
+	 * @throws InterruptedIOException     if the copying thread was interrupted; the partial target is deleted.
+	 * @throws IOException                if the copy failed.
+	 */
+	public long copy(Path source, Path target) throws IOException {
+		return transfer(source, target, -1, null);
+	}
+
+	/**
+	 * Copies the source into a new file at the target path with FileChannel.transferTo, checkpointing once the target was created and after every
+	 * chunk. Before the checkpoint listener is called, the copied bytes are forced to the storage device, so that a recorded offset is always safe
+	 * to {@link #resume(Path, Path, long, ProgressListener) resume} from. Partial targets are kept when the copy fails or is cancelled.
+	 *
+	 * @param source     the file to copy.
+	 * @param target     the path of the copy; no file may exist there yet.
+	 * @param checkpoint the listener to report durable progress to.
+	 *
+	 * @return the number of bytes copied.
+	 *
+	 * @throws FileAlreadyExistsException if a file already exists at the target path.
+	 * @throws InterruptedIOException     if the copying thread was interrupted.
+	 * @throws IOException                if the copy failed.
+	 */
+	public long copy(Path source, Path target, ProgressListener checkpoint) throws IOException {
+		return transfer(source, target, -1, checkpoint);
+	}
+
+	/**
+	 * Continues an interrupted {@link #copy(Path, Path, ProgressListener) checkpointed copy}. Anything past the given offset in the target is
+	 * discarded and copied again.
+	 *
+	 * @param source     the file to copy.
+	 * @param target     the partial copy; it is created if it does not exist.
+	 * @param offset     the last durable offset of the partial copy.
+	 * @param checkpoint the listener to report durable progress to.
+	 *
+	 * @return the size of the completed copy.
+	 *
+	 * @throws InterruptedIOException if the copying thread was interrupted.
+	 * @throws IOException            if the copy failed.
+	 */
+	public long resume(Path source, Path target, long offset, ProgressListener checkpoint) throws IOException {
+		return transfer(source, target, Math.max(0, offset), checkpoint);
+	}
+
+	/**
+	 * Copies the source into a new file at the target path through a direct buffer, computing the checksum of the source on the way so that it
+	 * does not have to be read a second time.
+	 *
+	 * @param source the file to copy.
+	 * @param target the path of the copy; no file may exist there yet.
+	 *
+	 * @return the checksum of the source file's contents, computed with {@link Checksum#getAlgorithm()}.
+	 *
+	 * @throws FileAlreadyExistsException if a file already exists at the target path.
+	 * @throws InterruptedIOException     if the copying thread was interrupted; the partial target is deleted.
+	 * @throws IOException                if the copy failed.
+	 */
+	public String copyWithChecksum(Path source, Path target) throws IOException {
+		return transferWithChecksum(source, target, -1, null);
+	}
+
+	/**
+	 * Copies the source into a new file at the target path through a direct buffer, computing the checksum of the source on the way and
+	 * checkpointing like {@link #copy(Path, Path, ProgressListener)}.
+	 *
+	 * @param source     the file to copy.
+	 * @param target     the path of the copy; no file may exist there yet.
+	 * @param checkpoint the listener to report durable progress to.
+	 *
+	 * @return the checksum of the source file's contents, computed with {@link Checksum#getAlgorithm()}.
+	 *
+	 * @throws FileAlreadyExistsException if a file already exists at the target path.
+	 * @throws InterruptedIOException     if the copying thread was interrupted.
+	 * @throws IOException                if the copy failed.
+	 */
+	public String copyWithChecksum(Path source, Path target, ProgressListener checkpoint) throws IOException {
+		return transferWithChecksum(source, target, -1, checkpoint);
+	}
+
+	/**
+	 * Continues an interrupted {@link #copyWithChecksum(Path, Path, ProgressListener) checkpointed copy}. The part of the source that was already
+	 * copied is read once more to restore the checksum, but it is not written again.
+	 *
+	 * @param source     the file to copy.
+	 * @param target     the partial copy; it is created if it does not exist.
+	 * @param offset     the last durable offset of the partial copy.
+	 * @param checkpoint the listener to report durable progress to.
+	 *
+	 * @return the checksum of the source file's contents, computed with {@link Checksum#getAlgorithm()}.
+	 *
+	 * @throws InterruptedIOException if the copying thread was interrupted.
+	 * @throws IOException            if the copy failed.
+	 */
+	public String resumeWithChecksum(Path source, Path target, long offset, ProgressListener checkpoint) throws IOException {
+		return transferWithChecksum(source, target, Math.max(0, offset), checkpoint);
+	}
+
+	/**
+	 * @param offset the offset to resume from, or a negative value for a new copy.
+	 */
+	private long transfer(Path source, Path target, long offset, ProgressListener checkpoint) throws IOException {
+		logger.trace("Transferring \"{}\" to \"{}\" (chunk size = {}, offset = {}).", source, target, chunkSize, offset);
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+		     FileChannel out = openTarget(target, offset)) {
+			long size = in.size(), position = Math.max(0, offset), lastReport = position;
+			int stalled = 0;
+			try {
+				if (offset < 0 && checkpoint != null) checkpoint.onProgress(source, 0, size);
+				while (position < size) {
+					checkCancelled(target);
+					RateLimiter limiter = this.rateLimiter;
+					long slice = Math.min(chunkSize, size - position);
+					if (limiter != null && limiter.isLimited()) {
+						slice = Math.min(slice, THROTTLED_SLICE_SIZE);
+						limiter.acquire(slice);
+					}
+					long transferred = in.transferTo(position, slice, out);
+					if (transferred <= 0) {
+						checkStalled(source, target, in, size, ++stalled);
+						continue;
+					}
+					stalled = 0;
+					position += transferred;
+					if (position - lastReport >= chunkSize || position >= size) {
+						lastReport = position;
+						reportProgress(source, position, size, out, checkpoint);
+					}
+				}
+			} catch (IOException e) {
+				if (checkpoint == null) deletePartialTarget(target);
+				throw e;
+			}
+			return position;
+		}
+	}
+
+	/**
+	 * @param offset the offset to resume from, or a negative value for a new copy.
+	 */
+	private String transferWithChecksum(Path source, Path target, long offset, ProgressListener checkpoint) throws IOException {
+		logger.trace(
+				"Copying with checksum (source = \"{}\", target = \"{}\", algorithm = {}, offset = {}).",
+				source,
+				target,
+				Checksum.getAlgorithm(),
+				offset
+		);
+		ChecksumAlgorithm.Hasher complete = Checksum.getAlgorithm().hasher();
+		ByteBuffer buffer = hashBuffers.get();
+
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+		     FileChannel out = openTarget(target, offset)) {
+			long size = in.size(), position = 0, lastReport = 0;
+			try {
+				if (offset < 0 && checkpoint != null) checkpoint.onProgress(source, 0, size);
+				/* Restore the checksum of the part that was already copied */
+				while (position < offset && in.read(buffer.clear().limit((int) Math.min(buffer.capacity(), offset - position))) != -1) {
+					buffer.flip();
+					position += buffer.remaining();
+					complete.update(buffer);
+				}
+				if (position < offset) {
+					throw new IOException("Source \"" + source + "\" is shorter (" + position + " bytes) than the part of it that was already copied (" + offset + " bytes).");
+				}
+				lastReport = position;
+
+				while (in.read(buffer.clear()) != -1) {
+					buffer.flip();
+					complete.update(buffer);
+					buffer.rewind();
+					RateLimiter limiter = this.rateLimiter;
+					if (limiter != null) limiter.acquire(buffer.remaining());
+					position += buffer.remaining();
+					while (buffer.hasRemaining()) {
+						out.write(buffer);
+					}
+					if (position - lastReport >= chunkSize) {
+						lastReport = position;
+						reportProgress(source, position, size, out, checkpoint);
+						checkCancelled(target);
+					}
+				}
+				reportProgress(source, position, size, out, checkpoint);
+			} catch (IOException e) {
+				if (checkpoint == null) deletePartialTarget(target);
+				throw e;
+			}
+		}
+
+		String result = Checksum.toHexString(complete.digest());
+		logger.debug("Generated checksum while copying \"{}\" (checksum = {}).", source, result);
+		return result;
+	}
+
+	/**
+	 * Opens a new target file, or an existing partial one that is truncated to the given offset and positioned at its end.
+	 */
+	private static FileChannel openTarget(Path target, long offset) throws IOException {
+		if (offset < 0) return FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+		FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		if (out.size() < offset) {
+			out.close();
+			throw new IOException("Partial copy at \"" + target + "\" is shorter than its recorded offset (" + offset + ").");
+		}
+		out.truncate(offset);
+		out.position(offset);
+		return out;
+	}
+
+	private static void checkCancelled(Path target) throws InterruptedIOException {
+		if (Thread.currentThread().isInterrupted()) {
+			throw new InterruptedIOException("Transfer to \"" + target + "\" was cancelled.");
+		}
+	}
+
+	/**
+	 * Fails a copy whose source stopped yielding bytes before its end: either because it was truncated while being copied, or because
+	 * FileChannel.transferTo made no progress too many times in a row.
+	 */
+	private static void checkStalled(Path source, Path target, FileChannel in, long size, int stalled) throws IOException {
+		long currentSize = in.size();
+		if (currentSize < size) {
+			throw new IOException("Source \"" + source + "\" shrank from " + size + " to " + currentSize + " bytes while it was copied to \"" + target + "\".");
+		}
+		if (stalled >= MAX_STALLED_TRANSFERS) {
+			throw new IOException("Copy of \"" + source + "\" to \"" + target + "\" made no progress " + stalled + " times in a row.");
+		}
+		logger.debug("Copy of \"{}\" made no progress (attempt {} of {}); retrying.", source, stalled, MAX_STALLED_TRANSFERS);
+	}
+
+	private static void reportProgress(Path source, long transferred, long total, FileChannel out, ProgressListener checkpoint) throws IOException {
+		logger.trace("Transferred {} of {} bytes of \"{}\".", transferred, total, source);
+		if (checkpoint != null) {
+			out.force(false);
+			checkpoint.onProgress(source, transferred, total);
+		}
+	}
+
+	private static void deletePartialTarget(Path target) {
+		try {
+			Files.deleteIfExists(target);
+			logger.debug("Deleted partial copy at \"{}\".", target);
+		} catch (IOException e) {
+			logger.error("Could not delete partial copy at \"{}\".", target);
+			logger.error(e.toString());
+		}
+	}
+
+	/**
+	 * Receives the durable progress of a checkpointed transfer of a {@link TransferEngine}. It is called from the thread that performs the transfer.
+	 */
+	public interface ProgressListener {
+		void onProgress(Path source, long transferred, long total);
+	}
+}
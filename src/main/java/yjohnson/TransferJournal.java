@@ -0,0 +1,331 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A write-ahead journal of the copies made by {@link FileOperation#COPY_FILE_AND_DELETE_SRC} (and by atomic moves that fall back to copying).
+ * Every state change of a file is appended and forced to the storage device before the program acts on it, so that a run that dies midway can
+ * be continued by the next one: copies resume from their last durable offset, and sources that were verified but not yet deleted are deleted.
+ * <p>
+ * The journal file holds one tab-separated record per line (state, offset, source size, source modified time in nanoseconds, source, target); a
+ * later record for the same source replaces an earlier one. The size and modified time of the source are taken when its copy starts, so that a
+ * source that changed before an interrupted copy is resumed can be told apart and copied again from the start.
+ * <p>
+ * Completed files are dropped from memory as soon as their source is deleted. Once the file holds more than twice as many records as there are
+ * unfinished files, it is compacted, as it is whenever the journal is opened.
+ */
+public class TransferJournal implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(TransferJournal.class);
+	private static final char SEPARATOR = '\t';
+	private static final int MIN_RECORDS_BEFORE_COMPACTION = 1024;
+	private static final long UNKNOWN = -1;
+
+	private final Path file;
+	private final Map<String, Entry> entries = new HashMap<>();
+	private FileChannel channel;
+	private int records;
+
+	private TransferJournal(Path file) {
+		this.file = file;
+	}
+
+	/**
+	 * Loads the journal stored at the given path, creating it (and its parent directories) if it does not exist yet. The journal is rewritten
+	 * without the files that were completed by earlier runs.
+	 *
+	 * @param file the journal file.
+	 *
+	 * @return the loaded journal.
+	 *
+	 * @throws IOException if the journal could not be read or created.
+	 */
+	public static TransferJournal open(Path file) throws IOException {
+		TransferJournal journal = new TransferJournal(file);
+		journal.load();
+		journal.rewrite();
+		return journal;
+	}
+
+	/**
+	 * Returns the last recorded state of the copy from the given source to the given target.
+	 *
+	 * @param source the source of the copy.
+	 * @param target the target of the copy.
+	 *
+	 * @return the journal entry, or null if this copy was never recorded.
+	 */
+	public synchronized Entry find(Path source, Path target) {
+		Entry entry = entries.get(source.toAbsolutePath().toString());
+		return entry != null && entry.target.equals(target.toAbsolutePath()) ? entry : null;
+	}
+
+	/**
+	 * Durably records that a copy from the given source to the given target starts from its first byte, along with the size and modified time of
+	 * the source, which {@link Entry#matches(BasicFileAttributes)} checks before the copy is resumed.
+	 *
+	 * @param source     the source of the copy.
+	 * @param target     the target of the copy.
+	 * @param attributes the attributes of the source, read before the copy starts.
+	 */
+	public synchronized void recordStart(Path source, Path target, BasicFileAttributes attributes) {
+		append(new Entry(
+				State.COPYING,
+				0,
+				attributes.size(),
+				attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS),
+				source.toAbsolutePath(),
+				target.toAbsolutePath()
+		));
+	}
+
+	/**
+	 * Durably records a new state for the copy from the given source to the given target. The size and modified time recorded by
+	 * {@link #recordStart(Path, Path, BasicFileAttributes)} are kept.
+	 *
+	 * @param source the source of the copy.
+	 * @param target the target of the copy.
+	 * @param state  the new state.
+	 * @param offset the number of bytes that are durably copied (only meaningful for {@link State#COPYING}).
+	 */
+	public synchronized void record(Path source, Path target, State state, long offset) {
+		Path absoluteSource = source.toAbsolutePath(), absoluteTarget = target.toAbsolutePath();
+		Entry previous = entries.get(absoluteSource.toString());
+		boolean sameCopy = previous != null && previous.target.equals(absoluteTarget);
+		append(new Entry(
+				state,
+				offset,
+				sameCopy ? previous.sourceSize : UNKNOWN,
+				sameCopy ? previous.sourceModified : UNKNOWN,
+				absoluteSource,
+				absoluteTarget
+		));
+	}
+
+	private void append(Entry entry) {
+		if (channel == null) {
+			logger.error("Transfer journal \"{}\" is closed; {} of \"{}\" was not recorded.", file, entry.state, entry.source);
+			return;
+		}
+		/* A file whose source is gone needs nothing more from the journal; its records are dropped by the next compaction */
+		if (entry.state == State.SOURCE_DELETED) entries.remove(entry.source.toString());
+		else entries.put(entry.source.toString(), entry);
+		try {
+			ByteBuffer record = StandardCharsets.UTF_8.encode(format(entry));
+			while (record.hasRemaining()) {
+				channel.write(record);
+			}
+			channel.force(false);
+			records++;
+			logger.trace("Journaled {} (offset = {}) for \"{}\".", entry.state, entry.offset, entry.source);
+		} catch (IOException e) {
+			logger.error("Could not append to the transfer journal at \"{}\"; a crash now could not be recovered from.", file);
+			logger.error(e.toString());
+			return;
+		}
+		if (records >= MIN_RECORDS_BEFORE_COMPACTION && records > 2 * entries.size()) {
+			try {
+				logger.debug("Compacting transfer journal \"{}\" ({} records, {} unfinished files).", file, records, entries.size());
+				rewrite();
+			} catch (IOException e) {
+				logger.error("Could not compact the transfer journal at \"{}\".", file);
+				logger.error(e.toString());
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Returns every copy whose source was verified but not yet deleted.
+	 *
+	 * @return the entries that are pending the deletion of their source.
+	 */
+	public synchronized List<Entry> getPendingDeletes() {
+		List<Entry> pending = new ArrayList<>();
+		for (Entry entry : entries.values()) {
+			if (entry.state == State.VERIFIED) pending.add(entry);
+		}
+		return pending;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+
+	private void load() throws IOException {
+		Files.createDirectories(file.toAbsolutePath().getParent());
+		try {
+			String content = Files.readString(file, StandardCharsets.UTF_8);
+			/* A record is only complete once its newline was written; a crash can leave the last one torn */
+			int end;
+			for (int start = 0; (end = content.indexOf('\n', start)) != -1; start = end + 1) {
+				String line = content.substring(start, end);
+				records++;
+				Entry entry = parse(line);
+				if (entry == null) {
+					logger.warn("Skipping malformed transfer journal record \"{}\".", line);
+					continue;
+				}
+				entries.put(entry.source.toString(), entry);
+			}
+		} catch (NoSuchFileException e) {
+			logger.debug("No transfer journal exists at \"{}\" yet; starting an empty one.", file);
+		}
+		entries.values().removeIf(entry -> entry.state == State.SOURCE_DELETED);
+		logger.debug("Loaded transfer journal \"{}\" ({} records, {} unfinished files).", file, records, entries.size());
+	}
+
+	/**
+	 * Replaces the journal file with one that only holds the unfinished files, then reopens it for appending. If the new file cannot be written,
+	 * the old one is kept open.
+	 */
+	private void rewrite() throws IOException {
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel out = FileChannel.open(
+				tmp,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE
+		)) {
+			for (Entry entry : entries.values()) {
+				ByteBuffer record = StandardCharsets.UTF_8.encode(format(entry));
+				while (record.hasRemaining()) {
+					out.write(record);
+				}
+			}
+			out.force(false);
+		}
+		Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		FileChannel previous = channel;
+		channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		if (previous != null) previous.close();
+		records = entries.size();
+	}
+
+	private static String format(Entry entry) {
+		return entry.state.name() + SEPARATOR + entry.offset + SEPARATOR + entry.sourceSize + SEPARATOR + entry.sourceModified + SEPARATOR +
+				escape(entry.source.toString()) + SEPARATOR + escape(entry.target.toString()) + '\n';
+	}
+
+	private static Entry parse(String line) {
+		String[] fields = line.split(String.valueOf(SEPARATOR), -1);
+		if (fields.length != 6) return null;
+		try {
+			return new Entry(
+					State.valueOf(fields[0]),
+					Long.parseLong(fields[1]),
+					Long.parseLong(fields[2]),
+					Long.parseLong(fields[3]),
+					Path.of(unescape(fields[4])),
+					Path.of(unescape(fields[5]))
+			);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+	}
+
+	private static String unescape(String s) {
+		StringBuilder result = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '\\' && i + 1 < s.length()) {
+				char next = s.charAt(++i);
+				result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next);
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * The states of a journaled copy, in the order they are reached.
+	 */
+	public enum State {
+		PLANNED, COPYING, COPIED, VERIFIED, SOURCE_DELETED
+	}
+
+	public static class Entry {
+		private final State state;
+		private final long offset;
+		private final long sourceSize, sourceModified;
+		private final Path source, target;
+
+		private Entry(State state, long offset, long sourceSize, long sourceModified, Path source, Path target) {
+			this.state = state;
+			this.offset = offset;
+			this.sourceSize = sourceSize;
+			this.sourceModified = sourceModified;
+			this.source = source;
+			this.target = target;
+		}
+
+		/**
+		 * Checks whether the source still has the size and modified time it had when its copy started, i.e. whether the bytes that were already
+		 * copied can be kept.
+		 *
+		 * @param attributes the current attributes of the source.
+		 *
+		 * @return true if both match; false if either differs or was not recorded.
+		 */
+		public boolean matches(BasicFileAttributes attributes) {
+			return sourceSize != UNKNOWN && sourceSize == attributes.size() && sourceModified == attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+		}
+
+		public State getState() {
+			return state;
+		}
+
+		public long getOffset() {
+			return offset;
+		}
+
+		/**
+		 * @return the size of the source when its copy started, or a negative value if it was not recorded.
+		 */
+		public long getSourceSize() {
+			return sourceSize;
+		}
+
+		/**
+		 * @return the modified time of the source when its copy started, or null if it was not recorded.
+		 */
+		public FileTime getSourceModified() {
+			return sourceModified == UNKNOWN ? null : FileTime.from(sourceModified, TimeUnit.NANOSECONDS);
+		}
+
+		public Path getSource() {
+			return source;
+		}
+
+		public Path getTarget() {
+			return target;
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package yjohnson;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the copies of an operation from saturating the storage they write to, so that imports can run while the same disks are being read by
+ * others (e.g. a media server during viewing hours). The scheduler holds:
+ * <ul>
+ *     <li>a {@link RateLimiter} for the bytes that are copied, which the {@link TransferEngine} acquires before every slice it writes;</li>
+ *     <li>a separate RateLimiter for the bytes that are read to verify copies, so that verification does not eat into the copy rate;</li>
+ *     <li>a cap on the number of copies that write to the same device (FileStore) at once.</li>
+ * </ul>
+ * Every limit can be changed while files are being copied. Nothing is limited by default.
+ * <p>
+ * With a {@link ConcurrencyController}, the number of copies per device is tuned from the measured throughput and latency of the copies onto
+ * it instead; a fixed limit then only serves as a ceiling.
+ */
+public class TransferScheduler {
+	private static final Logger logger = LoggerFactory.getLogger(TransferScheduler.class);
+
+	private final RateLimiter copyLimiter = new RateLimiter("copies", 0);
+	private final RateLimiter verificationLimiter = new RateLimiter("verification reads", 0);
+	private final Map<FileStore, Device> devices = new HashMap<>();
+	private final ConcurrentHashMap<Path, FileStore> storeOfDirectory = new ConcurrentHashMap<>();
+	private int defaultConcurrency;
+	private ConcurrencyController controller;
+
+	/**
+	 * Returns the limiter of the bytes that are copied, e.g. to change the copy rate at runtime.
+	 *
+	 * @return the copy rate limiter.
+	 */
+	public RateLimiter getCopyLimiter() {
+		return copyLimiter;
+	}
+
+	/**
+	 * Returns the limiter of the bytes that are read to verify copies, e.g. to change the verification rate at runtime.
+	 *
+	 * @return the verification rate limiter.
+	 */
+	public RateLimiter getVerificationLimiter() {
+		return verificationLimiter;
+	}
+
+	/**
+	 * Sets how many copies may write to the same device at once, for every device that was not given a limit of its own. Copies that are waiting
+	 * for a device are let through as soon as the new limit allows.
+	 *
+	 * @param concurrency the number of concurrent copies per device, or 0 for no limit.
+	 */
+	public synchronized void setDefaultConcurrency(int concurrency) {
+		if (concurrency < 0) throw new IllegalArgumentException("Concurrency must not be negative (concurrency = " + concurrency + ").");
+		logger.info("Default number of concurrent copies per device set to {}.", concurrency == 0 ? "unlimited" : concurrency);
+		this.defaultConcurrency = concurrency;
+		notifyAll();
+	}
+
+	public synchronized int getDefaultConcurrency() {
+		return defaultConcurrency;
+	}
+
+	/**
+	 * Lets the given controller tune how many copies may write to each device at once. Fixed limits set with
+	 * {@link #setDefaultConcurrency(int)} or {@link #setConcurrency(Path, int)} still apply as a ceiling.
+	 *
+	 * @param controller the controller to tune the limits, or null to go back to the fixed limits only.
+	 */
+	public synchronized void setConcurrencyController(ConcurrencyController controller) {
+		logger.info("Concurrent copies per device are {}.", controller == null ? "fixed" : "tuned from measured throughput");
+		this.controller = controller;
+		notifyAll();
+	}
+
+	public synchronized ConcurrencyController getConcurrencyController() {
+		return controller;
+	}
+
+	/**
+	 * Sets how many copies may write to the device that holds the given path at once, overriding the default concurrency.
+	 *
+	 * @param pathOnDevice any existing path on the device.
+	 * @param concurrency  the number of concurrent copies, or 0 for no limit.
+	 *
+	 * @throws IOException if the device of the path could not be resolved.
+	 */
+	public void setConcurrency(Path pathOnDevice, int concurrency) throws IOException {
+		if (concurrency < 0) throw new IllegalArgumentException("Concurrency must not be negative (concurrency = " + concurrency + ").");
+		FileStore store = Files.getFileStore(pathOnDevice);
+		synchronized (this) {
+			logger.info("Number of concurrent copies to \"{}\" set to {}.", store, concurrency == 0 ? "unlimited" : concurrency);
+			device(store).limit = concurrency;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Returns how many copies may currently write to the device that holds the given path at once.
+	 *
+	 * @param pathOnDevice any existing path on the device.
+	 *
+	 * @return the number of concurrent copies, or 0 if there is no limit.
+	 *
+	 * @throws IOException if the device of the path could not be resolved.
+	 */
+	public int getConcurrency(Path pathOnDevice) throws IOException {
+		FileStore store = Files.getFileStore(pathOnDevice);
+		synchronized (this) {
+			return limitOf(device(store));
+		}
+	}
+
+	/**
+	 * Waits until another copy may write to the device of the given target, and reserves it. The returned permit must be closed once the copy is
+	 * done, e.g. with a try-with-resources statement. A target whose device cannot be resolved is never held back.
+	 *
+	 * @param target the path that is about to be written; its parent directory must exist.
+	 *
+	 * @return the permit of the copy.
+	 *
+	 * @throws InterruptedIOException if the thread was interrupted while waiting.
+	 */
+	public Permit acquire(Path target) throws InterruptedIOException {
+		FileStore store = resolveFileStore(target.toAbsolutePath().getParent());
+		if (store == null) return new Permit(null);
+
+		synchronized (this) {
+			Device device = device(store);
+			boolean waited = false;
+			while (limitOf(device) > 0 && device.inFlight >= limitOf(device)) {
+				if (!waited) logger.debug("Waiting for a free slot on \"{}\" ({} copies in flight).", store, device.inFlight);
+				waited = true;
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting to copy to \"" + target + "\".");
+				}
+			}
+			device.inFlight++;
+			logger.trace("Copy to \"{}\" started ({} copies in flight on \"{}\").", target, device.inFlight, store);
+			return new Permit(device);
+		}
+	}
+
+	private synchronized void release(Device device, long bytes, long nanos) {
+		if (controller != null && bytes > 0) controller.onTransferComplete(device.store, device.inFlight, bytes, nanos);
+		device.inFlight--;
+		notifyAll();
+	}
+
+	private Device device(FileStore store) {
+		return devices.computeIfAbsent(store, Device::new);
+	}
+
+	private int limitOf(Device device) {
+		int fixed = device.limit >= 0 ? device.limit : defaultConcurrency;
+		if (controller == null) return fixed;
+		int tuned = controller.getConcurrency(device.store);
+		return fixed > 0 ? Math.min(fixed, tuned) : tuned;
+	}
+
+	private FileStore resolveFileStore(Path dir) {
+		if (dir == null) return null;
+		FileStore store = storeOfDirectory.get(dir);
+		if (store != null) return store;
+		try {
+			store = Files.getFileStore(dir);
+			storeOfDirectory.putIfAbsent(dir, store);
+			return store;
+		} catch (IOException e) {
+			logger.warn("Could not resolve the device of \"{}\"; copies into it are not limited per device ({}).", dir, e.toString());
+			return null;
+		}
+	}
+
+	/**
+	 * The copies that are writing to a single device.
+	 */
+	private static class Device {
+		private final FileStore store;
+		private int limit = -1;
+		private int inFlight;
+
+		private Device(FileStore store) {
+			this.store = store;
+		}
+	}
+
+	/**
+	 * A reserved slot on a device, held for the duration of a single copy.
+	 */
+	public class Permit implements AutoCloseable {
+		private final Device device;
+		private final long start = System.nanoTime();
+		private long bytesTransferred;
+		private boolean released;
+
+		private Permit(Device device) {
+			this.device = device;
+		}
+
+		/**
+		 * Records how many bytes the copy wrote, for the {@link ConcurrencyController}. A copy that did not record any bytes (e.g. because it
+		 * failed) is not measured.
+		 *
+		 * @param bytesTransferred the number of bytes written to the device.
+		 */
+		public void setBytesTransferred(long bytesTransferred) {
+			this.bytesTransferred = bytesTransferred;
+		}
+
+		/**
+		 * Releases the slot, letting the next waiting copy to the same device through.
+		 */
+		@Override
+		public void close() {
+			if (device == null || released) return;
+			released = true;
+			release(device, bytesTransferred, System.nanoTime() - start);
+			logger.trace("Copy to \"{}\" finished.", device.store);
+		}
+	}
+}
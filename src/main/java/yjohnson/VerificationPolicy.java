@@ -0,0 +1,36 @@
+package yjohnson;
+
+/**
+ * How thoroughly a copied file is compared against its source before the source is deleted. Atomic moves never need verification, so a policy
+ * only costs I/O when a file is actually copied.
+ */
+public enum VerificationPolicy {
+
+	/**
+	 * Trusts the copy as soon as a file exists at the target path.
+	 */
+	NONE,
+	/**
+	 * Compares the size of the copy against the size of the source before it was copied, and checks that the source's size and last modified
+	 * time did not change since; the copy inherits the source's modified time.
+	 */
+	SIZE_AND_MTIME,
+	/**
+	 * Compares the checksums of a few blocks at the head, middle and tail of the source and the copy, along with their sizes.
+	 */
+	SAMPLED,
+	/**
+	 * Compares a checksum of the whole source, computed while it is copied, against a full read of the copy.
+	 */
+	FULL_HASH;
+
+	public static String[] toStringArray() {
+		String[] strings = new String[values().length];
+		VerificationPolicy[] values = values();
+		for (int i = 0; i < values.length; i++) {
+			VerificationPolicy policy = values[i];
+			strings[i] = policy.toString().replace('_', ' ');
+		}
+		return strings;
+	}
+}
@@ -0,0 +1,329 @@
+package yjohnson;
+
+import media.Media;
+import media.MediaType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches source directories and relocates new files as they arrive, instead of scanning the sources on a schedule. Every directory below the
+ * sources is registered with a WatchService, including the ones created while the daemon runs.
+ * <p>
+ * Create and modify events are not acted on immediately: each file is held until no event has been received for it during the debounce window and
+ * its size and last modified time are the same as they were one window earlier, i.e. until it has stopped growing. Only then is it parsed into a
+ * Media object and handed to the {@link Operations} instance, on a pool of relocation workers so that large transfers do not hold up the event loop.
+ * <p>
+ * When the WatchService overflows and events are lost, the sources are walked again to pick up whatever was missed: the files that were modified
+ * since the last event that was processed (or since the daemon started). Files that were already there are left alone, as they are at startup.
+ */
+public class WatchDaemon implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(WatchDaemon.class);
+	private static final long IDLE_POLL_MILLIS = 60_000;
+	private static final long DEFAULT_SHUTDOWN_GRACE_SECONDS = 10;
+
+	private final List<Path> sources;
+	private final String ext;
+	private final MediaType type;
+	private final Operations operations;
+	private final long debounceNanos;
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> directories = new HashMap<>();
+	private final Set<Path> watched = new HashSet<>();
+	private final Map<Path, PendingFile> pending = new HashMap<>();
+	private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+	private final ExecutorService relocationPool;
+	private volatile long shutdownGraceNanos = TimeUnit.SECONDS.toNanos(DEFAULT_SHUTDOWN_GRACE_SECONDS);
+	private FileTime lastEventTime;
+
+	/**
+	 * Prepares a daemon that relocates every new file with the given extension under the given sources.
+	 *
+	 * @param sources           the source directories to watch.
+	 * @param ext               the extension to filter by.
+	 * @param type              the Media subtype to assign the files to.
+	 * @param operations        the file operation to run on each Media object.
+	 * @param debounceMillis    how long a file must go without events, and without changing size, before it is relocated.
+	 * @param relocationWorkers the number of files to relocate concurrently.
+	 *
+	 * @throws IOException if the WatchService could not be created.
+	 */
+	public WatchDaemon(List<Path> sources, String ext, MediaType type, Operations operations, long debounceMillis, int relocationWorkers)
+			throws IOException {
+		if (!ext.startsWith(".")) {
+			logger.error("Given extension string (ext = \"{}\") for {} constructor is not valid.", ext, this.getClass().getName());
+			throw new IllegalArgumentException(
+					"Given extension string (ext = \"" + ext + "\") for " + this.getClass().getName() + " constructor is not valid.");
+		}
+		for (Path src : sources) {
+			if (!Files.isDirectory(src)) {
+				logger.error("Given source path (src = \"{}\") is not a directory.", src);
+				throw new IllegalArgumentException("Given source path (src = \"" + src + "\") is not a directory.");
+			}
+		}
+		this.sources = List.copyOf(sources);
+		this.ext = ext.toLowerCase(Locale.ROOT);
+		this.type = type;
+		this.operations = operations;
+		this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, debounceMillis));
+		this.watchService = sources.get(0).getFileSystem().newWatchService();
+		this.relocationPool = Executors.newFixedThreadPool(Math.max(1, relocationWorkers), new Operations.WorkerThreadFactory("watch-relocation"));
+	}
+
+	/**
+	 * Sets how long {@link #run()} waits for the relocations that have already started once the daemon is stopped. Relocations that are still
+	 * running after that are interrupted; a copy with a transfer journal is resumed by the next run. Defaults to
+	 * {@value #DEFAULT_SHUTDOWN_GRACE_SECONDS} seconds.
+	 *
+	 * @param grace the grace period.
+	 * @param unit  the unit of the grace period.
+	 */
+	public void setShutdownGrace(long grace, TimeUnit unit) {
+		this.shutdownGraceNanos = unit.toNanos(Math.max(0, grace));
+	}
+
+	/**
+	 * Registers the sources and processes events until {@link #close()} is called or the calling thread is interrupted. Files that already exist
+	 * in the sources are left alone. Before it returns, this waits for the relocations that have already started, for at most the
+	 * {@link #setShutdownGrace(long, TimeUnit) shutdown grace period}, so that the transfer journal and checksum cache can be closed afterwards.
+	 */
+	public void run() {
+		logger.info("Watching {} for new \"{}\" files ({}).", sources, ext, type);
+		operations.finishPendingDeletes();
+		lastEventTime = FileTime.fromMillis(System.currentTimeMillis());
+		try {
+			for (Path src : sources) {
+				registerRecursively(src, null);
+			}
+
+			while (true) {
+				WatchKey key = watchService.poll(nextPollMillis(), TimeUnit.MILLISECONDS);
+				while (key != null) {
+					processEvents(key);
+					key = watchService.poll();
+				}
+				relocateStableFiles();
+			}
+		} catch (ClosedWatchServiceException e) {
+			logger.info("Watch service was closed; stopping the watch daemon.");
+		} catch (InterruptedException e) {
+			logger.warn("Watch daemon was interrupted; stopping.");
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.error("An IOException occurred when registering the sources with the watch service.");
+			logger.error(e.toString());
+			e.printStackTrace();
+		} finally {
+			awaitRelocations();
+		}
+	}
+
+	/**
+	 * Lets the relocations that have already started finish within the grace period, and interrupts the ones that do not.
+	 */
+	private void awaitRelocations() {
+		relocationPool.shutdown();
+		try {
+			if (relocationPool.awaitTermination(shutdownGraceNanos, TimeUnit.NANOSECONDS)) return;
+			logger.warn("Relocations of {} are still running after the grace period; interrupting them.", inFlight);
+			relocationPool.shutdownNow();
+			if (!relocationPool.awaitTermination(shutdownGraceNanos, TimeUnit.NANOSECONDS)) {
+				logger.error("Relocations of {} did not stop after being interrupted.", inFlight);
+			}
+		} catch (InterruptedException e) {
+			logger.warn("Interrupted while waiting for relocations to finish; interrupting them.");
+			relocationPool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Stops watching. Relocations that have already started are allowed to finish within the grace period, before {@link #run()} returns.
+	 */
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	private void processEvents(WatchKey key) {
+		Path dir = directories.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			FileTime missedSince = lastEventTime;
+			lastEventTime = FileTime.fromMillis(System.currentTimeMillis());
+			if (event.kind() == OVERFLOW) {
+				logger.warn("Watch service overflowed; walking the sources again for files modified since {}.", missedSince);
+				for (Path src : sources) {
+					rescan(src, missedSince);
+				}
+				continue;
+			}
+			if (dir == null) continue;
+
+			Path child = dir.resolve((Path) event.context());
+			if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+				if (event.kind() == ENTRY_CREATE) {
+					logger.debug("Directory \"{}\" was created; watching it and the files already inside it.", child);
+					rescan(child, FileTime.fromMillis(Long.MIN_VALUE));
+				}
+			} else {
+				track(child);
+			}
+		}
+		if (!key.reset()) {
+			logger.debug("Directory \"{}\" is no longer accessible; it will not be watched anymore.", dir);
+			watched.remove(directories.remove(key));
+		}
+	}
+
+	/**
+	 * Registers a directory that appeared while the daemon runs, or a source whose events were lost, and tracks the files inside it that were
+	 * modified since the given time.
+	 */
+	private void rescan(Path dir, FileTime modifiedSince) {
+		try {
+			registerRecursively(dir, modifiedSince);
+		} catch (IOException e) {
+			logger.error("An IOException occurred when registering directory \"{}\" with the watch service.", dir);
+			logger.error(e.toString());
+		}
+	}
+
+	/**
+	 * Registers the given directory and every directory below it. Directories that are moved into a watched source arrive with their files
+	 * already inside them and produce no events for those files, so they are tracked here when requested.
+	 *
+	 * @param modifiedSince only the files modified since this time are tracked; null to track none of them.
+	 */
+	private void registerRecursively(Path start, FileTime modifiedSince) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (watched.add(dir)) {
+					directories.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY), dir);
+					logger.trace("Watching directory \"{}\".", dir);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				if (modifiedSince != null && attrs.lastModifiedTime().compareTo(modifiedSince) >= 0) track(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFileFailed(Path file, IOException e) {
+				logger.warn("Could not visit \"{}\" while registering it with the watch service ({}).", file, e.toString());
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Restarts the debounce window of a file that was just created or written to.
+	 */
+	private void track(Path file) {
+		if (!file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(ext) || inFlight.contains(file)) return;
+		PendingFile entry = pending.computeIfAbsent(file, f -> {
+			logger.debug("Detected new file \"{}\"; waiting for it to stop growing.", f);
+			return new PendingFile();
+		});
+		entry.deadline = System.nanoTime() + debounceNanos;
+	}
+
+	/**
+	 * Hands every file whose debounce window has passed, and whose size and last modified time have not changed since the previous check, to the
+	 * relocation workers. Files that are still changing get another window.
+	 */
+	private void relocateStableFiles() {
+		long now = System.nanoTime();
+		Iterator<Map.Entry<Path, PendingFile>> it = pending.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Path, PendingFile> e = it.next();
+			Path file = e.getKey();
+			PendingFile entry = e.getValue();
+			if (now - entry.deadline < 0) continue;
+
+			BasicFileAttributes attributes;
+			try {
+				attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			} catch (IOException ex) {
+				logger.debug("File \"{}\" disappeared before it could be relocated ({}).", file, ex.toString());
+				it.remove();
+				continue;
+			}
+			long modified = attributes.lastModifiedTime().toMillis();
+			if (attributes.size() != entry.size || modified != entry.modified) {
+				logger.trace("File \"{}\" is still changing (size = {}).", file, attributes.size());
+				entry.size = attributes.size();
+				entry.modified = modified;
+				entry.deadline = now + debounceNanos;
+				continue;
+			}
+
+			it.remove();
+			inFlight.add(file);
+			relocationPool.execute(() -> relocate(file, attributes));
+		}
+	}
+
+	/**
+	 * Parses and relocates a file, reusing the attributes that were read when it was found to be stable.
+	 */
+	private void relocate(Path file, BasicFileAttributes attributes) {
+		try {
+			logger.info("File \"{}\" has stopped growing; relocating it.", file);
+			Media media = type.instantiate(file, attributes);
+			Operations.MediaIOWrapper wrapper = operations.relocate(media);
+			if (wrapper.didOperationSucceed()) {
+				logger.info("Relocated \"{}\" to \"{}\".", file, wrapper.getTarget());
+			} else {
+				logger.error("Could not relocate \"{}\".", file);
+			}
+		} catch (RuntimeException e) {
+			logger.error("An unexpected error occurred while relocating \"{}\".", file);
+			logger.error(e.toString());
+			e.printStackTrace();
+		} finally {
+			inFlight.remove(file);
+		}
+	}
+
+	/**
+	 * Waits until the earliest debounce deadline, or for a while when nothing is pending.
+	 */
+	private long nextPollMillis() {
+		long now = System.nanoTime();
+		long next = Long.MAX_VALUE;
+		for (PendingFile entry : pending.values()) {
+			next = Math.min(next, Math.max(0, entry.deadline - now));
+		}
+		return next == Long.MAX_VALUE ? IDLE_POLL_MILLIS : Math.max(1, TimeUnit.NANOSECONDS.toMillis(next));
+	}
+
+	private static class PendingFile {
+		private long size = -1;
+		private long modified = -1;
+		private long deadline;
+	}
+}
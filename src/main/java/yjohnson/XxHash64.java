@@ -0,0 +1,138 @@
+package yjohnson;
+
+/**
+ * A streaming, pure Java implementation of the 64-bit xxHash algorithm (seed 0). It is not cryptographically secure, but it hashes at close to
+ * memory bandwidth, which is all that is needed to detect a corrupted copy.
+ *
+ * @see <a href=https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md>xxHash specification</a>
+ */
+final class XxHash64 {
+	private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME_3 = 0x165667B19E3779F9L;
+	private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+	private static final int STRIPE = 32;
+
+	private final byte[] pending = new byte[STRIPE];
+	private int pendingLength;
+	private long totalLength;
+	private long v1, v2, v3, v4;
+
+	XxHash64() {
+		reset();
+	}
+
+	void reset() {
+		v1 = PRIME_1 + PRIME_2;
+		v2 = PRIME_2;
+		v3 = 0;
+		v4 = -PRIME_1;
+		pendingLength = 0;
+		totalLength = 0;
+	}
+
+	void update(byte[] b, int off, int len) {
+		totalLength += len;
+
+		if (pendingLength > 0) {
+			int fill = Math.min(STRIPE - pendingLength, len);
+			System.arraycopy(b, off, pending, pendingLength, fill);
+			pendingLength += fill;
+			off += fill;
+			len -= fill;
+			if (pendingLength < STRIPE) return;
+			consumeStripe(pending, 0);
+			pendingLength = 0;
+		}
+
+		int end = off + len;
+		for (; off <= end - STRIPE; off += STRIPE) {
+			consumeStripe(b, off);
+		}
+
+		if (off < end) {
+			pendingLength = end - off;
+			System.arraycopy(b, off, pending, 0, pendingLength);
+		}
+	}
+
+	/**
+	 * Returns the hash of every byte given since the last reset, then resets this instance.
+	 *
+	 * @return the 64-bit hash value.
+	 */
+	long digest() {
+		long h;
+		if (totalLength >= STRIPE) {
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = mergeRound(h, v1);
+			h = mergeRound(h, v2);
+			h = mergeRound(h, v3);
+			h = mergeRound(h, v4);
+		} else {
+			h = PRIME_5;
+		}
+		h += totalLength;
+
+		int off = 0;
+		for (; off + Long.BYTES <= pendingLength; off += Long.BYTES) {
+			h ^= round(0, readLong(pending, off));
+			h = Long.rotateLeft(h, 27) * PRIME_1 + PRIME_4;
+		}
+		if (off + Integer.BYTES <= pendingLength) {
+			h ^= (readInt(pending, off) & 0xFFFFFFFFL) * PRIME_1;
+			h = Long.rotateLeft(h, 23) * PRIME_2 + PRIME_3;
+			off += Integer.BYTES;
+		}
+		for (; off < pendingLength; off++) {
+			h ^= (pending[off] & 0xFFL) * PRIME_5;
+			h = Long.rotateLeft(h, 11) * PRIME_1;
+		}
+
+		h ^= h >>> 33;
+		h *= PRIME_2;
+		h ^= h >>> 29;
+		h *= PRIME_3;
+		h ^= h >>> 32;
+
+		reset();
+		return h;
+	}
+
+	private void consumeStripe(byte[] b, int off) {
+		v1 = round(v1, readLong(b, off));
+		v2 = round(v2, readLong(b, off + 8));
+		v3 = round(v3, readLong(b, off + 16));
+		v4 = round(v4, readLong(b, off + 24));
+	}
+
+	private static long round(long acc, long input) {
+		acc += input * PRIME_2;
+		acc = Long.rotateLeft(acc, 31);
+		return acc * PRIME_1;
+	}
+
+	private static long mergeRound(long acc, long val) {
+		acc ^= round(0, val);
+		return acc * PRIME_1 + PRIME_4;
+	}
+
+	private static long readLong(byte[] b, int off) {
+		return (b[off] & 0xFFL)
+				| (b[off + 1] & 0xFFL) << 8
+				| (b[off + 2] & 0xFFL) << 16
+				| (b[off + 3] & 0xFFL) << 24
+				| (b[off + 4] & 0xFFL) << 32
+				| (b[off + 5] & 0xFFL) << 40
+				| (b[off + 6] & 0xFFL) << 48
+				| (b[off + 7] & 0xFFL) << 56;
+	}
+
+	private static int readInt(byte[] b, int off) {
+		return (b[off] & 0xFF)
+				| (b[off + 1] & 0xFF) << 8
+				| (b[off + 2] & 0xFF) << 16
+				| (b[off + 3] & 0xFF) << 24;
+	}
+}
@@ -0,0 +1,201 @@
+package media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Checks that {@link FilenameTokens}, and the {@link TV}, {@link Movie} and {@link MetadataOps} parsing built on it, give the same results as the
+ * regular expressions they replaced. The expected values of the corpus were produced by the regular expression based parsers.
+ */
+class FilenameTokensParityTest {
+	private static final String LIBRARY = "/library/";
+
+	/* The patterns that TV used to run, one after another, over the normalized name */
+	private static final Map<FilenameTokens.Kind, Pattern> REGEX = new EnumMap<>(FilenameTokens.Kind.class);
+
+	static {
+		REGEX.put(
+				FilenameTokens.Kind.SEASON_AND_EPISODE,
+				Pattern.compile("(?i)(?: *- ?)? ?(?<seasonInd>S(?<season>0*[1-9][0-9]*|0)) *(?<epInd>E(?<episode>0*([1-9][0-9]*|0)))")
+		);
+		REGEX.put(
+				FilenameTokens.Kind.SEASON_AND_EPISODE_WORDS,
+				Pattern.compile(
+						"(?i)(?:(?: *- ?)? ?(?<seasonInd>Season ?\\b(?<season>0*([1-9][0-9]*|0))))? *(?: *- ?)? *(?<epInd>Episode ?\\b(?<episode>0*([1-9][0-9]*|0)))")
+		);
+		REGEX.put(
+				FilenameTokens.Kind.SEASON_CROSS_EPISODE,
+				Pattern.compile("(?i)(?: *- ?)? ?(?<seasonInd>(?<season>0*([1-9][0-9]*|0))) *x *(?: *- ?)? *(?<epInd>(?<episode>0*([1-9][0-9]*|0)))")
+		);
+		REGEX.put(FilenameTokens.Kind.DASH_EPISODE, Pattern.compile(" *- ? *(?<epInd>E?(?<episode>0*([1-9][0-9]*|0)))"));
+		REGEX.put(FilenameTokens.Kind.TRAILING_EPISODE, Pattern.compile("(?<epInd>E?(?<episode>0*([1-9][0-9]*|0)))$"));
+		REGEX.put(FilenameTokens.Kind.SEASON_WORD, Pattern.compile("(?i)(?<seasonInd>Season ?\\b(?<season>0*([1-9][0-9]*|0)))"));
+		REGEX.put(FilenameTokens.Kind.SEASON_PREFIX, Pattern.compile("(?i)(?<seasonInd>S(?<season>0*([1-9][0-9]*|0))) +"));
+	}
+
+	static Stream<Arguments> tvCorpus() {
+		return Stream.of(
+				tv("Show Name", "Show.Name.S01E02.1080p.WEB-DL.x264-GRP.mkv", "Show Name 1080p WEB-DL x264-GRP - S01E02", "Show Name 1080p WEB-DL x264-GRP", 1, 2, "1080p"),
+				tv("Show Name", "show.name.s01e02.720p.hdtv.mkv", "show name 720p hdtv - S01E02", "show name 720p hdtv", 1, 2, "720p"),
+				tv("Show Name", "Show Name S1E2.mp4", "Show Name - S01E02", "Show Name", 1, 2, "Unknown"),
+				tv("Show Name", "Show Name S01 E02 - Title of Episode.mkv", "Show Name - Title of Episode - S01E02", "Show Name - Title of Episode", 1, 2, "Unknown"),
+				tv("Show Name", "Show_Name_S10E100_2160p.mkv", "Show Name 2160p - S10E100", "Show Name 2160p", 10, 100, "2160p"),
+				tv("Show Name", "Show Name S00E05 Special.mkv", "Show Name S00 - S01E05", "Show Name S00", 1, 5, "Unknown"),
+				tv("The Office US", "The.Office.US.1x02.HDTV.avi", "The Office US HDTV - S01E02", "The Office US HDTV", 1, 2, "Unknown"),
+				tv("The Office US", "The Office US 01x02.mkv", "The Office US - S01E02", "The Office US", 1, 2, "Unknown"),
+				tv("Sons of Anarchy", "Sons of Anarchy - 1 x 02 - Title.mkv", "Sons of Anarchy - Title - S01E02", "Sons of Anarchy - Title", 1, 2, "Unknown"),
+				tv("Doctor Who", "Doctor Who (2005) S02E03 [1080p].mkv", "Doctor Who - S02E03", "Doctor Who  ", 2, 3, "1080p"),
+				tv("Attack on Titan", "[SubGroup] Attack on Titan - 05 [1080p][ABCDEF12].mkv", "Attack on Titan - S01E05", " Attack on Titan", 1, 5, "1080p"),
+				tv("Attack on Titan", "[SubGroup] Attack on Titan - E07 (720p).mkv", "Attack on Titan - - S01E07", " Attack on Titan -", 1, 7, "720p"),
+				tv("Season 2", "Show Name - 05.mkv", "Show Name - S02E05", "Show Name", 2, 5, "Unknown"),
+				tv("Season 2", "Show Name Episode 5.mkv", "Show Name Episode 5 - S02E05", "Show Name Episode 5", 2, 5, "Unknown"),
+				tv("Season 2", "Show Name Episode 12 480p.mp4", "Show Name Episode 12 480p - S02E12", "Show Name Episode 12 480p", 2, 12, "480p"),
+				tv("Season_03", "Show.Name.E05.mkv", "Show Name - S03E05", "Show Name", 3, 5, "Unknown"),
+				tv("Season_03", "Show Name Ep05.mkv", "Show Name Ep - S03E05", "Show Name Ep", 3, 5, "Unknown"),
+				tv("season 4 disc 1", "Show Name 105.mkv", "Show Name - S04E105", "Show Name", 4, 105, "Unknown"),
+				tv("Show Name", "Show Name Season 1 Episode 2.mkv", "Show Name - S01E02", "Show Name", 1, 2, "Unknown"),
+				tv("Show Name", "Show Name Season 01 - Episode 02 - Title.mkv", "Show Name - Title - S01E02", "Show Name - Title", 1, 2, "Unknown"),
+				tv("Show Name", "Show Name S02 Part 2.mkv", "Show Name Part - S00E02", "Show Name Part", 0, 2, "Unknown"),
+				tv("S02 ", "Show Name S3 Title.mkv", "Show Name  Title - Special", "Show Name  Title", 3, -1, "Unknown"),
+				tv("Show Name", "Show Name Season 2.mkv", "Show Name - Special", "Show Name", 2, -1, "Unknown"),
+				tv("Show Name", "Show Name S01E01E02.mkv", "Show NameE02 - S01E01", "Show NameE02", 1, 1, "Unknown"),
+				tv("Show Name", "Show Name S01E01-E02 1920x1080.mkv", "Show Name-E02 1920x1080 - S01E01", "Show Name-E02 1920x1080", 1, 1, "1080p"),
+				tv("Show Name", "24 S05E10 DD5.1 x264.mkv", "24 DD5 1 x264 - S05E10", "24 DD5 1 x264", 5, 10, "Unknown"),
+				tv("The 100", "The 100 S03E04 REPACK 1080p.mkv", "The 100 REPACK 1080p - S03E04", "The 100 REPACK 1080p", 3, 4, "1080p"),
+				tv("Episodes", "Episodes S02E03.mkv", "Episodes - S02E03", "Episodes", 2, 3, "Unknown"),
+				tv("Seasons", "Seasons.S01E01.mkv", "Seasons - S01E01", "Seasons", 1, 1, "Unknown"),
+				tv("S.W.A.T", "S.W.A.T.2017.S04E01.1080p.mkv", "S W A T 2017 1080p - S04E01", "S W A T 2017 1080p", 4, 1, "1080p"),
+				tv("Mr. Robot", "Mr.Robot.S02E05.3996 x 2160.mkv", "Mr Robot 3996 x 2160 - S02E05", "Mr Robot 3996 x 2160", 2, 5, "2160p"),
+				tv("Grey's Anatomy", "Grey's_Anatomy_S14E09.mkv", "Grey's Anatomy - S14E09", "Grey's Anatomy", 14, 9, "Unknown"),
+				tv("Stuff", "Boss.2x03x04.mkv", "Bossx04 - S02E03", "Bossx04", 2, 3, "Unknown"),
+				tv("Stuff", "Show Name Episode  5.mkv", "Show Name - S01E05", "Show Name", 1, 5, "Unknown"),
+				tv("Stuff", "Show Name - 005 - Title.mkv", "Show Name - S01E05", "Show Name", 1, 5, "Unknown"),
+				tv("Stuff", "Show Name e1234.mkv", "Show Name - S01E04", "Show Name", 1, 4, "Unknown"),
+				tv("Stuff", "Show Name Season1Episode2.mkv", "Show Name Season1Episod - S01E02", "Show Name Season1Episod", 1, 2, "Unknown"),
+				tv("Stuff", "Show Name Vol 3.mkv", "Show Name Vol 3 - Special", "Show Name Vol 3", 1, -1, "Unknown"),
+				tv("Stuff", "Show.Name.s2015e01.1080p.mkv", "Show Name 1080p - S2015E01", "Show Name 1080p", 2015, 1, "1080p"),
+				tv("Stuff", "Show Name.mkv", "Show Name - Special", "Show Name", 1, -1, "Unknown"),
+				tv("Show Name", "12x3.mkv", " - S12E03", "", 12, 3, "Unknown"),
+				tv("Season 2", "05.mkv", " - S02E05", "", 2, 5, "Unknown"),
+				tv("Stuff", "Show Name 2019 S01E01.MKV", "Show Name 2019 - S01E01", "Show Name 2019", 1, 1, "Unknown"),
+				tv("Stuff", "Show Name (2004) - 1x05.avi", "Show Name - S01E05", "Show Name ", 1, 5, "Unknown"),
+				tv("Movie.2011.Pack", "Show_Name_-_S01E03_-_[216].mkv", "Show Name - - S01E03", "Show Name - ", 1, 3, "216p")
+		);
+	}
+
+	static Stream<Arguments> movieCorpus() {
+		return Stream.of(
+				movie("Movie.2011.Pack", "Movie.Name.2010.1080p.BluRay.x264.mkv", "Movie Name (2010)", "Movie Name", 2010, "1080p"),
+				movie("Stuff", "Movie Name (1999).mp4", "Movie Name (1999)", "Movie Name", 1999, "Unknown"),
+				movie("Stuff", "[Grp] Movie Name (2004) [720p].mkv", "Movie Name (2004)", "Movie Name", 2004, "720p"),
+				movie("Stuff", "Movie_Name_2010_1080p.mkv", "Movie Name 2010 1080p", "Movie Name 2010 1080p", -1, "1080p"),
+				movie("Stuff", "2001 A Space Odyssey 1968.mkv", " (2001)", "", 2001, "Unknown"),
+				movie("Stuff", "1917 (2019).mkv", " (1917)", "", 1917, "Unknown"),
+				movie("Stuff", "Blade Runner 2049 (2017) 2160p.mkv", "Blade Runner 2049 (2017)", "Blade Runner 2049", 2017, "2160p"),
+				movie("Stuff", "Fast & Furious 6 2013.mp4", "Fast & Furious 6 (2013)", "Fast & Furious 6", 2013, "Unknown"),
+				movie("Stuff", "Movie Name 1999 1920x1080.mkv", "Movie Name (1999)", "Movie Name", 1999, "1080p"),
+				movie("Stuff", "Movie_Name_(1985)_[Director's Cut].mkv", "Movie Name (1985)", "Movie Name", 1985, "Unknown")
+		);
+	}
+
+	static Stream<Arguments> resolutionCorpus() {
+		return Stream.of(
+				Arguments.of("Show.Name.S01E02.1080p.mkv", "1080p"),
+				Arguments.of("Show Name 720p", "720p"),
+				Arguments.of("[1080p]", "1080p"),
+				Arguments.of("(720p)", "720p"),
+				Arguments.of("480p", "480p"),
+				Arguments.of("1920x1080", "1080p"),
+				Arguments.of("3996 x 2160", "2160p"),
+				Arguments.of("2160p.WEB-DL", "2160p"),
+				Arguments.of("Show 216", "216p"),
+				Arguments.of("No Resolution", "Unknown"),
+				Arguments.of("x264 DD5.1", "Unknown"),
+				Arguments.of("Movie 1080i", "1080p"),
+				Arguments.of("1080720480", "1080p")
+		);
+	}
+
+	static Stream<String> fileNames() {
+		return Stream.concat(tvCorpus(), movieCorpus()).map(arguments -> (String) arguments.get()[1]);
+	}
+
+	@ParameterizedTest
+	@MethodSource("tvCorpus")
+	void tvMatchesRegexParsing(String directory, String fileName, String customName, String seriesName, int season, int episode, String resolution) {
+		TV tv = new TV(LIBRARY + directory + "/" + fileName);
+		assertEquals(customName, tv.getCustomFilename());
+		assertEquals(seriesName, tv.getSeriesName());
+		assertEquals(season, tv.getSeasonNumber());
+		assertEquals(episode, tv.getEpisodeNumber());
+		assertEquals(resolution, tv.getMediaResolution());
+	}
+
+	@ParameterizedTest
+	@MethodSource("movieCorpus")
+	void movieMatchesRegexParsing(String directory, String fileName, String customName, String movieName, int year, String resolution) {
+		Movie movie = new Movie(LIBRARY + directory + "/" + fileName);
+		assertEquals(customName, movie.getCustomFilename());
+		assertEquals(movieName, movie.getMovieName());
+		assertEquals(year, movie.getReleaseYear());
+		assertEquals(resolution, movie.getMediaResolution());
+	}
+
+	@ParameterizedTest
+	@MethodSource("resolutionCorpus")
+	void resolutionMatchesRegexParsing(String text, String resolution) {
+		assertEquals(resolution, MetadataOps.getResolution(text));
+		assertEquals(resolution, FilenameTokens.ofText(text).resolution());
+	}
+
+	@ParameterizedTest
+	@MethodSource("fileNames")
+	void tokensMatchFirstRegexMatch(String fileName) {
+		FilenameTokens tokens = FilenameTokens.ofFileName(fileName);
+		for (Map.Entry<FilenameTokens.Kind, Pattern> regex : REGEX.entrySet()) {
+			Matcher matcher = regex.getValue().matcher(tokens.text());
+			FilenameTokens.Token token = tokens.first(regex.getKey());
+			if (!matcher.find()) {
+				assertNull(token, regex.getKey() + " in \"" + tokens.text() + "\"");
+				continue;
+			}
+			assertNotNull(token, regex.getKey() + " in \"" + tokens.text() + "\"");
+			assertEquals(matcher.group(), token.text, regex.getKey() + " in \"" + tokens.text() + "\"");
+			assertEquals(matcher.start(), token.start);
+			if (regex.getValue().pattern().contains("<season>") && matcher.group("season") != null) {
+				assertEquals(Integer.parseInt(matcher.group("season")), token.season());
+			}
+			if (regex.getValue().pattern().contains("<episode>")) {
+				assertEquals(Integer.parseInt(matcher.group("episode")), token.episode());
+			}
+		}
+	}
+
+	@Test
+	void fileNamesAreNormalizedLikeRemoveUnwantedSpaces() {
+		for (String fileName : (Iterable<String>) fileNames()::iterator) {
+			String name = fileName.substring(0, fileName.lastIndexOf('.'));
+			assertEquals(MetadataOps.removeUnwantedSpaces(name), FilenameTokens.ofFileName(fileName).text());
+		}
+	}
+
+	private static Arguments tv(String directory, String fileName, String customName, String seriesName, int season, int episode, String resolution) {
+		return Arguments.of(directory, fileName, customName, seriesName, season, episode, resolution);
+	}
+
+	private static Arguments movie(String directory, String fileName, String customName, String movieName, int year, String resolution) {
+		return Arguments.of(directory, fileName, customName, movieName, year, resolution);
+	}
+}